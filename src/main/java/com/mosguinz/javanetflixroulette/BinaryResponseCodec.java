@@ -0,0 +1,535 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Reads and writes responses in a compact binary format.
+ * <p>
+ * Saving responses as pretty-printed JSON wastes a lot of space on
+ * indentation and on repeating the same keys and values for every title. The
+ * binary format is laid out as:
+ * <ul>
+ * <li>a fixed header: the {@link #MAGIC magic bytes}, the
+ * {@link #SCHEMA_VERSION schema version}, the length of the rest of the
+ * header, then the {@code DATE}, {@code Q-STRING}, and {@code COMPLETE} flag
+ * of the response;</li>
+ * <li>a dictionary of the keys used by the titles;</li>
+ * <li>a dictionary of the values of keys that repeat a lot between titles,
+ * such as the type, rating, and release year;</li>
+ * <li>the titles, where each key and repeated value is written as its index in
+ * the dictionary, and every other value as a length-prefixed string.</li>
+ * </ul>
+ * All lengths and indices are written as variable-length integers.
+ * <p>
+ * Every length and index is checked against what is left of the buffer
+ * before it is used, so that a truncated or corrupt file is reported as an
+ * {@link IOException} rather than as whatever the buffer happens to throw.
+ *
+ * @author mosguinz
+ */
+class BinaryResponseCodec {
+
+    /**
+     * The bytes that every binary response starts with.
+     */
+    private static final byte[] MAGIC = {'N', 'F', 'R', 'B'};
+
+    /**
+     * The version of the binary format.
+     */
+    static final short SCHEMA_VERSION = 1;
+
+    /**
+     * The length of the fixed part of the header: the magic bytes, the
+     * version, and the length of the rest of the header.
+     */
+    private static final int PREFIX_LENGTH = MAGIC.length + 2 + 4;
+
+    /**
+     * The largest header that will be read, in bytes.
+     * <p>
+     * Anything larger is assumed to be a corrupt file.
+     */
+    private static final int MAX_HEADER_LENGTH = 64 * 1024;
+
+    /**
+     * The keys whose values are dictionary-encoded.
+     */
+    private static final Set<String> DICTIONARY_KEYS = new HashSet<>(Arrays.asList(
+            "type", "rating", "released", "runtime", "unogsdate", "download"));
+
+    /**
+     * A value written as a length-prefixed string.
+     */
+    private static final byte INLINE_STRING = 0;
+
+    /**
+     * A value written as its index in the value dictionary.
+     */
+    private static final byte DICTIONARY_STRING = 1;
+
+    /**
+     * A value that is not a string, written as JSON text.
+     */
+    private static final byte JSON_VALUE = 2;
+
+    private BinaryResponseCodec() {
+    }
+
+    /**
+     * Check whether the given buffer holds a binary response.
+     * <p>
+     * The position of the buffer is left unchanged.
+     *
+     * @param buffer the content of a saved response
+     * @return {@code true} if the buffer starts with the magic bytes;
+     * {@code false} otherwise, i.e., if it is a legacy JSON response
+     */
+    static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Encode a response.
+     *
+     * @param date the {@code DATE} of the response
+     * @param titlesQueryString the {@code Q-STRING} of the response
+     * @param complete the {@code COMPLETE} flag of the response
+     * @param items the {@code ITEMS} of the response, as {@link Title}
+     * objects or {@link JSONObject}s
+     * @return the encoded response
+     */
+    static byte[] encode(String date, String titlesQueryString, boolean complete, JSONArray items) {
+        Map<String, Integer> keys = new HashMap<>();
+        List<String> keyList = new ArrayList<>();
+        Map<String, Integer> values = new HashMap<>();
+        List<String> valueList = new ArrayList<>();
+
+        List<JSONObject> titles = new ArrayList<>(items.length());
+        for (Object item : items) {
+            titles.add(item instanceof Title ? ((Title) item).toJSON() : (JSONObject) item);
+        }
+
+        // First pass: build the dictionaries.
+        for (JSONObject title : titles) {
+            for (Iterator<String> it = title.keys(); it.hasNext();) {
+                String key = it.next();
+                if (keys.putIfAbsent(key, keyList.size()) == null) {
+                    keyList.add(key);
+                }
+
+                Object value = title.get(key);
+                if (DICTIONARY_KEYS.contains(key) && value instanceof String
+                        && values.putIfAbsent((String) value, valueList.size()) == null) {
+                    valueList.add((String) value);
+                }
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream h = new DataOutputStream(header);
+            writeString(h, date);
+            writeString(h, titlesQueryString == null ? "" : titlesQueryString);
+            h.writeBoolean(complete);
+
+            out.write(MAGIC);
+            out.writeShort(SCHEMA_VERSION);
+            out.writeInt(header.size());
+            header.writeTo(out);
+
+            writeVarInt(out, keyList.size());
+            for (String key : keyList) {
+                writeString(out, key);
+            }
+
+            writeVarInt(out, valueList.size());
+            for (String value : valueList) {
+                writeString(out, value);
+            }
+
+            // Second pass: write the titles.
+            writeVarInt(out, titles.size());
+            for (JSONObject title : titles) {
+                writeVarInt(out, title.length());
+
+                for (Iterator<String> it = title.keys(); it.hasNext();) {
+                    String key = it.next();
+                    Object value = title.get(key);
+                    writeVarInt(out, keys.get(key));
+
+                    if (!(value instanceof String)) {
+                        out.writeByte(JSON_VALUE);
+                        writeString(out, JSONObject.valueToString(value));
+                    } else if (DICTIONARY_KEYS.contains(key)) {
+                        out.writeByte(DICTIONARY_STRING);
+                        writeVarInt(out, values.get((String) value));
+                    } else {
+                        out.writeByte(INLINE_STRING);
+                        writeString(out, (String) value);
+                    }
+                }
+            }
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not reachable when writing to memory.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode a response.
+     *
+     * @param buffer the content of the saved response, positioned at its start
+     * @return the response as a {@link JSONObject} with the keys {@code DATE},
+     * {@code Q-STRING}, {@code COMPLETE}, and {@code ITEMS}, the same as a
+     * JSON response
+     * @throws IOException if the buffer does not hold a valid binary response
+     */
+    static JSONObject decode(ByteBuffer buffer) throws IOException {
+        JSONObject response = readHeader(buffer);
+
+        String[] keys = new String[readCount(buffer)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = readString(buffer);
+        }
+
+        String[] values = new String[readCount(buffer)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(buffer);
+        }
+
+        int count = readCount(buffer);
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            int fields = readCount(buffer);
+            JSONObject title = new JSONObject();
+
+            for (int f = 0; f < fields; f++) {
+                String key = keys[readIndex(buffer, keys.length)];
+                byte tag = readByte(buffer);
+
+                switch (tag) {
+                    case INLINE_STRING:
+                        title.put(key, readString(buffer));
+                        break;
+                    case DICTIONARY_STRING:
+                        title.put(key, values[readIndex(buffer, values.length)]);
+                        break;
+                    case JSON_VALUE:
+                        title.put(key, readJSONValue(buffer));
+                        break;
+                    default:
+                        throw new IOException("Unknown value tag " + tag);
+                }
+            }
+
+            items.put(title);
+        }
+
+        response.put("ITEMS", items);
+        return response;
+    }
+
+    /**
+     * Read the header of a binary response.
+     * <p>
+     * Leaves the buffer positioned at the start of the dictionaries, as given
+     * by the length of the header, so that fields added to the end of the
+     * header later on are skipped. Responses saved before the {@code COMPLETE}
+     * flag was added to the header are read without it.
+     *
+     * @param buffer the content of the saved response, positioned at its start
+     * @return a {@link JSONObject} with the keys {@code DATE},
+     * {@code Q-STRING}, and {@code COMPLETE}
+     * @throws IOException if the buffer does not hold a supported binary
+     * response
+     */
+    static JSONObject readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < PREFIX_LENGTH || !isBinary(buffer)) {
+            throw new IOException("Not a binary response");
+        }
+        buffer.position(buffer.position() + MAGIC.length);
+
+        short version = buffer.getShort();
+        if (version != SCHEMA_VERSION) {
+            throw new IOException("Unsupported binary response version " + version);
+        }
+
+        int length = buffer.getInt();
+        if (length < 0 || length > MAX_HEADER_LENGTH || length > buffer.remaining()) {
+            throw new IOException("Invalid binary response header length " + length);
+        }
+
+        ByteBuffer fields = buffer.slice();
+        fields.limit(length);
+        buffer.position(buffer.position() + length);
+
+        JSONObject header = new JSONObject();
+        header.put("DATE", readString(fields));
+        String q = readString(fields);
+        if (!q.isEmpty()) {
+            header.put("Q-STRING", q);
+        }
+        if (fields.hasRemaining()) {
+            header.put("COMPLETE", fields.get() != 0);
+        }
+
+        return header;
+    }
+
+    /**
+     * Read only the header of a saved response.
+     * <p>
+     * Only the first few hundred bytes of the file are read, so the freshness
+     * and query string of a response can be checked without reading the
+     * titles.
+     *
+     * @param file the response file
+     * @return a {@link JSONObject} with the keys {@code DATE},
+     * {@code Q-STRING}, and {@code COMPLETE}, or {@code null} if the file is
+     * not a binary response
+     * @throws IOException if the file could not be read, or if the header is
+     * not valid
+     */
+    static JSONObject readHeader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            readFully(channel, prefix);
+            if (prefix.hasRemaining()) {
+                return null;
+            }
+
+            prefix.flip();
+            if (!isBinary(prefix)) {
+                return null;
+            }
+
+            int length = prefix.getInt(PREFIX_LENGTH - 4);
+            if (length < 0 || length > MAX_HEADER_LENGTH) {
+                throw new IOException("Invalid binary response header length " + length);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(PREFIX_LENGTH + length);
+            header.put(prefix);
+            readFully(channel, header);
+            if (header.hasRemaining()) {
+                throw new IOException("Truncated binary response header");
+            }
+
+            header.flip();
+            return readHeader(header);
+        }
+    }
+
+    /**
+     * Read from the channel until the buffer is full or the end of the channel
+     * is reached.
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill
+     * @throws IOException if the channel could not be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading.
+        }
+    }
+
+    /**
+     * Write a variable-length unsigned integer.
+     *
+     * @param out the stream to write to
+     * @param value a non-negative integer
+     * @throws IOException if it could not be written
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read a byte.
+     *
+     * @param buffer the buffer to read from
+     * @return the byte
+     * @throws IOException if the buffer has no bytes left
+     */
+    private static byte readByte(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Truncated binary response");
+        }
+        return buffer.get();
+    }
+
+    /**
+     * Read a variable-length unsigned integer.
+     *
+     * @param buffer the buffer to read from
+     * @return the integer, which is never negative
+     * @throws IOException if the integer is truncated, malformed, or does not
+     * fit in an {@code int}
+     */
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte(buffer);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Read the number of entries that follow.
+     * <p>
+     * Each entry takes at least one byte, so a count larger than what is left
+     * of the buffer can only come from a corrupt file.
+     *
+     * @param buffer the buffer to read from
+     * @return the number of entries
+     * @throws IOException if the count is not valid
+     */
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        int count = readVarInt(buffer);
+        if (count > buffer.remaining()) {
+            throw new IOException("Invalid binary response count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Read an index into a dictionary.
+     *
+     * @param buffer the buffer to read from
+     * @param size the number of entries in the dictionary
+     * @return the index
+     * @throws IOException if the index is not in the dictionary
+     */
+    private static int readIndex(ByteBuffer buffer, int size) throws IOException {
+        int index = readVarInt(buffer);
+        if (index >= size) {
+            throw new IOException("Invalid binary response dictionary index " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Write a length-prefixed UTF-8 string.
+     *
+     * @param out the stream to write to
+     * @param s the string to write
+     * @throws IOException if it could not be written
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, b.length);
+        out.write(b);
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     *
+     * @param buffer the buffer to read from
+     * @return the string
+     * @throws IOException if the string is longer than what is left of the
+     * buffer
+     */
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated binary response string");
+        }
+
+        if (buffer.hasArray()) {
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+
+        byte[] b = new byte[length];
+        buffer.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a value that is not a string, written as JSON text.
+     *
+     * @param buffer the buffer to read from
+     * @return the value
+     * @throws IOException if the value is not valid JSON
+     */
+    private static Object readJSONValue(ByteBuffer buffer) throws IOException {
+        try {
+            return new JSONTokener(readString(buffer)).nextValue();
+        } catch (JSONException e) {
+            throw new IOException("Invalid JSON value in binary response", e);
+        }
+    }
+
+}
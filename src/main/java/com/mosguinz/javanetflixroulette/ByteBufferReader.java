@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A {@link Reader} that decodes characters straight out of a
+ * {@link ByteBuffer}.
+ * <p>
+ * Used to parse memory-mapped responses, so that the content of the file is
+ * decoded in small chunks as the parser asks for it, rather than being copied
+ * into one large {@link String} first.
+ *
+ * @author mosguinz
+ */
+class ByteBufferReader extends Reader {
+
+    /**
+     * The buffer to decode characters from.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The decoder for the charset of the buffer.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Holds characters that were decoded but did not fit in the caller's
+     * array, such as the second half of a surrogate pair.
+     */
+    private final CharBuffer pending = CharBuffer.allocate(2);
+
+    /**
+     * Whether the decoder has been flushed at the end of the buffer.
+     */
+    private boolean flushed;
+
+    /**
+     * Set up a reader for the given buffer.
+     *
+     * @param buffer the buffer to decode characters from
+     * @param charset the charset that the buffer was encoded with
+     */
+    ByteBufferReader(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.pending.flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int n = 0;
+        while (pending.hasRemaining() && n < len) {
+            cbuf[off + n++] = pending.get();
+        }
+
+        if (n < len) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+            decode(out);
+            n += out.position() - (off + n);
+
+            // Nothing fit in the space left, e.g., a surrogate pair in a
+            // one-character read; decode into the pending buffer instead.
+            if (n == 0 && buffer.hasRemaining()) {
+                pending.clear();
+                decode(pending);
+                pending.flip();
+                while (pending.hasRemaining() && n < len) {
+                    cbuf[off + n++] = pending.get();
+                }
+            }
+        }
+
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Decode as many characters as will fit into the given buffer.
+     *
+     * @param out the buffer to decode into
+     * @throws IOException if the content cannot be decoded
+     */
+    private void decode(CharBuffer out) throws IOException {
+        if (flushed) {
+            return;
+        }
+
+        CoderResult result = decoder.decode(buffer, out, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+
+        if (!buffer.hasRemaining()) {
+            result = decoder.flush(out);
+            if (result.isError()) {
+                result.throwException();
+            }
+            flushed = !result.isOverflow();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release; the mapping is released once the buffer is
+        // garbage collected.
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops requests from being sent to the uNoGS API while it is unhealthy.
+ * <p>
+ * When the API is degraded, every request would otherwise wait for the full
+ * socket timeout before failing, and its retries would add to the load. The
+ * breaker counts consecutive failures instead; once there are
+ * {@value #FAILURE_THRESHOLD_PROPERTY} of them, it opens, and requests fail
+ * straight away for {@value #OPEN_TIME_PROPERTY} seconds. After that, a single
+ * request is let through as a trial: if it succeeds, the breaker closes
+ * again, and if it fails, the breaker opens for another period.
+ *
+ * @author mosguinz
+ */
+class CircuitBreaker {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * The system property used to set how many consecutive failures open the
+     * breaker.
+     */
+    static final String FAILURE_THRESHOLD_PROPERTY = "netflixRoulette.breaker.failureThreshold";
+
+    /**
+     * The system property used to set how long the breaker stays open before
+     * a trial request is let through, in seconds.
+     */
+    static final String OPEN_TIME_PROPERTY = "netflixRoulette.breaker.openTime";
+
+    /**
+     * The default number of consecutive failures that open the breaker.
+     */
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time that the breaker stays open, in seconds.
+     */
+    static final int DEFAULT_OPEN_TIME = 30;
+
+    /**
+     * The state of the breaker.
+     */
+    enum State {
+
+        /**
+         * Requests are sent as usual.
+         */
+        CLOSED,
+        /**
+         * Requests fail without being sent.
+         */
+        OPEN,
+        /**
+         * A trial request has been let through, and the others fail without
+         * being sent until it is answered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * How many consecutive failures open the breaker.
+     */
+    private final int failureThreshold;
+
+    /**
+     * How long the breaker stays open, in nanoseconds.
+     */
+    private final long openNanos;
+
+    /**
+     * The state of the breaker.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * The number of consecutive failures.
+     */
+    private int failures;
+
+    /**
+     * When the breaker was last opened, from {@link System#nanoTime()}.
+     */
+    private long openedAt;
+
+    /**
+     * The number of times the breaker has opened.
+     */
+    private long tripCount;
+
+    /**
+     * Set up a closed breaker, configured by the system properties
+     * {@value #FAILURE_THRESHOLD_PROPERTY} and {@value #OPEN_TIME_PROPERTY}.
+     */
+    CircuitBreaker() {
+        LoggingUtil.setupLogger(LOGGER);
+        this.failureThreshold = Math.max(1, Integer.getInteger(FAILURE_THRESHOLD_PROPERTY, DEFAULT_FAILURE_THRESHOLD));
+        this.openNanos = TimeUnit.SECONDS.toNanos(Math.max(1, Integer.getInteger(OPEN_TIME_PROPERTY, DEFAULT_OPEN_TIME)));
+    }
+
+    /**
+     * Check whether a request may be sent, without letting a trial request
+     * through.
+     *
+     * @return {@code false} if the breaker is open, and would not let a trial
+     * request through yet; {@code true} otherwise
+     */
+    synchronized boolean isAllowing() {
+        return state == State.CLOSED || (state == State.OPEN && System.nanoTime() - openedAt >= openNanos);
+    }
+
+    /**
+     * Get permission to send a request.
+     * <p>
+     * If it is granted, the outcome of the request must be passed to either
+     * {@link #recordSuccess()} or {@link #recordFailure()}, as a trial request
+     * holds the breaker half-open until it is.
+     *
+     * @return {@code true} if the request may be sent; {@code false} if it
+     * must fail without being sent
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    LOGGER.log(Level.INFO, "Letting a trial request through to the uNoGS API");
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Record that a request was answered by a healthy server.
+     */
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "The uNoGS API has recovered; closing the circuit breaker");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Record that a request failed in a way that suggests the server is
+     * unhealthy, opening the breaker if there have been too many such
+     * failures in a row, or if it was a trial request.
+     */
+    synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            LOGGER.log(Level.WARNING, "{0} requests to the uNoGS API failed in a row; opening the circuit breaker for {1} seconds",
+                    new Object[]{failures, TimeUnit.NANOSECONDS.toSeconds(openNanos)});
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            tripCount++;
+        }
+    }
+
+    /**
+     * Get the number of seconds until a trial request will be let through.
+     *
+     * @return the number of seconds, or {@code 0} if the breaker is not open
+     */
+    synchronized long getSecondsUntilTrial() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toSeconds(openNanos - (System.nanoTime() - openedAt)));
+    }
+
+    /**
+     * Get the state of the breaker.
+     *
+     * @return the state of the breaker
+     */
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of times the breaker has opened.
+     *
+     * @return the number of times the breaker has opened
+     */
+    synchronized long getTripCount() {
+        return tripCount;
+    }
+
+}
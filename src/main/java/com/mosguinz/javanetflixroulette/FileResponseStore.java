@@ -0,0 +1,571 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A {@link ResponseStore} that saves each response to its own file in the
+ * library folder.
+ * <p>
+ * Title responses are named by a hash of their query string, and are also
+ * listed in the {@link ResponseIndex}. Files are written in the background by
+ * the {@link ResponseWriter}, kept within their limits by the
+ * {@link LibraryEvictor}, and counted by {@link LibraryMetrics}. The folder
+ * may be shared with other instances of the application; see
+ * {@link LibraryLock}.
+ *
+ * @author mosguinz
+ */
+class FileResponseStore implements ResponseStore {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(FileResponseStore.class.getName());
+
+    /**
+     * The system property used to select how saved responses are read.
+     * <p>
+     * Either {@code mapped}, to parse responses straight out of a
+     * memory-mapped file, or {@code scanner}, to read the whole file into a
+     * {@link String} before parsing it.
+     *
+     * @see #loadSavedResponse(java.lang.String)
+     */
+    static final String READER_PROPERTY = "netflixRoulette.reader";
+
+    /**
+     * Whether saved responses are read from memory-mapped files.
+     * <p>
+     * Defaults to {@code true}, except on Windows, where a file cannot be
+     * replaced or deleted while a mapping of it is still waiting to be garbage
+     * collected.
+     *
+     * @see #READER_PROPERTY
+     */
+    private static final boolean USE_MAPPED_READER = System.getProperty(READER_PROPERTY,
+            System.getProperty("os.name", "").startsWith("Windows") ? "scanner" : "mapped")
+            .equals("mapped");
+
+    /**
+     * The library folder.
+     */
+    private final File directory;
+
+    /**
+     * The running totals of the number and size of files in the library
+     * folder.
+     */
+    private final LibraryMetrics metrics;
+
+    /**
+     * Coordinates access to the library folder with other threads and other
+     * instances of the application.
+     */
+    private final LibraryLock lock;
+
+    /**
+     * The index of saved {@code fetchTitles} responses by their query string.
+     *
+     * @see #loadMatchingResponseQuery(java.lang.String,
+     * java.util.function.Predicate)
+     */
+    private final ResponseIndex index;
+
+    /**
+     * The background writer for saving responses.
+     */
+    private final ResponseWriter writer;
+
+    /**
+     * Keeps the library folder within its size and file count limits.
+     */
+    private final LibraryEvictor evictor;
+
+    /**
+     * Create a store over the given library folder.
+     *
+     * @param directory the library folder
+     * @param maxResponseAge the maximum age of a response in days, after which
+     * it may be evicted
+     */
+    FileResponseStore(File directory, int maxResponseAge) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+        this.metrics = new LibraryMetrics(directory);
+        this.lock = LibraryLock.of(directory);
+        this.index = new ResponseIndex(directory, metrics, lock);
+        this.writer = new ResponseWriter(directory, metrics, lock);
+        this.evictor = new LibraryEvictor(directory, lock, maxResponseAge,
+                (filename, length) -> {
+                    index.removeFile(filename);
+                    metrics.recordDelete(filename, length);
+                });
+    }
+
+    @Override
+    public void open() {
+        makeLibraryDirectory();
+        writer.deleteTemporaryFiles();
+        index.load((filename) -> {
+            JSONObject r;
+            try {
+                r = lock.withShared(() -> BinaryResponseCodec.readHeader(new File(directory, filename)));
+            } catch (IOException | JSONException e) {
+                r = null;
+            }
+            if (r == null) {
+                r = loadSavedResponse(filename);
+            }
+            return r == null ? null : r.optString("Q-STRING", null);
+        });
+        metrics.start();
+        evictor.start();
+    }
+
+    /**
+     * Create the library directory.
+     *
+     * @return {@code true} if and only if the directory was created;
+     * {@code false} otherwise
+     */
+    private boolean makeLibraryDirectory() {
+        LOGGER.log(Level.INFO, "Creating the library directory at: {0}", directory);
+
+        if (directory.exists()) {
+            LOGGER.log(Level.INFO, "Library directory already exists");
+            return false;
+        } else {
+            return directory.mkdirs();
+        }
+
+    }
+
+    /**
+     * Get the filename to use for reading/writing a response.
+     * <p>
+     * For titles, the name is derived from a hash of the query string, so
+     * that a response for the same query is always saved to, and looked up
+     * from, the same file.
+     * <p>
+     * For other types of query, it will return the same name, corresponding to
+     * the query type and key. This will result in overwriting the existing
+     * file, as it is assumed to be either invalid or expired.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, or {@value TitleStore#QUERY_TYPE}
+     * @param key a {@link String} that is the query string for requesting
+     * titles, or the part for {@value TitleStore#QUERY_TYPE}
+     * @param extension the file extension, without the leading dot
+     * @return a {@link String} that is the filename for the response
+     */
+    private static String getResponseFilename(String queryType, String key, String extension) {
+        if (queryType.equals("fetchTitles")) {
+            return "fetchTitles." + hashQueryString(key) + "." + extension;
+        } else if (key != null) {
+            return queryType + "." + key + "." + extension;
+        } else {
+            return queryType + ".json";
+        }
+    }
+
+    /**
+     * Hash a query string for use in a filename.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @return the first 64 bits of the SHA-256 hash of the query string, as
+     * hexadecimal
+     */
+    private static String hashQueryString(String titlesQueryString) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(titlesQueryString.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The response is handed to the {@link ResponseWriter} to be encoded and
+     * written in the background.
+     */
+    @Override
+    public boolean save(String queryType, String key, JSONObject response) {
+        boolean binary = LocalLibrary.usesBinaryFormat(queryType);
+        String filename = getResponseFilename(queryType, key, binary ? "dat" : "json");
+        LOGGER.log(Level.FINE, "Saving the response as: {0}", filename);
+
+        writer.write(filename, () -> LocalLibrary.encodeResponse(queryType, response), () -> {
+            if (queryType.equals("fetchTitles")) {
+                indexSavedResponse(key, filename);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The saved response is read, merged and encoded on the
+     * {@link ResponseWriter}'s thread, while it holds the exclusive lock.
+     */
+    @Override
+    public boolean update(String queryType, String key, UnaryOperator<JSONObject> merge) {
+        String filename = getResponseFilename(queryType, key, LocalLibrary.usesBinaryFormat(queryType) ? "dat" : "json");
+        LOGGER.log(Level.FINE, "Updating the response saved as: {0}", filename);
+
+        Supplier<byte[]> content = () -> LocalLibrary.encodeResponse(queryType,
+                merge.apply(load(queryType, key, (header) -> true)));
+
+        writer.update(filename, content, () -> {
+            if (queryType.equals("fetchTitles")) {
+                indexSavedResponse(key, filename);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Add a title response that has been written to the index.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @param filename the name of the file that the response was written to
+     */
+    private void indexSavedResponse(String titlesQueryString, String filename) {
+        LOGGER.log(Level.FINE, "Adding the response to the index...");
+        evictor.recordAccess(filename);
+        String previous = index.get(titlesQueryString);
+        index.put(titlesQueryString, filename);
+
+        // Remove the response previously saved for this query under a
+        // different name, e.g., in the other format.
+        if (previous != null && !previous.equals(filename)) {
+            LOGGER.log(Level.FINE, "Deleting superseded response {0}", previous);
+            File f = new File(directory, previous);
+            long length = f.length();
+            if (f.delete()) {
+                metrics.recordDelete(previous, length);
+            }
+        }
+
+        evictor.requestPass();
+    }
+
+    @Override
+    public JSONObject load(String queryType, String key, Predicate<JSONObject> isCurrent) {
+        if (queryType.equals("fetchTitles")) {
+            return loadMatchingResponseQuery(key, isCurrent);
+        } else if (key != null) {
+            String filename = getResponseFilename(queryType, key, LocalLibrary.usesBinaryFormat(queryType) ? "dat" : "json");
+            return new File(directory, filename).isFile() ? loadSavedResponse(filename) : null;
+        } else {
+            return loadSavedResponse(queryType + ".json");
+        }
+    }
+
+    /**
+     * Load and parse the saved response.
+     * <p>
+     * Load and return the response file as a {@link JSONObject}. The file is
+     * read with either {@link #readMapped(java.io.File)} or
+     * {@link #readWithScanner(java.io.File)}, depending on
+     * {@link #READER_PROPERTY}. Both binary and JSON responses are detected
+     * and read.
+     *
+     * @param filename the name of the response file
+     * @return the response file as a {@link JSONObject}
+     */
+    private JSONObject loadSavedResponse(String filename) {
+
+        JSONObject responseFile = null;
+        File file = new File(directory, filename);
+
+        try {
+            responseFile = lock.withShared(() -> {
+                long start = System.nanoTime();
+                JSONObject r = USE_MAPPED_READER ? readMapped(file) : readWithScanner(file);
+                evictor.recordAccess(filename);
+                LOGGER.log(Level.FINE, "Found a matching saved response to use; read {0} bytes in {1} ms ({2} reader)",
+                        new Object[]{file.length(), (System.nanoTime() - start) / 1e+6, USE_MAPPED_READER ? "mapped" : "scanner"});
+                return r;
+            });
+        } catch (FileNotFoundException e) {
+            LOGGER.log(Level.INFO, "No saved response found...");
+        } catch (IOException | JSONException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not load saved responses...");
+        }
+
+        return responseFile;
+    }
+
+    /**
+     * Read a response by loading the whole file into a {@link String}.
+     * <p>
+     * Binary responses are loaded into a byte array instead.
+     *
+     * @param file the response file
+     * @return the response file as a {@link JSONObject}
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException if the file could not be read
+     */
+    private static JSONObject readWithScanner(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.read(magic);
+        }
+
+        if (read == magic.length && BinaryResponseCodec.isBinary(ByteBuffer.wrap(magic))) {
+            return BinaryResponseCodec.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        }
+
+        try (Scanner f = new Scanner(file).useDelimiter("\\Z")) {
+            return new JSONObject(f.next());
+        }
+    }
+
+    /**
+     * Read a response by mapping the file into memory.
+     * <p>
+     * The response is parsed straight out of the mapped buffer, without
+     * building an intermediate {@link String} of the whole file.
+     *
+     * @param file the response file
+     * @return the response file as a {@link JSONObject}
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException if the file could not be mapped
+     */
+    private static JSONObject readMapped(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.toString());
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return LocalLibrary.decodeResponse(buffer);
+        }
+    }
+
+    /**
+     * Find a response with the matching query string.
+     * <p>
+     * Looks for a saved response for the query type {@code fetchTitles} that
+     * has the matching query string.
+     * <p>
+     * The filename of the response is computed from the query string, in
+     * either format. Responses saved under older names are looked up in the
+     * {@link ResponseIndex} instead. If one cannot be found, then it will
+     * return {@code null}.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @param isCurrent tests the header of a saved response for whether it is
+     * fresh enough
+     * @return the response file as a {@link JSONObject}
+     */
+    private JSONObject loadMatchingResponseQuery(String titlesQueryString, Predicate<JSONObject> isCurrent) {
+        LOGGER.log(Level.INFO, "Looking for a response with a matching query string");
+
+        String[] extensions = LocalLibrary.usesBinaryFormat("fetchTitles") ? new String[]{"dat", "json"} : new String[]{"json", "dat"};
+        for (String extension : extensions) {
+            String filename = getResponseFilename("fetchTitles", titlesQueryString, extension);
+            if (new File(directory, filename).isFile()) {
+                return loadResponseIfCurrent(filename, titlesQueryString, isCurrent);
+            }
+        }
+
+        String filename = index.get(titlesQueryString);
+
+        if (filename == null) {
+            return null;
+        }
+
+        if (!new File(directory, filename).isFile()) {
+            LOGGER.log(Level.INFO, "Indexed response {0} is missing, removing it from the index", filename);
+            index.remove(titlesQueryString);
+            return null;
+        }
+
+        return loadResponseIfCurrent(filename, titlesQueryString, isCurrent);
+    }
+
+    /**
+     * Load a title response, unless its header shows that it is expired or
+     * that it was saved for a different query string.
+     * <p>
+     * Binary responses are checked by reading only their header, so that a
+     * response that cannot be used is rejected without reading its titles.
+     * JSON responses have no header and are always loaded in full.
+     *
+     * @param filename the name of the response file
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @param isCurrent tests the header of a saved response for whether it is
+     * fresh enough
+     * @return the response file as a {@link JSONObject}, or {@code null} if it
+     * cannot be used
+     */
+    private JSONObject loadResponseIfCurrent(String filename, String titlesQueryString, Predicate<JSONObject> isCurrent) {
+        try {
+            JSONObject header = lock.withShared(() -> BinaryResponseCodec.readHeader(new File(directory, filename)));
+            if (header != null) {
+                // Guard against hash collisions.
+                if (!titlesQueryString.equals(header.optString("Q-STRING", null))) {
+                    LOGGER.log(Level.INFO, "Response {0} was saved for a different query", filename);
+                    return null;
+                }
+                if (!isCurrent.test(header)) {
+                    LOGGER.log(Level.INFO, "Response {0} has expired", filename);
+                    return null;
+                }
+            }
+        } catch (IOException | JSONException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not read response header, loading the whole response...");
+        }
+
+        JSONObject r = loadSavedResponse(filename);
+        if (r != null && titlesQueryString.equals(r.optString("Q-STRING", null))) {
+            return r;
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The query strings are read from the {@link ResponseIndex}.
+     */
+    @Override
+    public Set<String> getTitlesQueryStrings() {
+        return index.getQueryStrings();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The count is a running total kept by {@link LibraryMetrics}, so the
+     * library folder is not listed.
+     */
+    @Override
+    public long getResponseCount() {
+        return metrics.getFileCount();
+    }
+
+    @Override
+    public long getResponseCount(String queryType) {
+        return metrics.getFileCount(queryType);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The size is a running total kept by {@link LibraryMetrics}, so the
+     * library folder is not listed.
+     */
+    @Override
+    public long getByteSize() {
+        return metrics.getByteSize();
+    }
+
+    @Override
+    public long getByteSize(String queryType) {
+        return metrics.getByteSize(queryType);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Deletes everything in the library folder, except for the lock file and
+     * the daily quota of the {@link RequestScheduler}.
+     */
+    @Override
+    public void clear() {
+        writer.flush();
+        lock.runExclusive(() -> {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    // Other instances may be waiting on the lock file, and
+                    // the requests sent today still count.
+                    if (file.getName().equals(LibraryLock.LOCK_FILENAME)
+                            || file.getName().equals(RequestScheduler.QUOTA_FILENAME)) {
+                        continue;
+                    }
+
+                    long length = file.length();
+                    if (file.delete()) {
+                        metrics.recordDelete(file.getName(), length);
+                    }
+                }
+            }
+            index.clear();
+        });
+        evictor.clear();
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        return writer.getQueueDepth();
+    }
+
+    @Override
+    public double getAverageWriteLatency() {
+        return writer.getAverageWriteLatency();
+    }
+
+}
@@ -29,12 +29,16 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ComboBoxModel;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -92,9 +96,15 @@ public class HomeGUI extends javax.swing.JFrame {
     public HomeGUI() {
         LoggingUtil.setupLogger(LOGGER);
 
+        long start = System.nanoTime();
         netflixLibrary = new NetflixLibrary();
+        long libraryReady = System.nanoTime();
         initComponents();
         genreCheckBoxes = generateGenreCheckBoxes();
+        long end = System.nanoTime();
+
+        LOGGER.log(Level.INFO, "Started up in {0} ms: library {1} ms, components {2} ms",
+                new Object[]{(end - start) / 1e+6, (libraryReady - start) / 1e+6, (end - libraryReady) / 1e+6});
     }
 
     /**
@@ -874,12 +884,23 @@ public class HomeGUI extends javax.swing.JFrame {
         rollButton.paintImmediately(rollButton.getVisibleRect());
         setQueryValues();
 
-        if (inputIsValid) {
-            getNetflixTitle();
+        if (!inputIsValid) {
+            rollButton.setText("Roll");
+            rollButton.setEnabled(true);
+            return;
         }
 
-        rollButton.setText("Roll");
-        rollButton.setEnabled(true);
+        getNetflixTitle().whenComplete((v, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                LOGGER.log(Level.WARNING, "Could not get a Netflix title", cause);
+                if (cause instanceof TimeoutException) {
+                    displayErrorMessage("The Netflix library took too long to respond. Please try again.", "Connection timed out");
+                }
+            }
+            rollButton.setText("Roll");
+            rollButton.setEnabled(true);
+        }));
     }//GEN-LAST:event_rollButtonActionPerformed
 
     private void HowToUseButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_HowToUseButtonActionPerformed
@@ -1100,17 +1121,24 @@ public class HomeGUI extends javax.swing.JFrame {
 
     /**
      * Get Netflix title with the selected values.
+     * <p>
+     * The titles are fetched without blocking the event dispatch thread; the
+     * selected title is displayed on it once they arrive, and its poster
+     * image is loaded in the background after that.
+     *
+     * @return a {@link CompletableFuture} that completes once a title has
+     * been displayed, or it turned out that there was none to display
      */
-    public void getNetflixTitle() {
-        JSONArray netflixTitles;
-        netflixTitles = netflixLibrary.fetchTitles();
-
-        // Pick a title and display it.
-        if (netflixTitles != null) {
-            JSONObject selectedTitle = NetflixLibrary.selectRandomTitle(netflixTitles);
-            selectedTitleGUI.setParentFrame(this);
-            selectedTitleGUI.updateTitleInfo(selectedTitle);
-        }
+    public CompletableFuture<Void> getNetflixTitle() {
+        return netflixLibrary.fetchTitlesAsync()
+                .thenApply((netflixTitles) -> netflixTitles == null ? null : NetflixLibrary.selectRandomTitle(netflixTitles))
+                .thenAcceptAsync((selectedTitle) -> {
+                    // Pick a title and display it.
+                    if (selectedTitle != null) {
+                        selectedTitleGUI.setParentFrame(this);
+                        selectedTitleGUI.updateTitleInfo(selectedTitle);
+                    }
+                }, SwingUtilities::invokeLater);
     }
 
     /**
@@ -1138,13 +1166,22 @@ public class HomeGUI extends javax.swing.JFrame {
      * Update metrics of the local library.
      * <p>
      * These metrics include file count, folder size, and its location. These
-     * are displayed in the settings dialog.
+     * are displayed in the settings dialog, with a breakdown by query type in
+     * their tooltips.
      */
     private void updateLocalLibraryMetrics() {
         File libraryPath = LocalLibrary.getLibraryPath();
         locationValue.setText(libraryPath.getAbsolutePath());
         responsesValue.setText(String.valueOf(LocalLibrary.getLibraryFileCount()));
         cacheSizeValue.setText(String.format("%.2f MB", LocalLibrary.getLibraryFolderSize() / 1e+6));
+
+        String breakdown = String.format("<html>Titles: %d (%.2f MB)<br>Genres: %d (%.2f MB)<br>Regions: %d (%.2f MB)<br>Title details: %d (%.2f MB)</html>",
+                LocalLibrary.getLibraryFileCount("fetchTitles"), LocalLibrary.getLibraryFolderSize("fetchTitles") / 1e+6,
+                LocalLibrary.getLibraryFileCount("fetchGenres"), LocalLibrary.getLibraryFolderSize("fetchGenres") / 1e+6,
+                LocalLibrary.getLibraryFileCount("fetchAvailableRegions"), LocalLibrary.getLibraryFolderSize("fetchAvailableRegions") / 1e+6,
+                LocalLibrary.getLibraryFileCount(TitleStore.QUERY_TYPE), LocalLibrary.getLibraryFolderSize(TitleStore.QUERY_TYPE) / 1e+6);
+        responsesValue.setToolTipText(breakdown);
+        cacheSizeValue.setToolTipText(breakdown);
     }
 
     /**
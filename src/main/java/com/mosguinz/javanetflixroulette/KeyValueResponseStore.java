@@ -0,0 +1,586 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A {@link ResponseStore} that keeps every response in a single data file,
+ * {@value #DATA_FILENAME}, in the library folder.
+ * <p>
+ * The data file is an append-only log. After a short header of
+ * {@link #MAGIC} and {@link #VERSION}, each record is:
+ * <ol>
+ * <li>the length of the key, as an {@code int}, and the key in UTF-8;</li>
+ * <li>the length of the value, as an {@code int}, or {@code -1} if the key
+ * was deleted; and</li>
+ * <li>the value, encoded as it would be saved to its own file.</li>
+ * </ol>
+ * The offset of the latest record of each key is kept in memory, and rebuilt
+ * by scanning the log when the store is opened. Saving a response appends a
+ * record; once more than half of the file is taken up by records that have
+ * been superseded, the live records are copied to a new file, which replaces
+ * the old one.
+ * <p>
+ * The data file is locked while it is open, so only one instance of the
+ * application can use it at a time.
+ *
+ * @author mosguinz
+ */
+class KeyValueResponseStore implements ResponseStore {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(KeyValueResponseStore.class.getName());
+
+    /**
+     * The name of the data file in the library folder.
+     */
+    static final String DATA_FILENAME = "library.db";
+
+    /**
+     * The bytes that every data file starts with.
+     */
+    private static final byte[] MAGIC = {'N', 'F', 'K', 'V'};
+
+    /**
+     * The version of the data file layout.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * The length of the data file header, in bytes.
+     */
+    private static final int HEADER_LENGTH = MAGIC.length + Short.BYTES;
+
+    /**
+     * The value length that marks a deleted key.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * The amount of superseded records, in bytes, below which the data file
+     * is never compacted.
+     */
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    /**
+     * Whether each record is synced to disk after it is appended.
+     *
+     * @see ResponseWriter#FSYNC_PROPERTY
+     */
+    private static final boolean FSYNC = Boolean.getBoolean(ResponseWriter.FSYNC_PROPERTY);
+
+    /**
+     * Where the latest value of a key is in the data file.
+     */
+    private static final class Location {
+
+        /**
+         * The query type of the key.
+         */
+        final String queryType;
+
+        /**
+         * The offset of the record.
+         */
+        final long offset;
+
+        /**
+         * The length of the whole record, in bytes.
+         */
+        final int recordLength;
+
+        /**
+         * The length of the value, in bytes.
+         */
+        final int valueLength;
+
+        Location(String queryType, long offset, int recordLength, int valueLength) {
+            this.queryType = queryType;
+            this.offset = offset;
+            this.recordLength = recordLength;
+            this.valueLength = valueLength;
+        }
+
+        /**
+         * Get the offset of the value.
+         *
+         * @return the offset of the value in the data file
+         */
+        long getValueOffset() {
+            return offset + recordLength - valueLength;
+        }
+    }
+
+    /**
+     * The data file.
+     */
+    private final File file;
+
+    /**
+     * The open data file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The lock held on the data file while it is open.
+     */
+    private FileLock lock;
+
+    /**
+     * The latest record of each key.
+     */
+    private final Map<String, Location> locations = new HashMap<>();
+
+    /**
+     * The number of bytes taken up by records that have been superseded.
+     */
+    private long deadBytes;
+
+    /**
+     * The amount of superseded records, in bytes, above which the data file
+     * is compacted. Raised after a compaction fails, so that it is not tried
+     * again on every save.
+     */
+    private long compactionBytes = MIN_COMPACTION_BYTES;
+
+    /**
+     * Open, or create, the data file in the given library folder.
+     *
+     * @param directory the library folder
+     * @throws IOException if the data file could not be opened, or is in use
+     * by another instance of the application
+     */
+    KeyValueResponseStore(File directory) throws IOException {
+        LoggingUtil.setupLogger(LOGGER);
+        this.file = new File(directory, DATA_FILENAME);
+        directory.mkdirs();
+        openDataFile();
+        scan();
+    }
+
+    /**
+     * Open the data file and lock it.
+     *
+     * @throws IOException if the data file could not be opened, or is in use
+     * by another instance of the application
+     */
+    private void openDataFile() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already locked by a store in this JVM.
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException(file + " is in use by another instance");
+        }
+
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.put(MAGIC).putShort(VERSION).flip();
+            writeFully(header, 0);
+        }
+    }
+
+    /**
+     * Rebuild the locations of the keys by reading the data file from the
+     * start.
+     * <p>
+     * A record that was only partly written, e.g., because the application
+     * crashed, is cut off.
+     *
+     * @throws IOException if the data file could not be read, or is not a
+     * data file
+     */
+    private void scan() throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(header, 0);
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.getShort() != VERSION) {
+            throw new IOException(file + " is not a supported data file");
+        }
+
+        long size = channel.size();
+        long offset = HEADER_LENGTH;
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        try {
+            while (offset < size) {
+                length.clear();
+                readFully(length, offset);
+                int keyLength = length.getInt(0);
+                ByteBuffer key = ByteBuffer.allocate(keyLength);
+                readFully(key, offset + Integer.BYTES);
+                length.clear();
+                readFully(length, offset + Integer.BYTES + keyLength);
+                int valueLength = length.getInt(0);
+
+                int recordLength = 2 * Integer.BYTES + keyLength + Math.max(valueLength, 0);
+                if (valueLength < TOMBSTONE || offset + recordLength > size) {
+                    throw new EOFException();
+                }
+
+                put(new String(key.array(), StandardCharsets.UTF_8), offset, recordLength, valueLength);
+                offset += recordLength;
+            }
+        } catch (EOFException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Cutting off a partly written record at {0}", offset);
+            channel.truncate(offset);
+        }
+
+        LOGGER.log(Level.INFO, "Loaded {0} responses from {1} in {2} ms",
+                new Object[]{locations.size(), DATA_FILENAME, (System.nanoTime() - start) / 1e+6});
+    }
+
+    /**
+     * Record the latest record of a key.
+     *
+     * @param key the key
+     * @param offset the offset of the record
+     * @param recordLength the length of the whole record
+     * @param valueLength the length of the value, or {@link #TOMBSTONE}
+     */
+    private void put(String key, long offset, int recordLength, int valueLength) {
+        Location previous = valueLength == TOMBSTONE
+                ? locations.remove(key)
+                : locations.put(key, new Location(getQueryType(key), offset, recordLength, valueLength));
+        if (previous != null) {
+            deadBytes += previous.recordLength;
+        }
+        if (valueLength == TOMBSTONE) {
+            deadBytes += recordLength;
+        }
+    }
+
+    /**
+     * Get the key that a response is stored under.
+     *
+     * @param queryType the query type of the response
+     * @param key the key of the response within its query type, if any
+     * @return the key for the response
+     */
+    private static String getKey(String queryType, String key) {
+        return key == null ? queryType : queryType + "?" + key;
+    }
+
+    /**
+     * Get the query type of a stored response from its key.
+     *
+     * @param key the key of the response
+     * @return the query type of the response
+     */
+    private static String getQueryType(String key) {
+        int i = key.indexOf('?');
+        return i < 0 ? key : key.substring(0, i);
+    }
+
+    @Override
+    public void open() {
+        // The data file is opened as soon as the store is created.
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The response is appended to the data file before this method returns.
+     */
+    @Override
+    public boolean save(String queryType, String key, JSONObject response) {
+        byte[] value = LocalLibrary.encodeResponse(queryType, response);
+
+        try {
+            append(getKey(queryType, key), value);
+            return true;
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Failed to save the response");
+            return false;
+        }
+    }
+
+    /**
+     * Append a record to the data file.
+     *
+     * @param key the key
+     * @param value the value, or {@code null} to delete the key
+     * @throws IOException if the record could not be written
+     */
+    private synchronized void append(String key, byte[] value) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + k.length + Math.max(valueLength, 0));
+        record.putInt(k.length).put(k).putInt(valueLength);
+        if (value != null) {
+            record.put(value);
+        }
+        record.flip();
+
+        long offset = channel.size();
+        writeFully(record, offset);
+        if (FSYNC) {
+            channel.force(false);
+        }
+        put(key, offset, record.capacity(), valueLength);
+
+        if (deadBytes > compactionBytes && deadBytes > channel.size() / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Copy the live records to a new data file, which replaces the old one.
+     * <p>
+     * The new file is locked before it is moved over the old one, and the
+     * old one is only closed after, so that another instance of the
+     * application cannot take the data file in between. Where an open file
+     * cannot be replaced, the old one is closed first, and opened again if
+     * the new one still cannot be moved into place. If the new file cannot
+     * be written or moved into place, the old one is kept, and the data file
+     * is not compacted again until the superseded records have doubled.
+     */
+    private void compact() {
+        long start = System.nanoTime();
+        Path temp = null;
+        FileChannel out = null;
+        FileLock outLock;
+        long before;
+        Map<String, Location> compacted = new HashMap<>();
+
+        try {
+            before = channel.size();
+            temp = Files.createTempFile(file.getParentFile().toPath(), "." + DATA_FILENAME + ".", ".tmp");
+            out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            outLock = out.tryLock();
+            if (outLock == null) {
+                throw new IOException(temp + " is in use");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.put(MAGIC).putShort(VERSION).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+
+            for (Map.Entry<String, Location> e : locations.entrySet()) {
+                Location l = e.getValue();
+                long offset = out.position();
+                long position = l.offset;
+                long end = l.offset + l.recordLength;
+                while (position < end) {
+                    long transferred = channel.transferTo(position, end - position, out);
+                    if (transferred == 0) {
+                        throw new EOFException();
+                    }
+                    position += transferred;
+                }
+                compacted.put(e.getKey(), new Location(l.queryType, offset, l.recordLength, l.valueLength));
+            }
+            out.force(false);
+
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Some platforms, e.g., Windows, cannot replace a file that is open.
+                LOGGER.log(Level.FINE, "Could not replace the open data file, closing it first", e);
+                channel.close();
+                try {
+                    Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    openDataFile();
+                    throw ex;
+                }
+            }
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Failed to compact the data file, keeping the old one");
+            compactionBytes = deadBytes * 2;
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ex) {
+                LoggingUtil.logException(LOGGER, ex, "Failed to delete the compacted data file");
+            }
+            return;
+        }
+
+        FileChannel old = channel;
+        channel = out;
+        lock = outLock;
+        try {
+            // Closing the old data file releases its lock too.
+            old.close();
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Failed to close the old data file");
+        }
+
+        locations.clear();
+        locations.putAll(compacted);
+        deadBytes = 0;
+        compactionBytes = MIN_COMPACTION_BYTES;
+        LOGGER.log(Level.INFO, "Compacted {0} from {1} to {2} bytes in {3} ms",
+                new Object[]{DATA_FILENAME, before, getByteSize(), (System.nanoTime() - start) / 1e+6});
+    }
+
+    @Override
+    public JSONObject load(String queryType, String key, Predicate<JSONObject> isCurrent) {
+        ByteBuffer value;
+        synchronized (this) {
+            Location l = locations.get(getKey(queryType, key));
+            if (l == null) {
+                return null;
+            }
+
+            value = ByteBuffer.allocate(l.valueLength);
+            try {
+                readFully(value, l.getValueOffset());
+            } catch (IOException e) {
+                LoggingUtil.logException(LOGGER, e, "Could not load saved response...");
+                return null;
+            }
+        }
+
+        try {
+            value.flip();
+            return LocalLibrary.decodeResponseIfCurrent(value, isCurrent);
+        } catch (IOException | JSONException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not decode saved response...");
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized Set<String> getTitlesQueryStrings() {
+        String prefix = getKey("fetchTitles", "");
+        return locations.keySet().stream()
+                .filter((key) -> key.startsWith(prefix))
+                .map((key) -> key.substring(prefix.length()))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public synchronized long getResponseCount() {
+        return locations.size();
+    }
+
+    @Override
+    public synchronized long getResponseCount(String queryType) {
+        return locations.values().stream().filter((l) -> l.queryType.equals(queryType)).count();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the size of the whole data file, including records that have
+     * been superseded but not yet compacted away.
+     */
+    @Override
+    public synchronized long getByteSize() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized long getByteSize(String queryType) {
+        return locations.values().stream()
+                .filter((l) -> l.queryType.equals(queryType))
+                .mapToLong((l) -> l.recordLength)
+                .sum();
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            channel.truncate(HEADER_LENGTH);
+            locations.clear();
+            deadBytes = 0;
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not clear the data file");
+        }
+    }
+
+    /**
+     * Read from the data file until the buffer is full.
+     *
+     * @param buffer the buffer to fill
+     * @param position the offset in the data file to read from
+     * @throws EOFException if the end of the data file is reached first
+     * @throws IOException if the data file could not be read
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Write the whole buffer to the data file.
+     *
+     * @param buffer the buffer to write
+     * @param position the offset in the data file to write to
+     * @throws IOException if the data file could not be written
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+}
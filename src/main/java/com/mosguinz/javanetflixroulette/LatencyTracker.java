@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests of a kind, to estimate how
+ * long the next one is likely to take.
+ *
+ * @author mosguinz
+ */
+class LatencyTracker {
+
+    /**
+     * The latencies of the most recent requests, in nanoseconds, as a ring.
+     */
+    private final long[] samples;
+
+    /**
+     * The number of latencies recorded, up to the length of {@link #samples}.
+     */
+    private int count;
+
+    /**
+     * The index in {@link #samples} to record the next latency at.
+     */
+    private int next;
+
+    /**
+     * Set up a tracker that keeps the given number of latencies.
+     *
+     * @param size the number of latencies to keep
+     */
+    LatencyTracker(int size) {
+        this.samples = new long[size];
+    }
+
+    /**
+     * Record the latency of a request, replacing the oldest one kept if there
+     * is no room.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Get a percentile of the latencies kept.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @param minSamples the fewest latencies that the percentile may be taken
+     * from
+     * @return the latency at the percentile, in nanoseconds, or {@code -1} if
+     * fewer than {@code minSamples} latencies have been recorded
+     */
+    synchronized long getPercentile(double percentile, int minSamples) {
+        if (count == 0 || count < minSamples) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+}
@@ -0,0 +1,333 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the library folder within a maximum size and file count.
+ * <p>
+ * Responses are evicted in the background, a batch at a time. Expired
+ * responses are evicted first, followed by the least recently used ones, until
+ * the library folder is back within its limits. The genres and regions
+ * responses are needed on startup and are never evicted.
+ * <p>
+ * The parts of the {@link TitleStore} are never evicted either, and do not
+ * count towards the limits: they are shared by every title response, and
+ * evicting one would make every response with a title in it unusable. There
+ * are {@value TitleStore#PART_COUNT} of them, and since each title is kept
+ * once, their size is bounded by the catalogue of Netflix titles rather than
+ * by the number of responses.
+ * <p>
+ * The limits can be set with the system properties {@value #MAX_BYTES_PROPERTY}
+ * and {@value #MAX_FILES_PROPERTY}.
+ *
+ * @author mosguinz
+ */
+class LibraryEvictor {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(LibraryEvictor.class.getName());
+
+    /**
+     * The system property used to set the maximum size of the library folder,
+     * in bytes.
+     */
+    static final String MAX_BYTES_PROPERTY = "netflixRoulette.library.maxBytes";
+
+    /**
+     * The system property used to set the maximum number of files in the
+     * library folder.
+     */
+    static final String MAX_FILES_PROPERTY = "netflixRoulette.library.maxFiles";
+
+    /**
+     * The default maximum size of the library folder, in bytes.
+     */
+    static final long DEFAULT_MAX_BYTES = 100_000_000L;
+
+    /**
+     * The default maximum number of files in the library folder.
+     */
+    static final int DEFAULT_MAX_FILES = 500;
+
+    /**
+     * The maximum number of responses evicted in one pass.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * How often the library folder is checked, in minutes.
+     */
+    private static final int CHECK_INTERVAL = 10;
+
+    /**
+     * The files that are never evicted.
+     */
+    private static final Set<String> PROTECTED_FILES = new HashSet<>(Arrays.asList(
+            "fetchGenres.json", "fetchAvailableRegions.json", ResponseIndex.INDEX_FILENAME));
+
+    /**
+     * The library folder.
+     */
+    private final File directory;
+
+    /**
+     * Coordinates access to the library folder.
+     */
+    private final LibraryLock lock;
+
+    /**
+     * The maximum age of a response, in days.
+     */
+    private final int maxAge;
+
+    /**
+     * The maximum size of the library folder, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * The maximum number of files in the library folder.
+     */
+    private final int maxFiles;
+
+    /**
+     * Called with the name and length of each evicted response.
+     */
+    private final BiConsumer<String, Long> onEvicted;
+
+    /**
+     * When each response was last used, by filename.
+     * <p>
+     * Responses that have not been used since startup fall back to the time
+     * they were written.
+     */
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a pass has already been scheduled.
+     */
+    private final AtomicBoolean passScheduled = new AtomicBoolean();
+
+    /**
+     * Whether the periodic check has been started.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * The executor that runs the passes.
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "library-evictor");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /**
+     * Set up an evictor for the given directory, with limits given by the
+     * system properties {@value #MAX_BYTES_PROPERTY} and
+     * {@value #MAX_FILES_PROPERTY}.
+     *
+     * @param directory the library folder
+     * @param lock coordinates access to the library folder
+     * @param maxAge the maximum age of a response, in days
+     * @param onEvicted called with the name and length of each evicted
+     * response
+     */
+    LibraryEvictor(File directory, LibraryLock lock, int maxAge, BiConsumer<String, Long> onEvicted) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+        this.lock = lock;
+        this.maxAge = maxAge;
+        this.maxBytes = Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES);
+        this.maxFiles = Integer.getInteger(MAX_FILES_PROPERTY, DEFAULT_MAX_FILES);
+        this.onEvicted = onEvicted;
+        LOGGER.log(Level.CONFIG, "Library folder is limited to {0} bytes and {1} files", new Object[]{maxBytes, maxFiles});
+    }
+
+    /**
+     * Start checking the library folder periodically.
+     */
+    void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::requestPass, 0, CHECK_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Record that a response was used.
+     *
+     * @param filename the name of the response file
+     */
+    void recordAccess(String filename) {
+        lastAccess.put(filename, System.currentTimeMillis());
+    }
+
+    /**
+     * Schedule a pass, unless one is already waiting to run.
+     */
+    void requestPass() {
+        if (passScheduled.compareAndSet(false, true)) {
+            executor.execute(this::pass);
+        }
+    }
+
+    /**
+     * Forget the recorded access times, e.g., after the library folder has
+     * been cleared.
+     */
+    void clear() {
+        lastAccess.clear();
+    }
+
+    /**
+     * Evict a batch of responses, and schedule another pass if the library
+     * folder is still over its limits.
+     */
+    private void pass() {
+        passScheduled.set(false);
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        int totalFiles = 0;
+        List<File> candidates = new ArrayList<>();
+        for (File file : files) {
+            if (isTitleStorePart(file)) {
+                continue;
+            }
+
+            totalBytes += file.length();
+            totalFiles++;
+            if (isEvictable(file)) {
+                candidates.add(file);
+            }
+        }
+
+        long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAge);
+        long now = System.currentTimeMillis();
+
+        // Expired responses first, then least recently used.
+        candidates.sort(Comparator
+                .comparing((File f) -> f.lastModified() >= expiry)
+                .thenComparingLong((f) -> lastAccess.getOrDefault(f.getName(), f.lastModified())));
+
+        int evicted = 0;
+        for (File file : candidates) {
+            boolean expired = file.lastModified() < expiry;
+            boolean overLimit = totalBytes > maxBytes || totalFiles > maxFiles;
+            if ((!expired && !overLimit) || evicted >= BATCH_SIZE) {
+                break;
+            }
+
+            String filename = file.getName();
+            long lastUsed = lastAccess.getOrDefault(filename, file.lastModified());
+            long length = evict(file);
+            if (length >= 0) {
+                LOGGER.log(Level.FINE, "Evicted {0} response {1}, last used {2} ms ago",
+                        new Object[]{expired ? "expired" : "least recently used", filename, now - lastUsed});
+                lastAccess.remove(filename);
+                totalBytes -= length;
+                totalFiles--;
+                evicted++;
+            }
+        }
+
+        if (evicted > 0) {
+            LOGGER.log(Level.INFO, "Evicted {0} responses; the rest take {1} bytes in {2} files",
+                    new Object[]{evicted, totalBytes, totalFiles});
+        }
+
+        if (evicted == BATCH_SIZE) {
+            requestPass();
+        }
+    }
+
+    /**
+     * Delete a response while holding the exclusive lock.
+     *
+     * @param file the response file
+     * @return the length of the deleted file, or {@code -1} if it could not be
+     * deleted
+     */
+    private long evict(File file) {
+        return lock.withExclusive(() -> {
+            long length = file.length();
+            if (!file.delete()) {
+                return -1L;
+            }
+
+            onEvicted.accept(file.getName(), length);
+            return length;
+        });
+    }
+
+    /**
+     * Check whether the given file may be evicted.
+     *
+     * @param file a file in the library folder
+     * @return {@code true} if the file is a title response; {@code false}
+     * otherwise
+     */
+    private static boolean isEvictable(File file) {
+        String name = file.getName();
+        return file.isFile() && name.startsWith("fetchTitles.") && !PROTECTED_FILES.contains(name);
+    }
+
+    /**
+     * Check whether the given file is a part of the {@link TitleStore}, which
+     * does not count towards the limits.
+     *
+     * @param file a file in the library folder
+     * @return {@code true} if the file is a title store part; {@code false}
+     * otherwise
+     */
+    private static boolean isTitleStorePart(File file) {
+        return file.getName().startsWith(TitleStore.QUERY_TYPE + ".");
+    }
+
+}
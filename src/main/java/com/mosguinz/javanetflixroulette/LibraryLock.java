@@ -0,0 +1,416 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coordinates access to the library folder between threads and between
+ * instances of the application.
+ * <p>
+ * Several instances of the application may share one library folder. Readers
+ * hold a shared lock, while writing a response, updating the index, and
+ * deleting responses hold an exclusive lock. Within the JVM, this is a
+ * {@link ReentrantReadWriteLock}; between JVMs, it is a {@link FileLock} on
+ * {@value #LOCK_FILENAME} in the library folder.
+ * <p>
+ * A thread that holds the exclusive lock may also take the shared lock, e.g.,
+ * to read a response while merging it, but not the other way round: taking
+ * the exclusive lock while holding the shared lock throws an
+ * {@link IllegalStateException}, rather than waiting forever.
+ * <p>
+ * A {@link FileLock} is held on behalf of the whole JVM, so a single shared
+ * lock is taken for as long as any thread in this JVM is reading. The file
+ * lock is polled for, rather than waited on, without holding any lock that
+ * other threads in this JVM need; while another instance holds the exclusive
+ * lock, only the threads that need the file lock themselves wait for it.
+ * <p>
+ * A JVM cannot hold two overlapping locks on the same file, so there is one
+ * lock per library folder, shared by everything in the JVM that uses the
+ * folder; see {@link #of(File)}.
+ * <p>
+ * If the lock file cannot be opened, e.g., on a read-only file system, only
+ * threads within this JVM are coordinated.
+ *
+ * @author mosguinz
+ */
+class LibraryLock {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(LibraryLock.class.getName());
+
+    /**
+     * The name of the lock file in the library folder.
+     */
+    static final String LOCK_FILENAME = "library.lock";
+
+    /**
+     * The longest time to wait between attempts to lock the lock file, in
+     * milliseconds.
+     */
+    private static final long MAX_BACKOFF = 50;
+
+    /**
+     * The lock of each library folder, by its absolute path.
+     */
+    private static final ConcurrentMap<File, LibraryLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Work done while holding the lock.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of exception that the work may throw
+     */
+    @FunctionalInterface
+    interface Locked<T, E extends Exception> {
+
+        /**
+         * Do the work.
+         *
+         * @return the result
+         * @throws E if the work fails
+         */
+        T run() throws E;
+    }
+
+    /**
+     * Work without a result done while holding the lock.
+     *
+     * @param <E> the type of exception that the work may throw
+     */
+    @FunctionalInterface
+    interface LockedAction<E extends Exception> {
+
+        /**
+         * Do the work.
+         *
+         * @throws E if the work fails
+         */
+        void run() throws E;
+    }
+
+    /**
+     * A held lock, released by closing it.
+     */
+    private interface Hold {
+
+        void close();
+    }
+
+    /**
+     * The library folder.
+     */
+    private final File directory;
+
+    /**
+     * Coordinates the threads within this JVM.
+     */
+    private final ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+
+    /**
+     * Guards {@link #channel}, {@link #sharedLock}, {@link #readers}, and
+     * {@link #acquiring}.
+     * <p>
+     * Never held while waiting for the lock file.
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * The channel of the lock file, or {@code null} if it is not open.
+     */
+    private FileChannel channel;
+
+    /**
+     * The shared lock held on behalf of the reading threads.
+     */
+    private FileLock sharedLock;
+
+    /**
+     * The number of threads in this JVM currently reading.
+     */
+    private int readers;
+
+    /**
+     * Whether a reading thread is waiting for the shared lock on behalf of
+     * the others.
+     */
+    private boolean acquiring;
+
+    /**
+     * Set up a lock for the given directory.
+     *
+     * @param directory the library folder
+     */
+    private LibraryLock(File directory) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+    }
+
+    /**
+     * Get the lock for the given directory.
+     *
+     * @param directory the library folder
+     * @return the lock shared by everything in the JVM that uses the folder
+     */
+    static LibraryLock of(File directory) {
+        return LOCKS.computeIfAbsent(directory.getAbsoluteFile(), LibraryLock::new);
+    }
+
+    /**
+     * Do some work while holding the shared lock.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of exception that the work may throw
+     * @param work the work
+     * @return the result of the work
+     * @throws E if the work fails
+     */
+    <T, E extends Exception> T withShared(Locked<T, E> work) throws E {
+        Hold hold = shared();
+        try {
+            return work.run();
+        } finally {
+            hold.close();
+        }
+    }
+
+    /**
+     * Do some work while holding the shared lock.
+     *
+     * @param <E> the type of exception that the work may throw
+     * @param work the work
+     * @throws E if the work fails
+     */
+    <E extends Exception> void runShared(LockedAction<E> work) throws E {
+        Hold hold = shared();
+        try {
+            work.run();
+        } finally {
+            hold.close();
+        }
+    }
+
+    /**
+     * Do some work while holding the exclusive lock.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of exception that the work may throw
+     * @param work the work
+     * @return the result of the work
+     * @throws E if the work fails
+     * @throws IllegalStateException if the thread holds the shared lock
+     */
+    <T, E extends Exception> T withExclusive(Locked<T, E> work) throws E {
+        Hold hold = exclusive();
+        try {
+            return work.run();
+        } finally {
+            hold.close();
+        }
+    }
+
+    /**
+     * Do some work while holding the exclusive lock.
+     *
+     * @param <E> the type of exception that the work may throw
+     * @param work the work
+     * @throws E if the work fails
+     * @throws IllegalStateException if the thread holds the shared lock
+     */
+    <E extends Exception> void runExclusive(LockedAction<E> work) throws E {
+        Hold hold = exclusive();
+        try {
+            work.run();
+        } finally {
+            hold.close();
+        }
+    }
+
+    /**
+     * Take a shared lock for reading from the library folder.
+     * <p>
+     * The first reading thread locks the lock file on behalf of the others,
+     * which wait for it without holding {@link #monitor}.
+     *
+     * @return the held lock
+     */
+    private Hold shared() {
+        // A thread that is already writing may read without another lock.
+        if (threads.isWriteLockedByCurrentThread()) {
+            return () -> {
+            };
+        }
+
+        threads.readLock().lock();
+        boolean interrupted = false;
+        boolean acquire = false;
+        synchronized (monitor) {
+            while (acquiring) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (readers > 0) {
+                readers++;
+            } else {
+                acquiring = acquire = true;
+            }
+        }
+
+        if (acquire) {
+            FileLock lock = null;
+            try {
+                lock = lockFile(true);
+            } finally {
+                synchronized (monitor) {
+                    sharedLock = lock;
+                    readers++;
+                    acquiring = false;
+                    monitor.notifyAll();
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return () -> {
+            synchronized (monitor) {
+                if (--readers == 0) {
+                    release(sharedLock);
+                    sharedLock = null;
+                }
+            }
+            threads.readLock().unlock();
+        };
+    }
+
+    /**
+     * Take an exclusive lock for writing to the library folder.
+     * <p>
+     * A thread that holds the shared lock cannot take the exclusive lock as
+     * well, as it would wait forever for itself to stop reading. A thread
+     * that holds the exclusive lock can read, though; see {@link #shared()}.
+     *
+     * @return the held lock
+     * @throws IllegalStateException if the thread holds the shared lock
+     */
+    private Hold exclusive() {
+        if (threads.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot take the exclusive lock while holding the shared lock");
+        }
+
+        threads.writeLock().lock();
+
+        // Only the outermost hold of the write lock locks the file. No other
+        // thread in this JVM can be reading, so nothing else waits on it.
+        FileLock held = threads.getWriteHoldCount() == 1 ? lockFile(false) : null;
+        return () -> {
+            release(held);
+            threads.writeLock().unlock();
+        };
+    }
+
+    /**
+     * Lock the lock file, opening it if needed.
+     * <p>
+     * The lock is polled for with {@link FileChannel#tryLock}, backing off up
+     * to {@value #MAX_BACKOFF} ms between attempts, rather than waited on with
+     * {@link FileChannel#lock}, which would close the channel, and with it
+     * every lock of this JVM, if the waiting thread were interrupted.
+     *
+     * @param shared {@code true} for a shared lock; {@code false} for an
+     * exclusive lock
+     * @return the lock, or {@code null} if the file could not be locked
+     */
+    private FileLock lockFile(boolean shared) {
+        FileChannel c;
+        try {
+            synchronized (monitor) {
+                if (channel == null || !channel.isOpen()) {
+                    directory.mkdirs();
+                    channel = FileChannel.open(new File(directory, LOCK_FILENAME).toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                c = channel;
+            }
+
+            boolean interrupted = false;
+            try {
+                for (long backoff = 1;; backoff = Math.min(backoff * 2, MAX_BACKOFF)) {
+                    FileLock lock = c.tryLock(0, Long.MAX_VALUE, shared);
+                    if (lock != null) {
+                        return lock;
+                    }
+
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not lock the library folder; other instances will not be coordinated");
+            return null;
+        }
+    }
+
+    /**
+     * Release a lock on the lock file.
+     *
+     * @param lock the lock, or {@code null}
+     */
+    private static void release(FileLock lock) {
+        if (lock == null) {
+            return;
+        }
+
+        try {
+            lock.release();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not release library folder lock", e);
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Running totals of the number and size of files in the library folder.
+ * <p>
+ * The totals are updated as responses are written, evicted, and cleared, so
+ * that reading them never has to list the library folder. They are also kept
+ * per query type. To correct any drift, e.g., from files changed by another
+ * instance of the application, the totals are reconciled against the library
+ * folder in the background every {@value #RECONCILE_INTERVAL} minutes.
+ *
+ * @author mosguinz
+ */
+class LibraryMetrics {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(LibraryMetrics.class.getName());
+
+    /**
+     * How often the totals are reconciled against the library folder, in
+     * minutes.
+     */
+    private static final int RECONCILE_INTERVAL = 5;
+
+    /**
+     * The query type used for files that are not responses.
+     */
+    static final String OTHER = "other";
+
+    /**
+     * The library folder.
+     */
+    private final File directory;
+
+    /**
+     * The number of files, by query type.
+     */
+    private final Map<String, AtomicLong> fileCounts = new ConcurrentHashMap<>();
+
+    /**
+     * The size of the files in bytes, by query type.
+     */
+    private final Map<String, AtomicLong> byteSizes = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the periodic reconciliation has been started.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * The executor that reconciles the totals.
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "library-metrics");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /**
+     * Set up the metrics for the given directory.
+     *
+     * @param directory the library folder
+     */
+    LibraryMetrics(File directory) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+    }
+
+    /**
+     * Start reconciling the totals periodically, beginning with an initial
+     * scan of the library folder.
+     */
+    void start() {
+        if (started.compareAndSet(false, true)) {
+            executor.scheduleWithFixedDelay(this::reconcile, 0, RECONCILE_INTERVAL, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Get the query type that a file belongs to.
+     *
+     * @param filename the name of a file in the library folder
+     * @return either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, {@value TitleStore#QUERY_TYPE}, or
+     * {@value #OTHER}
+     */
+    static String getQueryType(String filename) {
+        if (filename.startsWith(".") || filename.equals(ResponseIndex.INDEX_FILENAME)) {
+            return OTHER;
+        }
+
+        for (String queryType : new String[]{"fetchTitles", "fetchGenres", "fetchAvailableRegions", TitleStore.QUERY_TYPE}) {
+            if (filename.startsWith(queryType + ".")) {
+                return queryType;
+            }
+        }
+
+        return OTHER;
+    }
+
+    /**
+     * Record that a file was written.
+     *
+     * @param filename the name of the file
+     * @param previousLength the length of the file it replaced, or {@code -1}
+     * if it did not replace a file
+     * @param length the length of the file
+     */
+    void recordWrite(String filename, long previousLength, long length) {
+        String queryType = getQueryType(filename);
+        if (previousLength < 0) {
+            counter(fileCounts, queryType).incrementAndGet();
+            previousLength = 0;
+        }
+        counter(byteSizes, queryType).addAndGet(length - previousLength);
+    }
+
+    /**
+     * Record that a file was deleted.
+     *
+     * @param filename the name of the file
+     * @param length the length of the file
+     */
+    void recordDelete(String filename, long length) {
+        String queryType = getQueryType(filename);
+        counter(fileCounts, queryType).decrementAndGet();
+        counter(byteSizes, queryType).addAndGet(-length);
+    }
+
+    /**
+     * Recalculate the totals from the library folder.
+     */
+    void reconcile() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                String queryType = getQueryType(file.getName());
+                counts.merge(queryType, 1L, Long::sum);
+                sizes.merge(queryType, file.length(), Long::sum);
+            }
+        }
+
+        long driftFiles = getFileCount();
+        long driftBytes = getByteSize();
+        fileCounts.keySet().retainAll(counts.keySet());
+        byteSizes.keySet().retainAll(sizes.keySet());
+        counts.forEach((t, n) -> counter(fileCounts, t).set(n));
+        sizes.forEach((t, n) -> counter(byteSizes, t).set(n));
+
+        LOGGER.log(Level.FINE, "Reconciled library metrics: {0} files, {1} bytes (drift: {2} files, {3} bytes)",
+                new Object[]{getFileCount(), getByteSize(), getFileCount() - driftFiles, getByteSize() - driftBytes});
+    }
+
+    /**
+     * Get the counter for the query type, creating it if needed.
+     *
+     * @param counters the counters by query type
+     * @param queryType the query type
+     * @return the counter
+     */
+    private static AtomicLong counter(Map<String, AtomicLong> counters, String queryType) {
+        return counters.computeIfAbsent(queryType, (t) -> new AtomicLong());
+    }
+
+    /**
+     * Get the number of files in the library folder.
+     *
+     * @return the number of files
+     */
+    long getFileCount() {
+        return fileCounts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * Get the number of files in the library folder for the query type.
+     *
+     * @param queryType either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, {@value TitleStore#QUERY_TYPE}, or
+     * {@value #OTHER}
+     * @return the number of files
+     */
+    long getFileCount(String queryType) {
+        AtomicLong n = fileCounts.get(queryType);
+        return n == null ? 0 : n.get();
+    }
+
+    /**
+     * Get the size of the library folder.
+     *
+     * @return the size in bytes
+     */
+    long getByteSize() {
+        return byteSizes.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * Get the size of the files in the library folder for the query type.
+     *
+     * @param queryType either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, {@value TitleStore#QUERY_TYPE}, or
+     * {@value #OTHER}
+     * @return the size in bytes
+     */
+    long getByteSize(String queryType) {
+        AtomicLong n = byteSizes.get(queryType);
+        return n == null ? 0 : n.get();
+    }
+
+}
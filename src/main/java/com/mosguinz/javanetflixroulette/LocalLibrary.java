@@ -24,23 +24,33 @@
 package com.mosguinz.javanetflixroulette;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * The {@code LocalLibrary} class is responsible for reading and writing
  * responses to the user's home directory.
+ * <p>
+ * Responses are kept in a {@link ResponseStore}, selected with
+ * {@value #STORE_PROPERTY}, behind an in-memory {@link ResponseCache}.
  *
  * @author mosguinz
  */
@@ -70,21 +80,130 @@ public class LocalLibrary {
     private static final File LIBRARY_PATH = createLibraryPath();
 
     /**
-     * The maximum age of a response in days.
+     * The maximum age of a response in days, before jitter.
      * <p>
      * Responses that are older than the specified value ({@value} days) will
      * not be used and will be overwritten by new responses.
      *
-     * @see #isUpToDate(org.json.JSONObject)
+     * @see #isUpToDate(org.json.JSONObject, java.lang.String,
+     * java.lang.String)
+     * @see #RESPONSE_AGE_JITTER
      */
     private static final int MAX_RESPONSE_AGE = 14;
 
+    /**
+     * The age of a response in days, before jitter, after which it is
+     * refreshed in the background.
+     * <p>
+     * Responses between this age and {@link #MAX_RESPONSE_AGE} are still
+     * used straight away, while a new response is requested from the uNoGS
+     * API to replace it. The Netflix catalogue changes little from day to day,
+     * so this spares the user from waiting on the API.
+     *
+     * @see #isFresh(org.json.JSONObject, java.lang.String, java.lang.String)
+     */
+    private static final int SOFT_RESPONSE_AGE = 1;
+
+    /**
+     * The most days added to {@link #SOFT_RESPONSE_AGE} and
+     * {@link #MAX_RESPONSE_AGE} for a response.
+     * <p>
+     * Each query gets its own number of days, from {@code 0} to {@value},
+     * derived from its query string, so that responses saved on the same day
+     * do not all need refreshing on the same day.
+     *
+     * @see #getResponseAgeJitter(java.lang.String, java.lang.String)
+     */
+    private static final int RESPONSE_AGE_JITTER = 2;
+
+    /**
+     * The system property used to select the format that title responses are
+     * saved in.
+     * <p>
+     * Either {@code binary}, to use the {@link BinaryResponseCodec compact
+     * binary format}, or {@code json}, to save pretty-printed JSON. Responses
+     * in either format can always be read.
+     *
+     * @see #encodeResponse(java.lang.String, org.json.JSONObject)
+     */
+    static final String FORMAT_PROPERTY = "netflixRoulette.format";
+
+    /**
+     * Whether title responses are saved in the compact binary format.
+     * <p>
+     * Defaults to {@code true}.
+     *
+     * @see #FORMAT_PROPERTY
+     */
+    private static final boolean USE_BINARY_FORMAT = System.getProperty(FORMAT_PROPERTY, "binary").equals("binary");
+
+    /**
+     * The in-memory cache of parsed responses.
+     *
+     * @see #getSavedResponse(java.lang.String, java.lang.String)
+     */
+    private static final ResponseCache RESPONSE_CACHE = new ResponseCache();
+
+    /**
+     * The system property used to select where responses are saved.
+     * <p>
+     * Either {@code file}, {@code memory}, or {@code kv}; see
+     * {@link ResponseStore}. Defaults to {@code file}.
+     */
+    static final String STORE_PROPERTY = "netflixRoulette.store";
+
+    /**
+     * Where responses are saved.
+     *
+     * @see #createResponseStore()
+     */
+    private static final ResponseStore RESPONSE_STORE = createResponseStore();
+
+    /**
+     * The titles of every saved title response, which the responses
+     * themselves are saved as lists of IDs of.
+     *
+     * @see TitleStore
+     */
+    private static final TitleStore TITLE_STORE = new TitleStore(RESPONSE_STORE);
+
+    /**
+     * Saves the titles of title responses to the {@link TitleStore}, and the
+     * responses themselves as lists of IDs, in the order they were received.
+     *
+     * @see #saveResponse(JSONArray, String, TitlesQuery, boolean)
+     */
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "title-saver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Refreshes responses that are past {@link #SOFT_RESPONSE_AGE} in the
+     * background.
+     *
+     * @see #refreshInBackground(java.lang.String, java.lang.String,
+     * java.lang.Runnable)
+     */
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "response-refresher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The responses that are being refreshed, by their query type and query
+     * string.
+     */
+    private static final Set<String> REFRESHING = ConcurrentHashMap.newKeySet();
+
     /**
      * Set up an instance of {@link LocalLibrary}.
      */
     LocalLibrary() {
         LoggingUtil.setupLogger(LOGGER);
-        makeLibraryDirectory();
+        RESPONSE_STORE.open();
     }
 
     /**
@@ -126,201 +245,491 @@ public class LocalLibrary {
     }
 
     /**
-     * Get the filename to use for reading/writing a response.
+     * Create the store selected by {@value #STORE_PROPERTY}.
      * <p>
-     * For titles, it will append a number to the end of the name and increment
-     * it to prevent overwriting existing response. It is <b>not</b> used for
-     * differentiating the parameters used.
+     * If the key-value store cannot be opened, e.g., because another instance
+     * of the application is using it, responses are kept in memory instead.
+     *
+     * @return the {@link ResponseStore} to save responses to
+     */
+    private static ResponseStore createResponseStore() {
+        String store = System.getProperty(STORE_PROPERTY, "file");
+        LOGGER.log(Level.INFO, "Using the {0} response store", store);
+
+        switch (store) {
+            case "memory":
+                return new MemoryResponseStore();
+            case "kv":
+                try {
+                    return new KeyValueResponseStore(LIBRARY_PATH);
+                } catch (IOException e) {
+                    LoggingUtil.logException(LOGGER, e, "Could not open the key-value store, keeping responses in memory...");
+                    return new MemoryResponseStore();
+                }
+            default:
+                return new FileResponseStore(LIBRARY_PATH, MAX_RESPONSE_AGE + RESPONSE_AGE_JITTER);
+        }
+    }
+
+    /**
+     * Save the responses from uNoGS server.
+     * <p>
+     * The response is cached in memory straight away, and handed to the
+     * {@link ResponseStore}, which may write it in the background.
      * <p>
-     * For other types of query, it will return the same name, corresponding to
-     * the query type. This will result in overwriting the existing file, as it
-     * is assumed to be either invalid or expired.
+     * The titles of a title response are saved to the {@link TitleStore}, and
+     * the response itself is saved as a list of their IDs. As that can mean
+     * writing many parts of the title store, it is done on a background
+     * thread, so that the caller can hand the titles to the user straight
+     * away. Responses with titles that have no ID are saved in full.
+     * <p>
+     * The response is saved as holding every title for its query; see
+     * {@link #saveResponse(JSONArray, String, TitlesQuery, boolean)}.
      *
+     * @param response {@code JSONArray} of the returned response content
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
-     * @return a {@link String} that is the filename for the response
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @return {@code true} if and only if the response was saved or queued to
+     * be saved; {@code false} otherwise
      */
-    private static String getResponseFilename(String queryType) {
-        LOGGER.log(Level.INFO, "Creating filename for the response");
-
-        if (queryType.equals("fetchTitles")) {
-
-            String filename = "fetchTitles.0.json";
-            File f = new File(LIBRARY_PATH, filename);
+    public boolean saveResponse(JSONArray response, String queryType, TitlesQuery titlesQuery) {
+        return saveResponse(response, queryType, titlesQuery, true);
+    }
 
-            for (int x = 1; f.exists(); x++) {
-                filename = "fetchTitles." + x + ".json";
-                System.out.println(filename);
-                f = new File(LIBRARY_PATH, filename);
+    /**
+     * Save the responses from uNoGS server, noting whether a title response
+     * holds every title for its query.
+     * <p>
+     * A title response that holds only some of the pages of the results can
+     * still be used for its own query, but not to answer a narrower one; see
+     * {@link #getCompleteSavedResponse}.
+     *
+     * @param response {@code JSONArray} of the returned response content
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param complete whether the response holds every title for its query;
+     * only applicable for {@code fetchTitles}
+     * @return {@code true} if and only if the response was saved or queued to
+     * be saved; {@code false} otherwise
+     * @see #saveResponse(JSONArray, String, TitlesQuery)
+     */
+    public boolean saveResponse(JSONArray response, String queryType, TitlesQuery titlesQuery, boolean complete) {
+        LOGGER.log(Level.INFO, "Writing the returned Netflix titles");
+
+        JSONObject f = createResponse(response, queryType, titlesQuery, complete);
+        RESPONSE_CACHE.put(queryType, titlesQuery, f);
+
+        if (queryType.equals("fetchTitles") && TitleStore.hasIDs(response)) {
+            JSONObject ids = new JSONObject(f, JSONObject.getNames(f));
+            ids.put("ITEMS", TitleStore.toIDList(response));
+            try {
+                SAVE_EXECUTOR.execute(() -> {
+                    try {
+                        TITLE_STORE.putAll(response);
+                        RESPONSE_STORE.save(queryType, titlesQuery.toString(), ids);
+                    } catch (RuntimeException e) {
+                        LoggingUtil.logException(LOGGER, e, "Failed to save the titles");
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                LoggingUtil.logException(LOGGER, e, "Failed to queue the titles to be saved");
+                return false;
             }
-
-            return filename;
-
-        } else {
-            return queryType + ".json";
         }
+
+        return RESPONSE_STORE.save(queryType, titlesQuery == null ? null : titlesQuery.toString(), f);
     }
 
     /**
-     * Create the library directory.
+     * Cache a response in memory only, without saving it.
+     * <p>
+     * Used for a response that is still being put together, e.g., from pages
+     * that are still arriving, so that it can be used in the meantime. It is
+     * replaced once the whole response is saved with {@link #saveResponse},
+     * or removed with {@link #uncacheResponse} if it is never completed.
      *
-     * @return {@code true} if and only if the directory was created;
-     * {@code false} otherwise
+     * @param response {@code JSONArray} of the response content so far
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
      */
-    private static boolean makeLibraryDirectory() {
-        LOGGER.log(Level.INFO, "Creating the library directory at: {}", LIBRARY_PATH.toString());
-
-        if (LIBRARY_PATH.exists()) {
-            LOGGER.log(Level.INFO, "Library directory already exists");
-            return false;
-        } else {
-            return LIBRARY_PATH.mkdirs();
-        }
-
+    public void cacheResponse(JSONArray response, String queryType, TitlesQuery titlesQuery) {
+        RESPONSE_CACHE.put(queryType, titlesQuery, createResponse(response, queryType, titlesQuery, false));
     }
 
     /**
-     * Save the responses from uNoGS server.
+     * Remove a response from the memory cache, e.g., one cached with
+     * {@link #cacheResponse} that could not be completed, so that it is not
+     * mistaken for the whole response. The saved response, if any, is used
+     * again from then on.
      *
-     * @param response {@code JSONArray} of the returned response content
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
-     * @param titlesQueryString a {@link String} that is the query string for
-     * requesting titles
-     * @return {@code true} if and only if the response were saved;
-     * {@code false} otherwise
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
      */
-    public boolean saveResponse(JSONArray response, String queryType, String titlesQueryString) {
-        LOGGER.log(Level.INFO, "Writing the returned Netflix titles as a JSON");
-        FileOutputStream stream;
-        boolean saved = true;
+    public void uncacheResponse(String queryType, TitlesQuery titlesQuery) {
+        RESPONSE_CACHE.invalidate(queryType, titlesQuery);
+    }
 
+    /**
+     * Wrap the content of a response with its date and query string.
+     *
+     * @param response {@code JSONArray} of the response content
+     * @param queryType the query type of the response
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param complete whether the response holds every title for its query;
+     * only applicable for {@code fetchTitles}
+     * @return the response, with the keys {@code DATE} and {@code ITEMS}, and
+     * {@code Q-STRING} and {@code COMPLETE} for titles
+     */
+    private static JSONObject createResponse(JSONArray response, String queryType, TitlesQuery titlesQuery, boolean complete) {
         JSONObject f = new JSONObject();
         f.put("DATE", LocalDate.now().toString());
         f.put("ITEMS", response);
         if (queryType.equals("fetchTitles")) {
-            f.put("Q-STRING", titlesQueryString);
+            f.put("Q-STRING", titlesQuery.toString());
+            f.put("COMPLETE", complete);
         }
+        return f;
+    }
 
-        try {
-            LOGGER.log(Level.FINE, "Creating file output stream at {0}", LIBRARY_PATH);
-            String filename = getResponseFilename(queryType);
-            stream = new FileOutputStream(LIBRARY_PATH + File.separator + filename);
-            LOGGER.log(Level.FINE, "Saving the response as: {0}", filename);
+    /**
+     * Check whether a title response holds every title for its query.
+     * <p>
+     * Responses saved before this was recorded are taken to hold only the
+     * first page of the results.
+     *
+     * @param response the response, or only its header
+     * @return {@code true} if the response was saved with every page of the
+     * results; {@code false} otherwise
+     */
+    private static boolean isComplete(JSONObject response) {
+        return response.optBoolean("COMPLETE");
+    }
 
-            LOGGER.log(Level.FINE, "Pretty printing JSON response...");
-            byte[] b = f.toString(2).getBytes();
-
-            LOGGER.log(Level.INFO, "Writing the response...");
-            stream.write(b);
-
-            LOGGER.log(Level.FINE, "Closing file stream...");
-            stream.close();
-        } catch (FileNotFoundException e) {
-            LoggingUtil.logException(LOGGER, e);
-            saved = false;
-        } catch (IOException e) {
-            LoggingUtil.logException(LOGGER, e);
-            saved = false;
-        }
+    /**
+     * Save the details of a single title.
+     * <p>
+     * Every saved title response that includes the title will use the new
+     * details from then on, without having to be requested again.
+     *
+     * @param title the title, which must have a {@code netflixid}
+     */
+    public void saveTitle(Title title) {
+        LOGGER.log(Level.FINE, "Saving title {0}", title.getNetflixID());
+        TITLE_STORE.put(title);
+    }
+
+    /**
+     * Check whether responses of the given query type are saved in the
+     * compact binary format.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, or {@value TitleStore#QUERY_TYPE}
+     * @return {@code true} if the binary format is selected by
+     * {@link #FORMAT_PROPERTY} and the query type is {@code fetchTitles} or
+     * {@value TitleStore#QUERY_TYPE}; {@code false} otherwise
+     */
+    static boolean usesBinaryFormat(String queryType) {
+        return USE_BINARY_FORMAT && (queryType.equals("fetchTitles") || queryType.equals(TitleStore.QUERY_TYPE));
+    }
 
-        if (saved) {
-            LOGGER.log(Level.INFO, "Response sucessfully written");
+    /**
+     * Encode a response to be saved.
+     * <p>
+     * Title responses are encoded in the format selected by
+     * {@link #FORMAT_PROPERTY}; other responses are always encoded as JSON.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param response the response, with the keys {@code DATE} and
+     * {@code ITEMS}, and {@code Q-STRING} for titles
+     * @return the encoded response
+     */
+    static byte[] encodeResponse(String queryType, JSONObject response) {
+        if (usesBinaryFormat(queryType)) {
+            LOGGER.log(Level.FINE, "Encoding binary response...");
+            return BinaryResponseCodec.encode(response.getString("DATE"), response.optString("Q-STRING"),
+                    isComplete(response), response.getJSONArray("ITEMS"));
         } else {
-            LOGGER.log(Level.WARNING, "Failed to write the response, check exception");
+            LOGGER.log(Level.FINE, "Pretty printing JSON response...");
+            return response.toString(2).getBytes();
         }
-
-        return saved;
     }
 
     /**
-     * Load and parse the saved response.
+     * Decode a saved response, in either format.
      * <p>
-     * Load and return the response file as a {@link JSONObject}.
+     * JSON responses are parsed straight out of the buffer through a
+     * {@link ByteBufferReader}, without building an intermediate
+     * {@link String} of the whole response.
      *
-     * @param filename the name of the JSON file
-     * @return the response file as a {@link JSONObject}
+     * @param buffer the encoded response, positioned at its start
+     * @return the response as a {@link JSONObject}
+     * @throws IOException if the response is binary, and not valid
+     * @throws JSONException if the response is JSON, and not valid
      */
-    private JSONObject loadSavedResponse(String filename) {
+    static JSONObject decodeResponse(ByteBuffer buffer) throws IOException, JSONException {
+        if (BinaryResponseCodec.isBinary(buffer)) {
+            return BinaryResponseCodec.decode(buffer);
+        }
 
-        JSONObject responseFile = null;
+        // JSON responses are written with the platform's default charset.
+        return new JSONObject(new JSONTokener(new ByteBufferReader(buffer, Charset.defaultCharset())));
+    }
 
-        try {
-            try (Scanner f = new Scanner(new File(LIBRARY_PATH, filename)).useDelimiter("\\Z")) {
-                String r = f.next();
-                responseFile = new JSONObject(r);
-                LOGGER.log(Level.FINE, "Found a matching saved response to use");
-            }
-        } catch (FileNotFoundException e) {
-            LOGGER.log(Level.INFO, "No saved response found...");
-        } catch (JSONException e) {
-            LoggingUtil.logException(LOGGER, e, "Could not load saved responses...");
+    /**
+     * Decode a saved response, unless its header shows that it cannot be
+     * used.
+     * <p>
+     * Binary responses are checked by reading only their header. JSON
+     * responses have no header and are checked once they are decoded.
+     *
+     * @param buffer the encoded response, positioned at its start
+     * @param isCurrent tests the header of the response for whether it is
+     * fresh enough
+     * @return the response as a {@link JSONObject}, or {@code null} if it
+     * cannot be used
+     * @throws IOException if the response is binary, and not valid
+     * @throws JSONException if the response is JSON, and not valid
+     */
+    static JSONObject decodeResponseIfCurrent(ByteBuffer buffer, Predicate<JSONObject> isCurrent)
+            throws IOException, JSONException {
+        if (BinaryResponseCodec.isBinary(buffer) && !isCurrent.test(BinaryResponseCodec.readHeader(buffer.duplicate()))) {
+            return null;
         }
 
-        return responseFile;
+        JSONObject response = decodeResponse(buffer);
+        return isCurrent.test(response) ? response : null;
     }
 
     /**
-     * Find a response with the matching query string.
+     * Load the saved response.
      * <p>
-     * Looks for a saved response for the query type {@code fetchTitles} that
-     * has the matching query string. The query string a {@link String}
-     * constructed from the provided parameters.
+     * Responses that have been loaded or saved recently are served from the
+     * {@link ResponseCache} without touching the {@link ResponseStore}.
      * <p>
-     * This method will look for a response that contains a list of titles
-     * corresponding to the parameters provided. If one cannot be found, then it
-     * will return {@code null}.
+     * A response that is older than {@link #SOFT_RESPONSE_AGE}, but not
+     * {@link #MAX_RESPONSE_AGE}, is still returned; {@code refresh} is run in
+     * the background to replace it.
      *
-     * @param titlesQueryString a {@link String} that is the query string for
-     * requesting titles; only applicable for {@code fetchTitles}
-     * @return the response file as a {@link JSONObject}
-     * @see NetflixLibrary#setTitlesQueryString()
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param refresh requests and saves a new response for the query
+     * @return a {@link JSONArray} of the requested data
      */
-    private JSONObject loadMatchingResponseQuery(String titlesQueryString) {
-        LOGGER.log(Level.INFO, "Looking for a response with a matching query string");
-        File[] responses = LIBRARY_PATH.listFiles();
+    public JSONArray getSavedResponse(String queryType, TitlesQuery titlesQuery, Runnable refresh) {
+        return getSavedResponse(queryType, titlesQuery, refresh, (r) -> true);
+    }
 
-        if (responses != null) {
-            for (File response : responses) {
-                String filename = response.getName();
-                if (filename.startsWith("fetchTitles")) {
-                    JSONObject r = loadSavedResponse(filename);
-                    if (r.getString("Q-STRING").equals(titlesQueryString)) {
-                        return r;
-                    }
-                }
+    /**
+     * Load the saved title response, but only if it holds every title for its
+     * query, e.g., to answer a narrower query from it.
+     * <p>
+     * A response that holds only some of the pages of the results, including
+     * one that is still being put together in the {@link ResponseCache}, is
+     * not returned.
+     *
+     * @param titlesQuery the query for requesting titles
+     * @param refresh requests and saves a new response for the query
+     * @return a {@link JSONArray} of the titles, or {@code null} if there is
+     * no complete saved response
+     * @see #getSavedResponse(String, TitlesQuery, Runnable)
+     */
+    public JSONArray getCompleteSavedResponse(TitlesQuery titlesQuery, Runnable refresh) {
+        return getSavedResponse("fetchTitles", titlesQuery, refresh, LocalLibrary::isComplete);
+    }
+
+    /**
+     * Load the saved response, if it is accepted.
+     * <p>
+     * If the cached response is not accepted, e.g., because it only holds the
+     * pages that have arrived so far while the response is fetched again, the
+     * saved one is loaded instead. It is not cached, so that it does not
+     * replace the response that is being fetched.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param refresh requests and saves a new response for the query
+     * @param accept tests the response, or only its header, for whether it
+     * can be used, on top of whether it is up-to-date
+     * @return a {@link JSONArray} of the requested data
+     */
+    private JSONArray getSavedResponse(String queryType, TitlesQuery titlesQuery, Runnable refresh, Predicate<JSONObject> accept) {
+        LOGGER.log(Level.FINE, "Looking for saved responses to use...");
+        JSONObject response = RESPONSE_CACHE.get(queryType, titlesQuery);
+        String titlesQueryString = titlesQuery == null ? null : titlesQuery.toString();
+
+        Predicate<JSONObject> isCurrent = (r) -> accept.test(r) && isUpToDate(r, queryType, titlesQueryString);
+
+        if (response == null) {
+            response = loadResponse(queryType, titlesQueryString, isCurrent);
+
+            if (response != null) {
+                RESPONSE_CACHE.put(queryType, titlesQuery, response);
             }
+        } else if (!accept.test(response)) {
+            response = loadResponse(queryType, titlesQueryString, isCurrent);
+        }
+
+        if (response != null && accept.test(response)) {
+            JSONArray items = verifySavedResponse(response, queryType, titlesQueryString);
+            if (items != null && !isFresh(response, queryType, titlesQueryString)) {
+                refreshInBackground(queryType, titlesQueryString, refresh);
+            }
+            return items;
         }
 
         return null;
     }
 
     /**
-     * Load the saved response.
+     * Load the saved response, however old it is.
+     * <p>
+     * This is only meant for when a new response cannot be requested, e.g.,
+     * while the uNoGS API is down, as a response older than
+     * {@link #MAX_RESPONSE_AGE} is better than none at all. The response is
+     * not put in the {@link ResponseCache}, so that it is never mistaken for
+     * an up-to-date one.
      *
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
-     * @param titlesQueryString a {@link String} that is the query string for
-     * requesting titles; only applicable for {@code fetchTitles}
-     * @return a {@link JSONArray} of the requested data
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @return a {@link JSONArray} of the saved data, or {@code null} if there
+     * is none
      */
-    public JSONArray getSavedResponse(String queryType, String titlesQueryString) {
-        LOGGER.log(Level.FINE, "Looking for saved responses to use...");
-        JSONObject response;
-
-        if (queryType.equals("fetchTitles")) {
-            response = loadMatchingResponseQuery(titlesQueryString);
-        } else {
-            response = loadSavedResponse(queryType + ".json");
+    public JSONArray getExpiredResponse(String queryType, TitlesQuery titlesQuery) {
+        JSONObject response = RESPONSE_CACHE.get(queryType, titlesQuery);
+        if (response == null) {
+            response = loadResponse(queryType, titlesQuery == null ? null : titlesQuery.toString(), (r) -> true);
         }
 
         if (response != null) {
-            return verifySavedResponse(response);
+            LOGGER.log(Level.INFO, "Found a response for {0} that is {1} days old",
+                    new Object[]{queryType, getResponseAge(response)});
+            return NetflixLibrary.verifyResponse(response);
         }
 
         return null;
     }
 
+    /**
+     * Load a response from the {@link ResponseStore}, with the titles in place
+     * of their IDs if it was saved as an ID list.
+     * <p>
+     * The titles of a title response are decoded into {@link Title} objects,
+     * so that the response is held in memory the same way as one that has
+     * just been received.
+     *
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
+     * @param isCurrent tests the header of the response, before the rest of it
+     * is read
+     * @return the response, or {@code null} if there is none, if any of its
+     * titles are missing from the {@link TitleStore}, or if they cannot be
+     * decoded
+     */
+    private static JSONObject loadResponse(String queryType, String titlesQueryString, Predicate<JSONObject> isCurrent) {
+        JSONObject response = RESPONSE_STORE.load(queryType, titlesQueryString, isCurrent);
+        if (response == null || !queryType.equals("fetchTitles") || response.optJSONArray("ITEMS") == null) {
+            return response;
+        }
+
+        try {
+            JSONArray items = response.getJSONArray("ITEMS");
+            JSONArray titles = TitleStore.isIDList(items) ? TITLE_STORE.getAll(items) : decodeTitles(items);
+            return titles == null ? null : response.put("ITEMS", titles);
+        } catch (JSONException e) {
+            LoggingUtil.logException(LOGGER, e, "Failed to decode the saved titles");
+            return null;
+        }
+    }
+
+    /**
+     * Decode the titles of a response.
+     *
+     * @param items the items of a title response
+     * @return a {@link JSONArray} of the items as {@link Title} objects, in
+     * the same order
+     * @throws JSONException if an item is not a title
+     */
+    static JSONArray decodeTitles(JSONArray items) throws JSONException {
+        JSONArray titles = new JSONArray();
+        for (Object item : items) {
+            titles.put(Title.of(item));
+        }
+        return titles;
+    }
+
+    /**
+     * Get the queries of every saved title response.
+     * <p>
+     * Responses in the {@link ResponseCache} come first, most recently used
+     * first, followed by the rest of the {@link ResponseStore}. Responses
+     * saved by earlier versions of the application under a query string that
+     * is not in canonical form cannot be looked up by their query, and are
+     * left out.
+     *
+     * @return the queries of the saved {@code fetchTitles} responses
+     */
+    public Set<TitlesQuery> getSavedTitlesQueries() {
+        Set<TitlesQuery> queries = new LinkedHashSet<>(RESPONSE_CACHE.getTitlesQueries());
+        for (String titlesQueryString : RESPONSE_STORE.getTitlesQueryStrings()) {
+            TitlesQuery query = TitlesQuery.parse(titlesQueryString);
+            if (query != null && query.toString().equals(titlesQueryString)) {
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Run a refresh of a response in the background, unless one is already
+     * running for the same query.
+     *
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
+     * @param refresh requests and saves a new response for the query
+     */
+    private static void refreshInBackground(String queryType, String titlesQueryString, Runnable refresh) {
+        String key = queryType.equals("fetchTitles") ? queryType + "?" + titlesQueryString : queryType;
+        if (!REFRESHING.add(key)) {
+            LOGGER.log(Level.FINE, "Response for {0} is already being refreshed", queryType);
+            return;
+        }
+
+        LOGGER.log(Level.INFO, "Using a stale response for {0}, refreshing it in the background", queryType);
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (RuntimeException e) {
+                    LoggingUtil.logException(LOGGER, e, "Failed to refresh the response");
+                } finally {
+                    REFRESHING.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            REFRESHING.remove(key);
+            LoggingUtil.logException(LOGGER, e, "Failed to queue the response to be refreshed");
+        }
+    }
+
     /**
      * Verify that the saved response is valid.
      * <p>
@@ -330,12 +739,15 @@ public class LocalLibrary {
      * {@code ITEMS} is present.
      *
      * @param response the {@link JSONObject} parsed from the file
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
      * @return the content of response as a {@code JSONArray} if the response is
      * valid; {@code null} otherwise
      */
-    private JSONArray verifySavedResponse(JSONObject response) {
+    private JSONArray verifySavedResponse(JSONObject response, String queryType, String titlesQueryString) {
 
-        if (isUpToDate(response)) {
+        if (isUpToDate(response, queryType, titlesQueryString)) {
             return NetflixLibrary.verifyResponse(response);
         }
 
@@ -346,88 +758,190 @@ public class LocalLibrary {
     /**
      * Check if the saved response is up-to-date.
      * <p>
+     * The constant {@link #MAX_RESPONSE_AGE MAX_RESPONSE_AGE}, plus the
+     * jitter for the query, determines the maximum acceptable response age in
+     * days.
+     *
+     * @param response the {@link JSONObject} parsed from the file, or only its
+     * header
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
+     * @return {@code true} if a valid timestamp is found and the response is
+     * younger than its maximum age; {@code false} otherwise
+     * @see #getResponseAge(org.json.JSONObject)
+     */
+    private boolean isUpToDate(JSONObject response, String queryType, String titlesQueryString) {
+        int maxAge = MAX_RESPONSE_AGE + getResponseAgeJitter(queryType, titlesQueryString);
+        int responseAge = getResponseAge(response);
+
+        LOGGER.log(Level.INFO, "Response is {0} days old; maximum age is {1} days", new Object[]{responseAge, maxAge});
+
+        return responseAge < maxAge;
+    }
+
+    /**
+     * Check if the saved response is fresh enough to be used without
+     * refreshing it.
+     * <p>
+     * The constant {@link #SOFT_RESPONSE_AGE SOFT_RESPONSE_AGE}, plus the
+     * jitter for the query, determines the age in days after which a response
+     * is refreshed.
+     *
+     * @param response the {@link JSONObject} parsed from the file, or only its
+     * header
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
+     * @return {@code true} if a valid timestamp is found and the response is
+     * younger than its refresh age; {@code false} otherwise
+     */
+    private boolean isFresh(JSONObject response, String queryType, String titlesQueryString) {
+        return getResponseAge(response) < SOFT_RESPONSE_AGE + getResponseAgeJitter(queryType, titlesQueryString);
+    }
+
+    /**
+     * Get the number of days to add to the ages after which a response is
+     * refreshed or expired.
+     * <p>
+     * The number is derived from the query, so that it is the same for a
+     * query every time, including in other instances of the application.
+     *
+     * @param queryType the query type of the response
+     * @param titlesQueryString the query string of the response; only
+     * applicable for {@code fetchTitles}
+     * @return a number of days, from {@code 0} to
+     * {@value #RESPONSE_AGE_JITTER}
+     */
+    private static int getResponseAgeJitter(String queryType, String titlesQueryString) {
+        String key = queryType.equals("fetchTitles") ? queryType + "?" + titlesQueryString : queryType;
+        return Math.floorMod(key.hashCode(), RESPONSE_AGE_JITTER + 1);
+    }
+
+    /**
+     * Get the age of the saved response.
+     * <p>
      * Written responses will have an ISO-8601 timestamp inserted in its JSON
      * file. This is used to check whether the response is fresh enough to be
      * used.
      * <p>
-     * The constant {@link #MAX_RESPONSE_AGE MAX_RESPONSE_AGE} determines the
-     * maximum acceptable response age in days. It is set at
-     * {@value #MAX_RESPONSE_AGE}.
-     * <p>
      * If a timestamp cannot be found or is invalid, the response is assumed to
-     * be outdated or invalid, and the method will return {@code false}.
+     * be outdated or invalid.
      *
-     * @param response the {@link JSONObject} parsed from the file
-     * @return {@code true} if a valid timestamp is found and the number of days
-     * between the current system time ({@link LocalDate#now}) and the date in
-     * question is below the number specified in
-     * {@link #MAX_RESPONSE_AGE MAX_RESPONSE_AGE}.
+     * @param response the {@link JSONObject} parsed from the file, or only its
+     * header
+     * @return the number of days between the date in question and the current
+     * system time ({@link LocalDate#now}), or {@link Integer#MAX_VALUE} if
+     * there is no valid timestamp
      */
-    private boolean isUpToDate(JSONObject response) {
-        LOGGER.log(Level.FINE, "Checking if the response is up to date");
+    private static int getResponseAge(JSONObject response) {
+        LOGGER.log(Level.FINE, "Checking the age of the response");
         String date;
 
         try {
             date = response.getString("DATE");
         } catch (JSONException e) {
             LoggingUtil.logException(LOGGER, e, "Could not verify response date");
-            return false;
+            return Integer.MAX_VALUE;
         }
 
         // Will always be in ISO-8601 format uuuu-MM-dd if date is written by this library.
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("uuuu-MM-dd").withLocale(Locale.ROOT);
         LocalDate dt = LocalDate.parse(date, dtf);
 
-        int responseAge = (int) ChronoUnit.DAYS.between(dt, LocalDate.now());
+        return (int) ChronoUnit.DAYS.between(dt, LocalDate.now());
+    }
+
+    /**
+     * Get the number of lookups answered by the in-memory response cache.
+     *
+     * @return the number of cache hits
+     */
+    public static long getCacheHitCount() {
+        return RESPONSE_CACHE.getHitCount();
+    }
 
-        LOGGER.log(Level.INFO, "Response is {0} days old; maximum age is {1} days");
+    /**
+     * Get the number of lookups that had to go to the library folder.
+     *
+     * @return the number of cache misses
+     */
+    public static long getCacheMissCount() {
+        return RESPONSE_CACHE.getMissCount();
+    }
 
-        return responseAge < MAX_RESPONSE_AGE;
+    /**
+     * Get the number of responses waiting to be written.
+     *
+     * @return the number of queued writes
+     */
+    public static int getWriteQueueDepth() {
+        return RESPONSE_STORE.getWriteQueueDepth();
+    }
 
+    /**
+     * Get the average time it took to write a response.
+     *
+     * @return the average write latency in milliseconds
+     */
+    public static double getAverageWriteLatency() {
+        return RESPONSE_STORE.getAverageWriteLatency();
     }
 
     /**
-     * Get the file count in the library folder.
+     * Get the number of saved responses.
      * <p>
-     * Assumes that all files in the folder are the JSON files of the responses
-     * from the uNoGS API.
+     * The count is kept by the {@link ResponseStore}, so the library folder
+     * is not listed.
      *
-     * @return number of files present in the library folder,
-     * {@link #LIBRARY_PATH}.
+     * @return number of responses saved in the library, {@link #LIBRARY_PATH}.
      */
     public static int getLibraryFileCount() {
-        LOGGER.log(Level.INFO, "Calculating the number of responses in the library folder...");
-        return LIBRARY_PATH.listFiles().length;
+        return (int) RESPONSE_STORE.getResponseCount();
     }
 
     /**
-     * Get the size of the library folder, in bytes.
+     * Get the number of saved responses of the given query type.
      *
-     * @return the size of the library folder, in bytes
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return number of responses of the query type in the library
+     */
+    public static int getLibraryFileCount(String queryType) {
+        return (int) RESPONSE_STORE.getResponseCount(queryType);
+    }
+
+    /**
+     * Get the size of the library, in bytes.
+     * <p>
+     * The size is kept by the {@link ResponseStore}, so the library folder is
+     * not listed.
+     *
+     * @return the size of the library, in bytes
      */
     public static long getLibraryFolderSize() {
-        LOGGER.log(Level.INFO, "Calculating the size of the library folder...");
-        long length = 0;
-        for (File file : LIBRARY_PATH.listFiles()) {
-            if (file.isFile()) {
-                length += file.length();
-            } // else {
-//              length += getFolderSize(file);
-//          }   Could probably make this recursive if there are nested folders...
-//              not required for now, though.
-        }
+        return RESPONSE_STORE.getByteSize();
+    }
 
-        return length;
+    /**
+     * Get the size of the responses of the given query type, in bytes.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return the size of the responses of the query type, in bytes
+     */
+    public static long getLibraryFolderSize(String queryType) {
+        return RESPONSE_STORE.getByteSize(queryType);
     }
 
     /**
-     * Delete everything in the library folder.
+     * Delete every saved response.
      */
     public static void clearLibraryFolder() {
         LOGGER.log(Level.INFO, "Clearing the library folder...");
-        for (File file : LIBRARY_PATH.listFiles()) {
-            file.delete();
-        }
+        RESPONSE_STORE.clear();
+        RESPONSE_CACHE.clear();
+        TITLE_STORE.clear();
     }
 
 }
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A {@link ResponseStore} that keeps responses in memory only.
+ * <p>
+ * Nothing is written to disk, so saved responses last only as long as the
+ * application does. This is meant for tests and for ephemeral containers,
+ * where the library folder would be thrown away anyway.
+ * <p>
+ * Responses are kept encoded, the same way they would be written to disk, so
+ * that the reported size matches what the other stores would take up, and so
+ * that callers cannot change a saved response through the object they were
+ * handed.
+ *
+ * @author mosguinz
+ */
+class MemoryResponseStore implements ResponseStore {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(MemoryResponseStore.class.getName());
+
+    /**
+     * The encoded responses, by their query type and query string.
+     */
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty store.
+     */
+    MemoryResponseStore() {
+        LoggingUtil.setupLogger(LOGGER);
+    }
+
+    /**
+     * Get the key that a response is stored under.
+     *
+     * @param queryType the query type of the response
+     * @param key the key of the response within its query type, if any
+     * @return the key for the response
+     */
+    private static String getKey(String queryType, String key) {
+        return key == null ? queryType : queryType + "?" + key;
+    }
+
+    /**
+     * Get the query type of a stored response from its key.
+     *
+     * @param key the key of the response
+     * @return the query type of the response
+     */
+    private static String getQueryType(String key) {
+        int i = key.indexOf('?');
+        return i < 0 ? key : key.substring(0, i);
+    }
+
+    @Override
+    public void open() {
+        // Nothing to load.
+    }
+
+    @Override
+    public boolean save(String queryType, String key, JSONObject response) {
+        entries.put(getKey(queryType, key), LocalLibrary.encodeResponse(queryType, response));
+        return true;
+    }
+
+    @Override
+    public JSONObject load(String queryType, String key, Predicate<JSONObject> isCurrent) {
+        byte[] value = entries.get(getKey(queryType, key));
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return LocalLibrary.decodeResponseIfCurrent(ByteBuffer.wrap(value), isCurrent);
+        } catch (IOException | JSONException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not decode saved response...");
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> getTitlesQueryStrings() {
+        String prefix = getKey("fetchTitles", "");
+        return entries.keySet().stream()
+                .filter((key) -> key.startsWith(prefix))
+                .map((key) -> key.substring(prefix.length()))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public long getResponseCount() {
+        return entries.size();
+    }
+
+    @Override
+    public long getResponseCount(String queryType) {
+        return entries.keySet().stream().filter((key) -> getQueryType(key).equals(queryType)).count();
+    }
+
+    @Override
+    public long getByteSize() {
+        return entries.values().stream().mapToLong((value) -> value.length).sum();
+    }
+
+    @Override
+    public long getByteSize(String queryType) {
+        return entries.entrySet().stream()
+                .filter((e) -> getQueryType(e.getKey()).equals(queryType))
+                .mapToLong((e) -> e.getValue().length)
+                .sum();
+    }
+
+    @Override
+    public void clear() {
+        LOGGER.log(Level.FINE, "Clearing {0} responses from memory", entries.size());
+        entries.clear();
+    }
+
+}
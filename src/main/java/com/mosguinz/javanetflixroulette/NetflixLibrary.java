@@ -23,15 +23,51 @@
  */
 package com.mosguinz.javanetflixroulette;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import kong.unirest.HttpResponse;
+import kong.unirest.RawResponse;
 import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -55,325 +91,2276 @@ public class NetflixLibrary {
      */
     private static final Logger LOGGER = Logger.getLogger(NetflixLibrary.class.getName());
 
+    /**
+     * The system property used to set how long to wait for an asynchronous
+     * query to the uNoGS API before giving up, in seconds.
+     *
+     * @see #sendQueryAsync(java.lang.String)
+     */
+    static final String QUERY_TIMEOUT_PROPERTY = "netflixRoulette.queryTimeout";
+
+    /**
+     * How long to wait for an asynchronous query to the uNoGS API, in seconds.
+     */
+    private static final int QUERY_TIMEOUT = Math.max(1, Integer.getInteger(QUERY_TIMEOUT_PROPERTY, 30));
+
+    /**
+     * The system property used to fetch every page of the results for a
+     * titles query, rather than only the first.
+     *
+     * @see #fetchAllPagesAsync
+     */
+    static final String ALL_PAGES_PROPERTY = "netflixRoulette.allPages";
+
+    /**
+     * The system property used to set how many pages of the results for a
+     * titles query may be requested at the same time.
+     */
+    static final String PAGE_CONCURRENCY_PROPERTY = "netflixRoulette.pageConcurrency";
+
+    /**
+     * Whether every page of the results for a titles query is fetched.
+     */
+    private static final boolean FETCH_ALL_PAGES = Boolean.getBoolean(ALL_PAGES_PROPERTY);
+
+    /**
+     * How many pages of the results for a titles query may be requested at
+     * the same time.
+     */
+    private static final int PAGE_CONCURRENCY = Math.max(1, Integer.getInteger(PAGE_CONCURRENCY_PROPERTY, 4));
+
+    /**
+     * The number of titles in each page of the results from the uNoGS API.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The system property used to set how many times a request that failed
+     * for a transient reason is retried.
+     *
+     * @see #isTransient(int)
+     */
+    static final String MAX_RETRIES_PROPERTY = "netflixRoulette.retry.maxRetries";
+
+    /**
+     * The system property used to set the delay before the first retry, in
+     * milliseconds; each retry after that may wait up to twice as long as the
+     * one before it.
+     */
+    static final String RETRY_BASE_DELAY_PROPERTY = "netflixRoulette.retry.baseDelay";
+
+    /**
+     * The system property used to set the longest delay before a retry, in
+     * milliseconds.
+     */
+    static final String RETRY_MAX_DELAY_PROPERTY = "netflixRoulette.retry.maxDelay";
+
+    /**
+     * How many times a request that failed for a transient reason is retried.
+     */
+    private static final int MAX_RETRIES = Math.max(0, Integer.getInteger(MAX_RETRIES_PROPERTY, 3));
+
+    /**
+     * The delay before the first retry, in milliseconds.
+     */
+    private static final int RETRY_BASE_DELAY = Math.max(1, Integer.getInteger(RETRY_BASE_DELAY_PROPERTY, 500));
+
+    /**
+     * The longest delay before a retry, in milliseconds.
+     */
+    private static final int RETRY_MAX_DELAY = Math.max(RETRY_BASE_DELAY, Integer.getInteger(RETRY_MAX_DELAY_PROPERTY, 8000));
+
+    /**
+     * The number of requests retried.
+     */
+    private static final AtomicLong RETRY_COUNT = new AtomicLong();
+
+    /**
+     * The system property used to hedge requests: a second copy of a request
+     * is sent if it has not been answered within this percentile of the
+     * latencies of recent requests of its query type, e.g., {@code 95}; off
+     * if {@code 0}.
+     *
+     * @see #scheduleHedge
+     */
+    static final String HEDGE_PERCENTILE_PROPERTY = "netflixRoulette.hedge.percentile";
+
+    /**
+     * The percentile of recent latencies after which a request is hedged, or
+     * {@code 0} if requests are not hedged.
+     */
+    private static final int HEDGE_PERCENTILE = Math.max(0, Math.min(100, Integer.getInteger(HEDGE_PERCENTILE_PROPERTY, 0)));
+
+    /**
+     * The number of latencies kept for each query type.
+     */
+    private static final int LATENCY_WINDOW = 200;
+
+    /**
+     * The fewest latencies of a query type that there must be before its
+     * requests are hedged.
+     */
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    /**
+     * The latencies of recent requests, by query type.
+     */
+    private static final ConcurrentMap<String, LatencyTracker> LATENCIES = new ConcurrentHashMap<>();
+
+    /**
+     * The number of hedges sent.
+     */
+    private static final AtomicLong HEDGE_COUNT = new AtomicLong();
+
+    /**
+     * The number of hedges answered before the request they hedged.
+     */
+    private static final AtomicLong HEDGE_WIN_COUNT = new AtomicLong();
+
+    /**
+     * Stops requests from being sent to the uNoGS API while it is unhealthy.
+     */
+    private static final CircuitBreaker BREAKER = new CircuitBreaker();
+
+    /**
+     * The queries to the uNoGS API that are in flight, by query type, or by
+     * query for titles.
+     *
+     * @see #getFlight
+     */
+    private static final ConcurrentMap<Object, Flight> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * The number of queries sent to the uNoGS API.
+     */
+    private static final AtomicLong SENT_QUERY_COUNT = new AtomicLong();
+
+    /**
+     * The number of queries that were not sent, as the same query was
+     * already in flight.
+     */
+    private static final AtomicLong COALESCED_QUERY_COUNT = new AtomicLong();
+
+    /**
+     * The host of the uNoGS API on RapidAPI.
+     */
+    private static final String API_HOST = "unogs-unogs-v1.p.rapidapi.com";
+
+    /**
+     * The system property used to set how many connections to the uNoGS API
+     * may be open at the same time.
+     */
+    static final String MAX_CONNECTIONS_PROPERTY = "netflixRoulette.http.maxConnections";
+
+    /**
+     * The system property used to set how long to wait for a connection to
+     * the uNoGS API, in milliseconds.
+     */
+    static final String CONNECT_TIMEOUT_PROPERTY = "netflixRoulette.http.connectTimeout";
+
+    /**
+     * The system property used to set how long to wait between packets of a
+     * response for the list of regions or genres, in milliseconds.
+     */
+    static final String LIST_TIMEOUT_PROPERTY = "netflixRoulette.http.listTimeout";
+
+    /**
+     * The system property used to set how long to wait between packets of a
+     * response for titles, in milliseconds.
+     */
+    static final String TITLES_TIMEOUT_PROPERTY = "netflixRoulette.http.titlesTimeout";
+
+    /**
+     * The system property used to turn off opening a connection to the uNoGS
+     * API at startup.
+     *
+     * @see #warmUpConnection()
+     */
+    static final String WARM_UP_PROPERTY = "netflixRoulette.http.warmUp";
+
+    /**
+     * How long to wait for a connection to the uNoGS API, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = Math.max(1, Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, 5000));
+
+    /**
+     * How long to wait between packets of a response for the list of regions
+     * or genres, in milliseconds. These lists are small, and rarely slow.
+     */
+    private static final int LIST_TIMEOUT = Math.max(1, Integer.getInteger(LIST_TIMEOUT_PROPERTY, 10000));
+
+    /**
+     * How long to wait between packets of a response for titles, in
+     * milliseconds. Searching for titles takes the API longer.
+     */
+    private static final int TITLES_TIMEOUT = Math.max(1, Integer.getInteger(TITLES_TIMEOUT_PROPERTY, 20000));
+
+    /**
+     * The HTTP client for the uNoGS API, kept apart from the shared
+     * {@link Unirest} configuration that is used for poster images.
+     *
+     * @see #createHttpClient()
+     */
+    private static final UnirestInstance HTTP_CLIENT = createHttpClient();
+
+    /**
+     * Keeps the requests to the uNoGS API within the limits of the RapidAPI
+     * plan.
+     */
+    private static final RequestScheduler SCHEDULER = new RequestScheduler(LocalLibrary.getLibraryPath());
+
+    /**
+     * Looks up saved responses for asynchronous fetches, which may have to
+     * read them from disk.
+     */
+    private static final ExecutorService LOOKUP_EXECUTOR = Executors.newFixedThreadPool(2, (r) -> {
+        Thread t = new Thread(r, "library-lookup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Handles responses once they arrive, which may save them to disk, so that
+     * the HTTP client's I/O thread is never held up by the
+     * {@link LocalLibrary}.
+     */
+    private static final ExecutorService RESPONSE_EXECUTOR = Executors.newFixedThreadPool(2, (r) -> {
+        Thread t = new Thread(r, "library-response");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Times out queries that take longer than {@link #QUERY_TIMEOUT}, and
+     * sends their retries once they are due.
+     */
+    private static final ScheduledExecutorService QUERY_TIMER = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "query-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
     /**
      * The API key to use for sending queries to the uNoGS API.
      *
-     * @see #getXRapidAPIKey()
+     * @see #getXRapidAPIKey()
+     */
+    private final String X_RAPID_API_KEY;
+
+    /**
+     * The instance of the {@link LocalLibrary} handler.
+     */
+    private final LocalLibrary localLibrary = new LocalLibrary();
+
+    /**
+     * An array-wrapped list of available Netflix regions.
+     *
+     * @see #fetchRegions()
+     */
+    public JSONArray availableRegions;
+
+    /**
+     * An array-wrapped list of available genres.
+     *
+     * @see #fetchGenres()
+     */
+    public JSONArray availableGenres;
+
+    // Below are the query parameters for sending requests. These values are
+    // set by the user, and are used to requests titles to the uNoGS API.
+    /**
+     * The Netflix region selected by the user.
+     *
+     * @see HomeGUI#getSelectedRegion()
+     */
+    private String queryRegion;
+
+    /**
+     * The list of genres selected by the user.
+     *
+     * @see HomeGUI#getSelectedGenres()
+     */
+    private ArrayList<String> queryGenres;
+
+    /**
+     * The title type selected by the user.
+     *
+     * @see HomeGUI#getSelectedTitleType()
+     */
+    private String queryTitleType;
+
+    /**
+     * The minimum rating selected by the user.
+     *
+     * @see HomeGUI#getSelectedMinimumRatingValue()
+     */
+    private String queryMinimumRating;
+
+    /**
+     * The maximum rating selected by the user.
+     *
+     * @see HomeGUI#getSelectedMaximumRatingValue()
+     */
+    private String queryMaximumRating;
+
+    /**
+     * The query to use to send the request.
+     * <p>
+     * This query is constructed using the query values set by the user.
+     *
+     * @see #setTitlesQuery()
+     * @see #queryRegion
+     * @see #queryGenres
+     * @see #queryTitleType
+     * @see #queryMinimumRating
+     * @see #queryMaximumRating
+     */
+    private TitlesQuery titlesQuery;
+
+    /**
+     * Set up an instance of {@link NetflixLibrary}.
+     * <p>
+     * Upon instantiation, the instance will:
+     * <ul>
+     * <li>obtain the API key provided in the environment variable under the key
+     * {@link #X_RAPID_API_KEY X_RAPID_API_KEY};</li>
+     * <li>start opening a connection to the uNoGS API, for the first roll;</li>
+     * <li>fetch the list of available Netflix regions and the list of genres,
+     * at the same time.</li>
+     * </ul>
+     * The constructor returns once both lists have been fetched.
+     */
+    NetflixLibrary() {
+        this.X_RAPID_API_KEY = getXRapidAPIKey();
+        LoggingUtil.setupLogger(LOGGER);
+        warmUpConnection();
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(2, (r) -> {
+            Thread t = new Thread(r, "startup-fetch");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            Future<JSONArray> regions = executor.submit(this::fetchRegions);
+            Future<JSONArray> genres = executor.submit(this::fetchGenres);
+            availableRegions = join(regions);
+            availableGenres = join(genres);
+        } finally {
+            executor.shutdown();
+        }
+
+        LOGGER.log(Level.INFO, "Fetched regions and genres in {0} ms", (System.nanoTime() - start) / 1e+6);
+    }
+
+    /**
+     * Set up the HTTP client for the uNoGS API.
+     * <p>
+     * The client keeps a pool of up to {@link #MAX_CONNECTIONS_PROPERTY}
+     * connections, which are kept alive between requests, so that only the
+     * first request pays for the TLS handshake. It asks for gzip-compressed
+     * responses, which are decompressed as they are read. Retries are left to
+     * {@link #requestAsync}, which knows which failures are worth retrying.
+     *
+     * @return the client
+     */
+    private static UnirestInstance createHttpClient() {
+        // Enough for every page in flight, and a hedge for each.
+        int maxConnections = Math.max(1, Integer.getInteger(MAX_CONNECTIONS_PROPERTY, Math.max(4, 2 * PAGE_CONCURRENCY)));
+
+        UnirestInstance client = Unirest.spawnInstance();
+        client.config()
+                .concurrency(maxConnections, maxConnections)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .socketTimeout(TITLES_TIMEOUT)
+                .requestCompression(true)
+                .automaticRetries(false)
+                .setDefaultHeader("X-RapidAPI-Host", API_HOST)
+                .addShutdownHook(true);
+
+        LOGGER.log(Level.CONFIG, "HTTP client: {0} connections; connect timeout {1} ms; read timeouts {2} ms for lists, {3} ms for titles",
+                new Object[]{maxConnections, CONNECT_TIMEOUT, LIST_TIMEOUT, TITLES_TIMEOUT});
+        return client;
+    }
+
+    /**
+     * Start opening a connection to the uNoGS API in the background, so that
+     * it is ready in the pool by the time the user rolls.
+     * <p>
+     * The regions and genres are usually loaded from the local library, so
+     * without this, the first roll would wait for the TLS handshake. The
+     * request is a {@code HEAD} request without the API key, so that it never
+     * counts towards the daily quota; its response is ignored.
+     */
+    private static void warmUpConnection() {
+        if (!Boolean.parseBoolean(System.getProperty(WARM_UP_PROPERTY, "true"))) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        HTTP_CLIENT.head("https://" + API_HOST + "/")
+                .asEmptyAsync()
+                .whenComplete((response, e) -> {
+                    if (e == null) {
+                        LOGGER.log(Level.INFO, "Opened a connection to {0} in {1} ms",
+                                new Object[]{API_HOST, (System.nanoTime() - start) / 1e+6});
+                    } else {
+                        LOGGER.log(Level.INFO, "Could not open a connection to {0}: {1}", new Object[]{API_HOST, e.toString()});
+                    }
+                });
+    }
+
+    /**
+     * Get how long to wait between packets of a response for a query type.
+     *
+     * @param queryType the query type
+     * @return the timeout, in milliseconds
+     */
+    private static int getReadTimeout(String queryType) {
+        return queryType.equals("fetchTitles") ? TITLES_TIMEOUT : LIST_TIMEOUT;
+    }
+
+    /**
+     * Wait for a fetch to finish and get its result.
+     * <p>
+     * An exception thrown by the fetch is thrown again from here, as if the
+     * fetch had been run on this thread.
+     *
+     * @param fetch the fetch to wait for
+     * @return the fetched data, or {@code null} if the thread was interrupted
+     */
+    private static JSONArray join(Future<JSONArray> fetch) {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LoggingUtil.logException(LOGGER, e, "Interrupted while fetching data");
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the API key for uNoGS.
+     * <p>
+     * Key must either be present in the environment variable under
+     * {@link #X_RAPID_API_KEY X_RAPID_API_KEY} or be provided when prompted.
+     *
+     * @return a RapidAPI key for uNoGS
+     */
+    private static String getXRapidAPIKey() {
+        LOGGER.log(Level.INFO, "Getting API key for Netflix library...");
+        String key = null;
+
+        try {
+            key = java.lang.System.getenv("X_RAPID_API_KEY");
+        } catch (NullPointerException | SecurityException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not find API key from environment variables...");
+            key = requestUserAPIKey("Netflix library API could not be found or access in the environment variables. Please provide one here.",
+                    "Netflix API key not found");
+        } finally {
+            LOGGER.log(Level.CONFIG, "Provided API key for Netflix library {0}", key);
+        }
+
+        return key;
+    }
+
+    /**
+     * Display a pop-up dialogue to request an API key from the user.
+     * <p>
+     * Invoked when a valid API key cannot be found or obtained from the
+     * environment variables.
+     *
+     * @param message the message displayed to the user
+     * @param title the dialogue box title
+     * @return the API key provided by the user
+     */
+    private static String requestUserAPIKey(String message, String title) {
+        LOGGER.log(Level.FINE, "Requesting API key from user...");
+        String key = null;
+
+        while (key == null || key.isEmpty()) {
+            LOGGER.log(Level.FINER, "Creating input dialog for user to input API key");
+            key = JOptionPane.showInputDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+
+            if (key != null) {
+                LOGGER.log(Level.FINER, "Stripping whitespaces from input");
+                key = key.replaceAll("\\s+", "");
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Set the Netflix region to be used for querying titles.
+     *
+     * @param region the region selected by user from
+     * {@link HomeGUI#getSelectedRegion()}
+     */
+    public void setQueryRegion(String region) {
+        LOGGER.log(Level.INFO, "Setting query region to {0}", region);
+        this.queryRegion = region;
+    }
+
+    /**
+     * Set the genre(s) to be used for querying titles.
+     *
+     * @param genres the genres selected by user from
+     * {@link HomeGUI#getSelectedGenres()}
+     */
+    public void setQueryGenres(ArrayList<String> genres) {
+        LOGGER.log(Level.INFO, "Setting query genres to {0}", genres.toString());
+        this.queryGenres = genres;
+    }
+
+    /**
+     * Set the title type to be used for querying titles.
+     *
+     * @param titleType the type selected by user from
+     * {@link HomeGUI#getSelectedTitleType()}
+     */
+    public void setQueryTitleType(String titleType) {
+        LOGGER.log(Level.INFO, "Setting query title type to {0}", titleType);
+        this.queryTitleType = titleType;
+    }
+
+    /**
+     * Set the minimum rating value to be used for querying titles.
+     *
+     * @param minimumRating the minimum rating selected by user from
+     * {@link HomeGUI#getSelectedMinimumRatingValue()}
+     */
+    public void setQueryMinimumRating(String minimumRating) {
+        LOGGER.log(Level.INFO, "Setting minimum rating to {0}", minimumRating);
+        this.queryMinimumRating = minimumRating;
+    }
+
+    /**
+     * Set the maximum rating value to be used for querying titles.
+     *
+     * @param maximumRating the maximum rating selected by user from
+     * {@link HomeGUI#getSelectedMaximumRatingValue()}
+     */
+    public void setQueryMaximumRating(String maximumRating) {
+        LOGGER.log(Level.INFO, "Setting maximum rating to {0}", maximumRating);
+        this.queryMaximumRating = maximumRating;
+    }
+
+    /**
+     * Fetch a list of Netflix titles.
+     *
+     * @return a {@link JSONArray} of available titles, as {@link Title}
+     * objects
+     */
+    public JSONArray fetchTitles() {
+        LOGGER.log(Level.INFO, "Fetching Netflix titles available in: {0}", queryRegion);
+        setTitlesQuery();
+        return fetchData("fetchTitles");
+    }
+
+    /**
+     * Fetch a list of Netflix titles without blocking the caller.
+     * <p>
+     * The query is taken from the values set when this method is called.
+     *
+     * @return a {@link CompletableFuture} of the available titles; see
+     * {@link #fetchDataAsync(java.lang.String)}
+     * @see #fetchTitles()
+     */
+    public CompletableFuture<JSONArray> fetchTitlesAsync() {
+        LOGGER.log(Level.INFO, "Fetching Netflix titles available in {0} asynchronously", queryRegion);
+        setTitlesQuery();
+        return fetchDataAsync("fetchTitles");
+    }
+
+    /**
+     * Fetch a list of genres.
+     *
+     * @return a {@link JSONArray} of available genres
+     */
+    private JSONArray fetchGenres() {
+        LOGGER.log(Level.INFO, "Fetching list of genres...");
+        return fetchData("fetchGenres");
+    }
+
+    /**
+     * Fetch a list of Netflix regions.
+     *
+     * @return a {@link JSONArray} of available regions
+     */
+    private JSONArray fetchRegions() {
+        LOGGER.log(Level.INFO, "Fetching list of available regions...");
+        return fetchData("fetchAvailableRegions");
+    }
+
+    /**
+     * Fetch the data for the given {@code queryType}.
+     * <p>
+     * The method will fetch the data for the given {@code queryType} by looking
+     * for responses saved in the local machine first. If that is not available,
+     * then it will send a request to the uNoGS API to obtain the data.
+     * <p>
+     * A saved response that is due to be refreshed is still used; a request
+     * is sent in the background to replace it.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return a {@link JSONArray} of the requested data
+     */
+    private JSONArray fetchData(String queryType) {
+        LOGGER.log(Level.INFO, "Fetching data for queryType: {0}", queryType);
+        long start = System.nanoTime();
+
+        // Look for saved responses first.
+        TitlesQuery q = titlesQuery;
+        JSONArray data = findSavedData(queryType, q);
+
+        String source = "the local library";
+        if (data == null) {
+            LOGGER.log(Level.INFO, "Can't find a valid response to use... sending a query to uNoGS API instead...");
+            data = fetchesAllPages(queryType) ? fetchAllPages(q, true) : sendQuery(queryType, q, true);
+            source = "uNoGS API";
+        }
+
+        LOGGER.log(Level.INFO, "Fetched {0} from {1} in {2} ms",
+                new Object[]{queryType, source, (System.nanoTime() - start) / 1e+6});
+        return data;
+    }
+
+    /**
+     * Fetch the data for the given {@code queryType} without blocking the
+     * caller.
+     * <p>
+     * Saved responses are looked up on a background thread; if none can be
+     * used, the query is sent with {@link #sendQueryAsync(java.lang.String,
+     * com.mosguinz.javanetflixroulette.TitlesQuery, boolean)}.
+     * <p>
+     * If every page of the results for titles is fetched, the returned future
+     * completes with the first page as soon as it arrives; the rest are
+     * cached as they arrive, and saved once they all have.
+     * <p>
+     * Cancelling the returned future stops the fetch at whichever step it has
+     * reached.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return a {@link CompletableFuture} of the requested data, or of
+     * {@code null} if it could not be fetched
+     */
+    private CompletableFuture<JSONArray> fetchDataAsync(String queryType) {
+        LOGGER.log(Level.INFO, "Fetching data asynchronously for queryType: {0}", queryType);
+        long start = System.nanoTime();
+        TitlesQuery q = titlesQuery;
+
+        CompletableFuture<JSONArray> result = new CompletableFuture<>();
+        CompletableFuture<JSONArray> lookup = CompletableFuture.supplyAsync(() -> findSavedData(queryType, q), LOOKUP_EXECUTOR);
+        lookup.whenComplete((data, e) -> {
+            if (e == null && data == null && !result.isDone()) {
+                LOGGER.log(Level.INFO, "Can't find a valid response to use... sending a query to uNoGS API instead...");
+                forward(fetchesAllPages(queryType) ? fetchFirstPageAsync(q) : sendQueryAsync(queryType, q, true), result);
+            } else {
+                forward(lookup, result);
+            }
+        });
+
+        result.whenComplete((data, e) -> LOGGER.log(Level.INFO, "Fetched {0} asynchronously in {1} ms",
+                new Object[]{queryType, (System.nanoTime() - start) / 1e+6}));
+        return result;
+    }
+
+    /**
+     * Look for a saved response that can be used for the query.
+     * <p>
+     * For titles, a saved response for a broader query is also looked for.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param q the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @return a {@link JSONArray} of the requested data, or {@code null} if
+     * there is no saved response to use
+     */
+    private JSONArray findSavedData(String queryType, TitlesQuery q) {
+        JSONArray data = localLibrary.getSavedResponse(queryType, q, () -> refresh(queryType, q));
+
+        if (data == null && queryType.equals("fetchTitles")) {
+            data = fetchContainedTitles(q);
+        }
+
+        return data;
+    }
+
+    /**
+     * Fetch titles by filtering a saved response for a broader query.
+     * <p>
+     * Only saved responses that hold every page of their results are used,
+     * as the titles for the query may be in the pages that are missing.
+     *
+     * @param titlesQuery the query for requesting titles
+     * @return a {@link JSONArray} of the matching titles, or {@code null} if no
+     * complete saved response contains the query or none of its titles match
+     * @see TitlesQueryPlanner
+     */
+    private JSONArray fetchContainedTitles(TitlesQuery titlesQuery) {
+        for (TitlesQuery savedQuery : localLibrary.getSavedTitlesQueries()) {
+            if (!TitlesQueryPlanner.contains(savedQuery, titlesQuery)) {
+                continue;
+            }
+
+            JSONArray saved = localLibrary.getCompleteSavedResponse(savedQuery,
+                    () -> refresh("fetchTitles", savedQuery));
+            if (saved == null) {
+                continue;
+            }
+
+            JSONArray titles = TitlesQueryPlanner.filter(saved, titlesQuery);
+            if (titles.length() > 0) {
+                LOGGER.log(Level.INFO, "Answering the query from a saved response for a broader query");
+                return titles;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Request a new response for a query in the background, replacing the
+     * saved one.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param q the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     */
+    private void refresh(String queryType, TitlesQuery q) {
+        if (fetchesAllPages(queryType)) {
+            fetchAllPages(q, false);
+        } else {
+            sendQuery(queryType, q, false);
+        }
+    }
+
+    /**
+     * Check whether every page of the results is fetched for the query type.
+     *
+     * @param queryType the query type
+     * @return {@code true} if {@link #ALL_PAGES_PROPERTY} is set and the query
+     * type is {@code fetchTitles}; {@code false} otherwise
+     */
+    private static boolean fetchesAllPages(String queryType) {
+        return FETCH_ALL_PAGES && queryType.equals("fetchTitles");
+    }
+
+    /**
+     * Fetch every page of the results for a titles query, and wait for all of
+     * them.
+     *
+     * @param q the query for requesting titles
+     * @param interactive whether to show the user an error message if the
+     * first page cannot be fetched
+     * @return a {@link JSONArray} of the titles from every page that could be
+     * fetched, or {@code null} if the first page could not be
+     */
+    private JSONArray fetchAllPages(TitlesQuery q, boolean interactive) {
+        Flight flight = getFlight("fetchTitles", q, interactive,
+                (f) -> fetchAllPagesAsync(q, f.interactivity, f.firstPage::complete));
+        return await(attach(flight, flight.result));
+    }
+
+    /**
+     * Fetch every page of the results for a titles query, completing as soon
+     * as the first page arrives.
+     * <p>
+     * If every caller cancels the returned future before the first page
+     * arrives, the whole fetch is cancelled; after that, the rest of the pages
+     * are still fetched.
+     *
+     * @param q the query for requesting titles
+     * @return a {@link CompletableFuture} of the titles in the first page, or
+     * of {@code null} if it could not be fetched
+     */
+    private CompletableFuture<JSONArray> fetchFirstPageAsync(TitlesQuery q) {
+        Flight flight = getFlight("fetchTitles", q, true, (f) -> fetchAllPagesAsync(q, f.interactivity, f.firstPage::complete));
+        return attach(flight, flight.firstPage);
+    }
+
+    /**
+     * A query to the uNoGS API that is in flight, which callers that need the
+     * same query attach to instead of sending it again.
+     */
+    private static class Flight {
+
+        /**
+         * Completed with the first page of the results, or with the whole
+         * response if it is not fetched in pages.
+         */
+        final CompletableFuture<JSONArray> firstPage = new CompletableFuture<>();
+
+        /**
+         * Completed with the whole response.
+         */
+        final CompletableFuture<JSONArray> result = new CompletableFuture<>();
+
+        /**
+         * Whether the query is made on behalf of the user.
+         */
+        final Interactivity interactivity;
+
+        /**
+         * The number of callers attached that have not cancelled.
+         */
+        final AtomicInteger callers = new AtomicInteger();
+
+        Flight(boolean interactive) {
+            this.interactivity = new Interactivity(interactive);
+        }
+    }
+
+    /**
+     * Whether a query is made on behalf of the user, who is shown an error
+     * message if it fails, and whose requests go ahead of background work.
+     * <p>
+     * A query made in the background is promoted once the user comes to wait
+     * for it, e.g., by attaching to it while it is in flight.
+     */
+    private static class Interactivity {
+
+        /**
+         * Whether the query is made on behalf of the user.
+         */
+        private boolean interactive;
+
+        /**
+         * Called once the query is promoted.
+         */
+        private final List<Runnable> onPromoted = new ArrayList<>();
+
+        Interactivity(boolean interactive) {
+            this.interactive = interactive;
+        }
+
+        /**
+         * Check whether the query is made on behalf of the user.
+         *
+         * @return {@code true} if the query was made by the user, or has been
+         * promoted; {@code false} otherwise
+         */
+        synchronized boolean isInteractive() {
+            return interactive;
+        }
+
+        /**
+         * Make the query interactive, if it is not already.
+         */
+        void promote() {
+            List<Runnable> listeners;
+            synchronized (this) {
+                if (interactive) {
+                    return;
+                }
+                interactive = true;
+                listeners = new ArrayList<>(onPromoted);
+                onPromoted.clear();
+            }
+            listeners.forEach(Runnable::run);
+        }
+
+        /**
+         * Call a listener once the query is promoted.
+         *
+         * @param listener the listener; called straight away if the query is
+         * already interactive
+         */
+        void onPromoted(Runnable listener) {
+            synchronized (this) {
+                if (!interactive) {
+                    onPromoted.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+    }
+
+    /**
+     * Get the query in flight for the given query, sending it if there is
+     * none.
+     * <p>
+     * Callers that attach to a query already in flight share its outcome. If
+     * an interactive caller attaches to a background query, the query is
+     * promoted: its requests still waiting for a permit go ahead of background
+     * work, and the user is shown an error message if it fails.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param q the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactive whether the caller is the user, who is waiting for
+     * the query
+     * @param send sends the query for the new flight, which it may complete
+     * {@link Flight#firstPage} early; run on this thread
+     * @return the query in flight
+     */
+    private static Flight getFlight(String queryType, TitlesQuery q, boolean interactive,
+            Function<Flight, CompletableFuture<JSONArray>> send) {
+        Object key = queryType.equals("fetchTitles") ? q : queryType;
+        Flight flight = new Flight(interactive);
+        Flight existing = IN_FLIGHT.putIfAbsent(key, flight);
+        if (existing != null) {
+            COALESCED_QUERY_COUNT.incrementAndGet();
+            LOGGER.log(Level.INFO, "Attaching to the {0} query already in flight", queryType);
+            if (interactive && !existing.interactivity.isInteractive()) {
+                LOGGER.log(Level.INFO, "Promoting the {0} query in flight, as the user is waiting for it", queryType);
+                existing.interactivity.promote();
+            }
+            return existing;
+        }
+
+        SENT_QUERY_COUNT.incrementAndGet();
+        flight.result.whenComplete((data, e) -> {
+            IN_FLIGHT.remove(key, flight);
+
+            // In case the first page never arrived.
+            if (e == null) {
+                flight.firstPage.complete(data);
+            } else {
+                flight.firstPage.completeExceptionally(toException(e));
+            }
+        });
+
+        try {
+            forward(send.apply(flight), flight.result);
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+        }
+        return flight;
+    }
+
+    /**
+     * Attach a caller to a query in flight.
+     * <p>
+     * The caller gets its own future, so that cancelling it does not affect
+     * other callers. Once every caller has cancelled, the query itself is
+     * cancelled.
+     *
+     * @param flight the query in flight
+     * @param shared either {@link Flight#firstPage} or {@link Flight#result}
+     * @return a future for the caller
+     */
+    private static CompletableFuture<JSONArray> attach(Flight flight, CompletableFuture<JSONArray> shared) {
+        flight.callers.incrementAndGet();
+        CompletableFuture<JSONArray> own = shared.thenApply(Function.identity());
+        own.whenComplete((data, e) -> {
+            if (own.isCancelled() && flight.callers.decrementAndGet() == 0) {
+                LOGGER.log(Level.INFO, "Every caller has cancelled; cancelling the query");
+                flight.result.cancel(true);
+            }
+        });
+        return own;
+    }
+
+    /**
+     * Wait for a query to finish.
+     *
+     * @param future the query
+     * @return the result of the query, or {@code null} if it failed
+     */
+    private static JSONArray await(CompletableFuture<JSONArray> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            LoggingUtil.logException(LOGGER, toException(e), "Query failed");
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of queries sent to the uNoGS API.
+     *
+     * @return the number of queries sent, counting every page of a query
+     * fetched in pages as one
+     */
+    public static long getSentQueryCount() {
+        return SENT_QUERY_COUNT.get();
+    }
+
+    /**
+     * Get the number of requests to the uNoGS API that may still be sent
+     * today.
+     *
+     * @return the number of requests left, or {@code -1} if there is no limit
+     * @see RequestScheduler#DAILY_QUOTA_PROPERTY
+     */
+    public static int getRemainingDailyQuota() {
+        return SCHEDULER.getRemainingQuota();
+    }
+
+    /**
+     * Get the number of background requests to the uNoGS API that were
+     * dropped to stay within the limits of the RapidAPI plan.
+     *
+     * @return the number of dropped requests
+     */
+    public static long getDroppedQueryCount() {
+        return SCHEDULER.getDroppedCount();
+    }
+
+    /**
+     * Get the state of the circuit breaker in front of the uNoGS API.
+     *
+     * @return {@code CLOSED} if requests are sent as usual, {@code OPEN} if
+     * they fail without being sent, or {@code HALF_OPEN} while a trial request
+     * is in flight
+     * @see CircuitBreaker
+     */
+    public static String getCircuitBreakerState() {
+        return BREAKER.getState().name();
+    }
+
+    /**
+     * Get the number of times the circuit breaker in front of the uNoGS API
+     * has opened.
+     *
+     * @return the number of times the breaker has opened
+     */
+    public static long getCircuitBreakerTripCount() {
+        return BREAKER.getTripCount();
+    }
+
+    /**
+     * Get a percentile of the latencies of recent requests to the uNoGS API.
+     *
+     * @param queryType the query type of the requests
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the latency at the percentile, in milliseconds, or {@code -1}
+     * if no requests of the query type have been answered
+     */
+    public static long getQueryLatency(String queryType, double percentile) {
+        long nanos = getLatencies(queryType).getPercentile(percentile, 1);
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Get the number of hedges sent for slow requests to the uNoGS API.
+     *
+     * @return the number of hedges sent
+     * @see #HEDGE_PERCENTILE_PROPERTY
+     */
+    public static long getHedgedQueryCount() {
+        return HEDGE_COUNT.get();
+    }
+
+    /**
+     * Get the number of hedges that were answered before the request they
+     * hedged.
+     *
+     * @return the number of hedges that won
+     */
+    public static long getHedgeWinCount() {
+        return HEDGE_WIN_COUNT.get();
+    }
+
+    /**
+     * Get the number of requests to the uNoGS API that were retried.
+     *
+     * @return the number of retries
+     */
+    public static long getRetryCount() {
+        return RETRY_COUNT.get();
+    }
+
+    /**
+     * Get the number of queries that were not sent, as the same query was
+     * already in flight.
+     *
+     * @return the number of coalesced queries
+     */
+    public static long getCoalescedQueryCount() {
+        return COALESCED_QUERY_COUNT.get();
+    }
+
+    /**
+     * Fetch every page of the results for a titles query.
+     * <p>
+     * The first page is requested on its own, to find out how many pages
+     * there are from its {@code COUNT}. The rest are then requested with at
+     * most {@link #PAGE_CONCURRENCY_PROPERTY} in flight at a time; each one
+     * starts when another finishes, rather than a thread waiting for its turn.
+     * <p>
+     * The rest of the pages are background requests, so only as many of them
+     * are requested as the daily quota has left for background requests.
+     * If that cuts the pages short, the pages that were fetched are saved as
+     * an incomplete response, which is used for the query until it is
+     * refreshed, rather than spending the quota on the same pages again.
+     * <p>
+     * As pages arrive, the titles so far are put in the
+     * {@link LocalLibrary}'s cache, in page order, each time they have doubled
+     * without a gap; see {@link TitlePages}. Once every page has
+     * arrived, the whole response is saved. If some pages could not be
+     * fetched, the titles from the others are taken back out of the cache and
+     * not saved, so that they are never used as the whole response.
+     *
+     * @param q the query for requesting titles
+     * @param interactivity whether to show the user an error message if the
+     * first page cannot be fetched
+     * @param onFirstPage called with the titles in the first page, once it
+     * arrives
+     * @return a {@link CompletableFuture} of the titles from every page that
+     * could be fetched; if the first page could not be, of an expired saved
+     * response, or of {@code null} if there is none
+     */
+    private CompletableFuture<JSONArray> fetchAllPagesAsync(TitlesQuery q, Interactivity interactivity,
+            Consumer<JSONArray> onFirstPage) {
+        LOGGER.log(Level.INFO, "Fetching every page of titles for: {0}", q);
+        long start = System.nanoTime();
+        CompletableFuture<JSONArray> result = new CompletableFuture<>();
+        CompletableFuture<JSONObject> first = requestAsync(getPageEndpoint(q, 1), "fetchTitles", interactivity);
+        result.whenComplete((titles, e) -> first.cancel(true));
+
+        first.whenCompleteAsync((response, e) -> {
+            try {
+                if (e != null) {
+                    result.complete(recover(e, "fetchTitles", q, interactivity.isInteractive()));
+                } else {
+                    fetchRemainingPages(q, response, interactivity.isInteractive(), onFirstPage, result, start);
+                }
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        }, RESPONSE_EXECUTOR);
+
+        return result;
+    }
+
+    /**
+     * Handle the first page of the results for a titles query, then request
+     * the rest.
+     *
+     * @param q the query for requesting titles
+     * @param response the response for the first page, or {@code null} if the
+     * request failed
+     * @param interactive whether to show the user an error message if the
+     * first page cannot be used
+     * @param onFirstPage called with the titles in the first page
+     * @param result completed once every page has been handled
+     * @param start when the fetch started, from {@link System#nanoTime()}
+     */
+    private void fetchRemainingPages(TitlesQuery q, JSONObject response, boolean interactive, Consumer<JSONArray> onFirstPage,
+            CompletableFuture<JSONArray> result, long start) {
+        JSONArray items = readResponse(response, "fetchTitles", interactive);
+        if (items == null) {
+            result.complete(null);
+            return;
+        }
+
+        int totalPageCount = getPageCount(response, items);
+        LOGGER.log(Level.INFO, "First page of {0} arrived in {1} ms",
+                new Object[]{totalPageCount, (System.nanoTime() - start) / 1e+6});
+
+        int pageCount = totalPageCount;
+        int quota = SCHEDULER.getRemainingQuota(RequestScheduler.Priority.BACKGROUND);
+        if (quota >= 0 && pageCount - 1 > quota) {
+            pageCount = 1 + quota;
+            LOGGER.log(Level.WARNING, "Only fetching {0} of {1} pages, to stay within the daily quota",
+                    new Object[]{pageCount, totalPageCount});
+        }
+
+        TitlePages pages = new TitlePages(pageCount, totalPageCount);
+        cachePages(q, pages.put(1, items));
+        onFirstPage.accept(items);
+
+        if (pageCount == 1) {
+            finishPages(q, pages, result, start);
+            return;
+        }
+
+        AtomicInteger nextPage = new AtomicInteger(2);
+        int lanes = Math.min(PAGE_CONCURRENCY, pageCount - 1);
+        AtomicInteger activeLanes = new AtomicInteger(lanes);
+        for (int i = 0; i < lanes; i++) {
+            fetchNextPage(q, pages, nextPage, activeLanes, result, start);
+        }
+    }
+
+    /**
+     * Request the next page that has not been requested yet, then carry on
+     * with the one after that once it arrives, until every page has been
+     * requested.
+     *
+     * @param q the query for requesting titles
+     * @param pages the pages that have arrived so far
+     * @param nextPage the number of the next page to request
+     * @param activeLanes the number of chains of requests still going
+     * @param result completed by the last chain to finish
+     * @param start when the fetch started, from {@link System#nanoTime()}
+     */
+    private void fetchNextPage(TitlesQuery q, TitlePages pages, AtomicInteger nextPage, AtomicInteger activeLanes,
+            CompletableFuture<JSONArray> result, long start) {
+        int page = nextPage.getAndIncrement();
+        if (page > pages.getPageCount() || result.isDone()) {
+            if (activeLanes.decrementAndGet() == 0) {
+                finishPages(q, pages, result, start);
+            }
+            return;
+        }
+
+        requestAsync(getPageEndpoint(q, page), "fetchTitles", new Interactivity(false)).whenCompleteAsync((response, e) -> {
+            try {
+                JSONArray items = e == null ? readResponse(response, "fetchTitles", false) : null;
+                if (items != null) {
+                    cachePages(q, pages.put(page, items));
+                } else {
+                    LOGGER.log(Level.WARNING, "Could not fetch page {0} of {1}", new Object[]{page, pages.getPageCount()});
+                }
+            } catch (RuntimeException ex) {
+                LoggingUtil.logException(LOGGER, ex, "Could not handle page " + page);
+            }
+
+            fetchNextPage(q, pages, nextPage, activeLanes, result, start);
+        }, RESPONSE_EXECUTOR);
+    }
+
+    /**
+     * Cache the titles of the pages that have arrived so far, if there is a
+     * new copy of them.
+     *
+     * @param q the query for requesting titles
+     * @param titles the titles from {@link TitlePages#put}, or {@code null}
+     * if there is no new copy
+     */
+    private void cachePages(TitlesQuery q, JSONArray titles) {
+        if (titles != null) {
+            localLibrary.cacheResponse(titles, "fetchTitles", q);
+        }
+    }
+
+    /**
+     * Save the titles from every page once they have all arrived, and
+     * complete the fetch.
+     * <p>
+     * If some pages did not arrive, including when the fetch was cancelled,
+     * the titles that were cached as the pages arrived are removed from the
+     * cache instead. If only some of the pages were requested, the response
+     * is saved as incomplete.
+     *
+     * @param q the query for requesting titles
+     * @param pages the pages that have arrived
+     * @param result the future to complete with the titles
+     * @param start when the fetch started, from {@link System#nanoTime()}
+     */
+    private void finishPages(TitlesQuery q, TitlePages pages, CompletableFuture<JSONArray> result, long start) {
+        JSONArray titles = pages.getTitles();
+        boolean complete = pages.isComplete();
+        if (!complete) {
+            LOGGER.log(Level.WARNING, "Only {0} of {1} pages arrived; not saving the response",
+                    new Object[]{pages.getArrivedCount(), pages.getPageCount()});
+            localLibrary.uncacheResponse("fetchTitles", q);
+        }
+
+        if (result.isDone()) {
+            return;
+        }
+
+        if (complete) {
+            localLibrary.saveResponse(titles, "fetchTitles", q, !pages.isTruncated());
+        }
+
+        LOGGER.log(Level.INFO, "Fetched {0} titles in {1} of {2} pages in {3} ms",
+                new Object[]{titles.length(), pages.getPageCount(), pages.getTotalPageCount(),
+                    (System.nanoTime() - start) / 1e+6});
+        result.complete(titles);
+    }
+
+    /**
+     * Get the number of pages of the results for a titles query.
+     *
+     * @param response the response for the first page
+     * @param items the titles in the first page
+     * @return the number of pages, from the {@code COUNT} of the response; at
+     * least {@code 1}
+     */
+    private static int getPageCount(JSONObject response, JSONArray items) {
+        return Math.max(1, (response.optInt("COUNT", items.length()) + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Get the endpoint URL for a page of the results for a titles query.
+     *
+     * @param q the query for requesting titles
+     * @param page the page number, starting from 1
+     * @return the endpoint URL for the page
+     */
+    private static String getPageEndpoint(TitlesQuery q, int page) {
+        return "https://unogs-unogs-v1.p.rapidapi.com/aaapi.cgi?" + q.getPageQueryString(page);
+    }
+
+    /**
+     * The pages of the results for a titles query that have arrived so far.
+     * <p>
+     * The titles of the pages that have arrived without a gap since the first
+     * are kept in one list, in page order, which each page is added to once
+     * the pages before it have arrived. Copies of the list are handed out to
+     * be cached only as it doubles in length, so that the titles are copied
+     * no more than about twice over, however many pages there are.
+     */
+    private static class TitlePages {
+
+        /**
+         * The titles in each page, or {@code null} for pages that have not
+         * arrived.
+         */
+        private final JSONArray[] pages;
+
+        /**
+         * The number of pages of the results, including the ones that are not
+         * requested.
+         */
+        private final int totalPageCount;
+
+        /**
+         * The titles in the pages that have arrived without a gap since the
+         * first, in page order.
+         */
+        private final JSONArray titles = new JSONArray();
+
+        /**
+         * The number of pages whose titles are in {@link #titles}.
+         */
+        private int titlesPageCount;
+
+        /**
+         * The number of titles in the last copy of {@link #titles} that was
+         * handed out.
+         */
+        private int copiedCount;
+
+        /**
+         * Set up an empty set of pages.
+         *
+         * @param pageCount the number of pages that are requested
+         * @param totalPageCount the number of pages of the results
+         */
+        TitlePages(int pageCount, int totalPageCount) {
+            this.pages = new JSONArray[pageCount];
+            this.totalPageCount = totalPageCount;
+        }
+
+        /**
+         * Add a page that has arrived.
+         *
+         * @param page the page number, starting from 1
+         * @param items the titles in the page
+         * @return a copy of the titles in the pages that have arrived without
+         * a gap since the first, in page order; or {@code null} if they have
+         * not doubled since the last copy, e.g., because the page is after a
+         * gap
+         */
+        synchronized JSONArray put(int page, JSONArray items) {
+            pages[page - 1] = items;
+            while (titlesPageCount < pages.length && pages[titlesPageCount] != null) {
+                for (Object title : pages[titlesPageCount]) {
+                    titles.put(title);
+                }
+                titlesPageCount++;
+            }
+
+            if (titles.length() == 0 || titles.length() < 2 * copiedCount) {
+                return null;
+            }
+            copiedCount = titles.length();
+            JSONArray copy = new JSONArray();
+            for (Object title : titles) {
+                copy.put(title);
+            }
+            return copy;
+        }
+
+        /**
+         * Get the titles from every page that has arrived so far.
+         * <p>
+         * Once every page has arrived, this is the list that the pages were
+         * added to, which must not be added to any more.
+         *
+         * @return the titles, in page order
+         */
+        synchronized JSONArray getTitles() {
+            if (titlesPageCount == pages.length) {
+                return titles;
+            }
+
+            JSONArray arrived = new JSONArray();
+            for (JSONArray page : pages) {
+                if (page != null) {
+                    for (Object title : page) {
+                        arrived.put(title);
+                    }
+                }
+            }
+            return arrived;
+        }
+
+        /**
+         * Get the number of pages that are requested.
+         *
+         * @return the number of pages
+         */
+        int getPageCount() {
+            return pages.length;
+        }
+
+        /**
+         * Get the number of pages of the results, including the ones that are
+         * not requested.
+         *
+         * @return the number of pages
+         */
+        int getTotalPageCount() {
+            return totalPageCount;
+        }
+
+        /**
+         * Check whether only some of the pages of the results are requested.
+         *
+         * @return {@code true} if some pages are not requested; {@code false}
+         * otherwise
+         */
+        boolean isTruncated() {
+            return pages.length < totalPageCount;
+        }
+
+        /**
+         * Get the number of pages that have arrived.
+         *
+         * @return the number of pages that have arrived
+         */
+        synchronized int getArrivedCount() {
+            int n = 0;
+            for (JSONArray page : pages) {
+                if (page != null) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Check whether every page that is requested has arrived.
+         *
+         * @return {@code true} if every page has arrived; {@code false}
+         * otherwise
+         */
+        boolean isComplete() {
+            return getArrivedCount() == pages.length;
+        }
+
+    }
+
+    /**
+     * Send a GET request to the uNOGS API server.
+     * <p>
+     * Will only be invoked if there is no responses saved or if the saved
+     * responses are out-of-date or not valid.
+     * <p>
+     * When invoked, it will also attempt to:
+     * <ul>
+     * <li>verify whether the response is valid;</li>
+     * <li>extract the response into a suitable format;</li>
+     * <li><b>write the response to file</b>, so that it can be used later.</li>
+     * </ul>
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return a {@link JSONArray} of the requested data if the response was
+     * successfully validated and extracted; {@code null} otherwise
+     */
+    public JSONArray sendQuery(String queryType) {
+        return sendQuery(queryType, titlesQuery, true);
+    }
+
+    /**
+     * Send a GET request to the uNOGS API server for the given query.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactive whether to show the user an error message if the
+     * request fails; {@code false} for requests made in the background
+     * @return a {@link JSONArray} of the requested data if the response was
+     * successfully validated and extracted; {@code null} otherwise
+     * @see #sendQuery(java.lang.String)
+     */
+    private JSONArray sendQuery(String queryType, TitlesQuery titlesQuery, boolean interactive) {
+        Flight flight = getFlight(queryType, titlesQuery, interactive,
+                (f) -> CompletableFuture.completedFuture(sendUncoalescedQuery(queryType, titlesQuery, f.interactivity)));
+        return await(attach(flight, flight.result));
+    }
+
+    /**
+     * Send a GET request to the uNOGS API server for the given query, even if
+     * the same query is already in flight, and wait for it.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactivity whether to show the user an error message if the
+     * request fails
+     * @return a {@link JSONArray} of the requested data if the response was
+     * successfully validated and extracted; {@code null} otherwise
+     */
+    private JSONArray sendUncoalescedQuery(String queryType, TitlesQuery titlesQuery, Interactivity interactivity) {
+        try {
+            return sendUncoalescedQueryAsync(queryType, titlesQuery, interactivity).join();
+        } catch (CompletionException | CancellationException e) {
+            reportConnectionFailure(toException(e), interactivity.isInteractive());
+            return null;
+        }
+    }
+
+    /**
+     * Send a GET request to the uNoGS API server without blocking the caller.
+     * <p>
+     * The same as {@link #sendQuery(java.lang.String)}, except that the
+     * response is handled in the background once it arrives.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return a {@link CompletableFuture} of the requested data; see
+     * {@link #sendQueryAsync(java.lang.String,
+     * com.mosguinz.javanetflixroulette.TitlesQuery, boolean)}
      */
-    private final String X_RAPID_API_KEY;
+    public CompletableFuture<JSONArray> sendQueryAsync(String queryType) {
+        return sendQueryAsync(queryType, titlesQuery, true);
+    }
 
     /**
-     * The instance of the {@link LocalLibrary} handler.
+     * Send a GET request to the uNoGS API server for the given query without
+     * blocking the caller.
+     * <p>
+     * If the same query is already in flight, the caller attaches to it
+     * rather than sending it again.
+     * <p>
+     * The returned future fails with a {@link TimeoutException} if there is
+     * no response within {@link #QUERY_TIMEOUT_PROPERTY} seconds. Once every
+     * caller has cancelled, or it has timed out, a response that arrives later
+     * is discarded, and is not saved. The HTTP client does not support
+     * aborting the request itself, which runs until it completes or hits the
+     * client's own socket timeout.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactive whether to show the user an error message if the
+     * request fails; {@code false} for requests made in the background
+     * @return a {@link CompletableFuture} of the requested data if the
+     * response was successfully validated and extracted, or of {@code null}
+     * otherwise
      */
-    private final LocalLibrary localLibrary = new LocalLibrary();
+    private CompletableFuture<JSONArray> sendQueryAsync(String queryType, TitlesQuery titlesQuery, boolean interactive) {
+        Flight flight = getFlight(queryType, titlesQuery, interactive,
+                (f) -> sendUncoalescedQueryAsync(queryType, titlesQuery, f.interactivity));
+        return attach(flight, flight.result);
+    }
 
     /**
-     * An array-wrapped list of available Netflix regions.
+     * Send a GET request to the uNoGS API server for the given query without
+     * blocking the caller, even if the same query is already in flight.
+     * <p>
+     * The response is validated and saved on the
+     * {@link #RESPONSE_EXECUTOR}, not on the thread that received it.
      *
-     * @see #fetchRegions()
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactivity whether to show the user an error message if the
+     * request fails
+     * @return a {@link CompletableFuture} of the requested data if the
+     * response was successfully validated and extracted; if the request
+     * failed, of an expired saved response, if there is one; or of
+     * {@code null} otherwise
      */
-    public JSONArray availableRegions;
+    private CompletableFuture<JSONArray> sendUncoalescedQueryAsync(String queryType, TitlesQuery titlesQuery,
+            Interactivity interactivity) {
+        LOGGER.log(Level.INFO, "Sending asynchronous query to uNoGS API server: {0}", queryType);
+        CompletableFuture<JSONObject> response = requestAsync(getEndpoint(queryType, titlesQuery), queryType, interactivity);
+        CompletableFuture<JSONArray> result = response.handleAsync((r, e) -> e == null
+                ? processResponse(r, queryType, titlesQuery, interactivity.isInteractive())
+                : recover(e, queryType, titlesQuery, interactivity.isInteractive()), RESPONSE_EXECUTOR);
+        result.whenComplete((data, e) -> response.cancel(true));
+        return result;
+    }
 
     /**
-     * An array-wrapped list of available genres.
+     * Send a GET request to the uNoGS API server without blocking the caller,
+     * and get the raw response.
+     * <p>
+     * The request is sent once the {@link RequestScheduler} allows it. If it
+     * fails for a transient reason, it is retried up to
+     * {@link #MAX_RETRIES_PROPERTY} times, after a delay that grows with each
+     * attempt; see {@link #getRetryDelay}. While the {@link CircuitBreaker}
+     * is open, it fails without being sent. If it is slow to answer, it may be
+     * hedged; see {@link #scheduleHedge}.
+     * <p>
+     * The returned future fails with a {@link TimeoutException} if there is no
+     * response within {@link #QUERY_TIMEOUT_PROPERTY} seconds, including the
+     * time spent waiting to be sent and between retries. Once it has been
+     * cancelled or has timed out, a request still waiting is not sent, and a
+     * response that arrives later is discarded.
      *
-     * @see #fetchGenres()
+     * @param requestURL the endpoint URL
+     * @param queryType the query type, for logging
+     * @param interactivity whether the request is made on behalf of the user
+     * @return a {@link CompletableFuture} of the response; it fails with the
+     * reason if the request could not be sent, or was not answered with a
+     * usable response
      */
-    public JSONArray availableGenres;
+    private CompletableFuture<JSONObject> requestAsync(String requestURL, String queryType, Interactivity interactivity) {
+        CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        attemptRequest(requestURL, queryType, interactivity, 0, result);
+        return withTimeout(result, queryType);
+    }
 
-    // Below are the query parameters for sending requests. These values are
-    // set by the user, and are used to requests titles to the uNoGS API.
     /**
-     * The Netflix region selected by the user.
+     * Make an attempt at a request, once the {@link RequestScheduler} allows
+     * it, and hedge it if it is slow to answer.
+     * <p>
+     * If the request is promoted while it waits for a permit, it goes ahead of
+     * background work from then on. A background request that is dropped is
+     * tried again as an interactive one if it has been promoted in the
+     * meantime.
      *
-     * @see HomeGUI#getSelectedRegion()
+     * @param requestURL the endpoint URL
+     * @param queryType the query type, for logging
+     * @param interactivity whether the request is made on behalf of the user
+     * @param retry the number of attempts made before this one
+     * @param result completed with the response, or with the reason that
+     * there is none
      */
-    private String queryRegion;
+    private void attemptRequest(String requestURL, String queryType, Interactivity interactivity, int retry,
+            CompletableFuture<JSONObject> result) {
+        // Fail fast, rather than waiting for a permit.
+        if (!BREAKER.isAllowing()) {
+            result.completeExceptionally(getBreakerException());
+            return;
+        }
+
+        RequestScheduler.Priority priority = getPriority(interactivity.isInteractive());
+        CompletableFuture<RequestScheduler.Permit> permit = SCHEDULER.acquire(priority);
+        result.whenComplete((data, e) -> permit.cancel(true));
+        if (priority == RequestScheduler.Priority.BACKGROUND) {
+            interactivity.onPromoted(() -> SCHEDULER.promote(permit));
+        }
+
+        permit.whenComplete((p, rejected) -> {
+            if (rejected != null) {
+                if (priority == RequestScheduler.Priority.BACKGROUND && interactivity.isInteractive() && !result.isDone()) {
+                    attemptRequest(requestURL, queryType, interactivity, retry, result);
+                } else if (!result.isDone()) {
+                    result.completeExceptionally(toException(rejected));
+                }
+                return;
+            }
+            if (result.isDone()) {
+                p.release();
+                return;
+            }
+            if (!BREAKER.tryAcquire()) {
+                p.release();
+                result.completeExceptionally(getBreakerException());
+                return;
+            }
+
+            Attempt attempt = new Attempt(requestURL, queryType, interactivity, retry, result);
+            sendAttempt(attempt, false, p);
+            scheduleHedge(attempt);
+        });
+    }
 
     /**
-     * The list of genres selected by the user.
-     *
-     * @see HomeGUI#getSelectedGenres()
+     * An attempt at a request, which may be sent twice if it is hedged.
      */
-    private ArrayList<String> queryGenres;
+    private static class Attempt {
+
+        /**
+         * The endpoint URL.
+         */
+        final String requestURL;
+
+        /**
+         * The query type, for logging.
+         */
+        final String queryType;
+
+        /**
+         * Whether the request is made on behalf of the user.
+         */
+        final Interactivity interactivity;
+
+        /**
+         * The number of attempts made before this one.
+         */
+        final int retry;
+
+        /**
+         * Completed with the response, or with the reason that there is none.
+         */
+        final CompletableFuture<JSONObject> result;
+
+        /**
+         * The number of copies of the request sent and not yet answered.
+         */
+        final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Whether the failure of the attempt has been handled, by retrying or
+         * failing the request.
+         */
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        Attempt(String requestURL, String queryType, Interactivity interactivity, int retry,
+                CompletableFuture<JSONObject> result) {
+            this.requestURL = requestURL;
+            this.queryType = queryType;
+            this.interactivity = interactivity;
+            this.retry = retry;
+            this.result = result;
+        }
+
+        /**
+         * Check whether the attempt no longer needs an answer.
+         *
+         * @return {@code true} if the request has completed, or the attempt
+         * has failed
+         */
+        boolean isSettled() {
+            return result.isDone() || failed.get();
+        }
+    }
 
     /**
-     * The title type selected by the user.
+     * Send a copy of the request for an attempt.
+     * <p>
+     * The request cannot be aborted, and the {@link CircuitBreaker} needs its
+     * outcome, so it is left to finish even once the attempt is settled.
      *
-     * @see HomeGUI#getSelectedTitleType()
+     * @param attempt the attempt
+     * @param hedge whether the copy is a hedge
+     * @param permit the permit to send the copy, which is used as it is sent
      */
-    private String queryTitleType;
+    private void sendAttempt(Attempt attempt, boolean hedge, RequestScheduler.Permit permit) {
+        LOGGER.log(Level.FINE, "Sending query at: {0}", attempt.requestURL);
+        permit.use();
+        attempt.pending.incrementAndGet();
+        long start = System.nanoTime();
+        JSONArray items = new JSONArray();
+        AtomicReference<JSONException> decodeError = new AtomicReference<>();
+        Consumer<Object> itemSink = attempt.queryType.equals("fetchTitles") ? (item) -> items.put(Title.of(item)) : items::put;
+
+        HTTP_CLIENT.get(attempt.requestURL)
+                .header("X-RapidAPI-Key", this.X_RAPID_API_KEY)
+                .socketTimeout(getReadTimeout(attempt.queryType))
+                .asObjectAsync((raw) -> decodeResponse(raw, itemSink, decodeError))
+                .whenComplete((httpResponse, e) -> {
+                    getLatencies(attempt.queryType).record(System.nanoTime() - start);
+                    attempt.pending.decrementAndGet();
+                    try {
+                        handleAttempt(attempt, hedge, httpResponse, items, decodeError.get(), e);
+                    } catch (RuntimeException ex) {
+                        attempt.result.completeExceptionally(ex);
+                    }
+                });
+    }
 
     /**
-     * The minimum rating selected by the user.
+     * Decode the body of a response as it is read.
+     * <p>
+     * The HTTP client buffers the raw body, which is still gzip-compressed if
+     * the server compressed it, before it is decoded. From there, the elements
+     * of {@code ITEMS} are handed straight to {@code itemSink}, so that the
+     * body is never copied into a string or parsed into a tree as a whole;
+     * see {@link ResponseDecoder}. Titles are decoded into {@link Title}
+     * objects there and then, so each one is only held as a
+     * {@link JSONObject} until the next one is read. The body of an error
+     * response is not read, as it is not used.
      *
-     * @see HomeGUI#getSelectedMinimumRatingValue()
+     * @param raw the raw response
+     * @param itemSink adds the elements of {@code ITEMS} to the items of the
+     * attempt
+     * @param decodeError set to the reason if the body could not be decoded
+     * @return the response without its items, or {@code null} if it is an
+     * error response, or could not be decoded
      */
-    private String queryMinimumRating;
+    private static JSONObject decodeResponse(RawResponse raw, Consumer<Object> itemSink, AtomicReference<JSONException> decodeError) {
+        if (raw.getStatus() >= 300) {
+            return null;
+        }
+
+        try (Reader reader = new InputStreamReader(getContent(raw), StandardCharsets.UTF_8)) {
+            return ResponseDecoder.decode(reader, itemSink);
+        } catch (JSONException e) {
+            decodeError.set(e);
+        } catch (IOException e) {
+            decodeError.set(new JSONException(e));
+        }
+        return null;
+    }
 
     /**
-     * The maximum rating selected by the user.
+     * Get the body of a response, decompressing it as it is read if it was
+     * sent compressed.
      *
-     * @see HomeGUI#getSelectedMaximumRatingValue()
+     * @param raw the raw response
+     * @return the body of the response
+     * @throws IOException if the body is not valid gzip
      */
-    private String queryMaximumRating;
+    private static InputStream getContent(RawResponse raw) throws IOException {
+        InputStream content = raw.getContent();
+        String encoding = raw.getEncoding();
+        return encoding != null && "gzip".equalsIgnoreCase(encoding.trim()) ? new GZIPInputStream(content) : content;
+    }
 
     /**
-     * The query string to use to send the request.
+     * Send a hedge for an attempt if it has not been answered within
+     * {@link #HEDGE_PERCENTILE_PROPERTY} of the recent latencies for its query
+     * type.
      * <p>
-     * This string is constructed using the query values set by the user.
+     * The hedge waits for a background permit from the
+     * {@link RequestScheduler}, so it is dropped rather than sent when the
+     * daily quota is tight. It is not sent unless the {@link CircuitBreaker}
+     * is closed, as a second request only adds to the load on an unhealthy
+     * server.
      *
-     * @see #setTitlesQueryString()
-     * @see #queryRegion
-     * @see #queryGenres
-     * @see #queryTitleType
-     * @see #queryMinimumRating
-     * @see #queryMaximumRating
+     * @param attempt the attempt
      */
-    private String titlesQueryString;
+    private void scheduleHedge(Attempt attempt) {
+        if (HEDGE_PERCENTILE <= 0) {
+            return;
+        }
+
+        long delay = getLatencies(attempt.queryType).getPercentile(HEDGE_PERCENTILE, HEDGE_MIN_SAMPLES);
+        if (delay < 0) {
+            return;
+        }
+
+        QUERY_TIMER.schedule(() -> {
+            if (attempt.isSettled() || BREAKER.getState() != CircuitBreaker.State.CLOSED) {
+                return;
+            }
+
+            CompletableFuture<RequestScheduler.Permit> permit = SCHEDULER.acquire(RequestScheduler.Priority.BACKGROUND);
+            attempt.result.whenComplete((data, e) -> permit.cancel(true));
+            permit.whenComplete((p, rejected) -> {
+                if (rejected != null) {
+                    return;
+                }
+                if (attempt.isSettled()) {
+                    p.release();
+                    return;
+                }
+
+                HEDGE_COUNT.incrementAndGet();
+                LOGGER.log(Level.INFO, "Hedging {0} after {1} ms",
+                        new Object[]{attempt.queryType, TimeUnit.NANOSECONDS.toMillis(delay)});
+                sendAttempt(attempt, true, p);
+            });
+        }, delay, TimeUnit.NANOSECONDS);
+    }
 
     /**
-     * Set up an instance of {@link NetflixLibrary}.
-     * <p>
-     * Upon instantiation, the instance will:
-     * <ul>
-     * <li>obtain the API key provided in the environment variable under the key
-     * {@link #X_RAPID_API_KEY X_RAPID_API_KEY};</li>
-     * <li>fetch the list of available Netflix regions;</li>
-     * <li>fetch the list of genres;</li>
-     * </ul>
+     * Get the recent latencies of requests for a query type.
+     *
+     * @param queryType the query type
+     * @return the recent latencies
      */
-    NetflixLibrary() {
-        this.X_RAPID_API_KEY = getXRapidAPIKey();
-        LoggingUtil.setupLogger(LOGGER);
-
-        availableRegions = fetchRegions();
-        availableGenres = fetchGenres();
+    private static LatencyTracker getLatencies(String queryType) {
+        return LATENCIES.computeIfAbsent(queryType, (k) -> new LatencyTracker(LATENCY_WINDOW));
     }
 
     /**
-     * Get the API key for uNoGS.
+     * Handle the answer to a copy of the request for an attempt: complete the
+     * result, or schedule a retry if the attempt failed for a transient
+     * reason.
      * <p>
-     * Key must either be present in the environment variable under
-     * {@link #X_RAPID_API_KEY X_RAPID_API_KEY} or be provided when prompted.
+     * The first successful answer completes the result. A failure is only
+     * handled once no other copy is still waiting for an answer.
      *
-     * @return a RapidAPI key for uNoGS
+     * @param attempt the attempt
+     * @param hedge whether the copy is a hedge
+     * @param httpResponse the HTTP response, if there is one, without its
+     * items
+     * @param items the items of the response
+     * @param decodeError the reason that the body of the response could not be
+     * decoded, if any
+     * @param e the reason that there is no HTTP response, if any
      */
-    private static String getXRapidAPIKey() {
-        LOGGER.log(Level.INFO, "Getting API key for Netflix library...");
-        String key = null;
+    private void handleAttempt(Attempt attempt, boolean hedge, HttpResponse<JSONObject> httpResponse, JSONArray items,
+            JSONException decodeError, Throwable e) {
+        Exception failure = null;
+        boolean isTransient = false;
+        long retryAfter = -1;
+
+        if (e != null) {
+            // Timeouts and connection failures.
+            failure = toException(e);
+            isTransient = true;
+        } else if (isTransient(httpResponse.getStatus())) {
+            failure = new IOException("HTTP " + httpResponse.getStatus() + " " + httpResponse.getStatusText());
+            isTransient = true;
+            retryAfter = getRetryAfter(httpResponse.getHeaders().getFirst("Retry-After"));
+        } else if (httpResponse.getStatus() >= 400) {
+            failure = new IOException("HTTP " + httpResponse.getStatus() + " " + httpResponse.getStatusText());
+        } else if (httpResponse.getBody() == null) {
+            failure = decodeError != null ? decodeError : new IOException("Empty response");
+
+            // Cut off part way through the body.
+            isTransient = decodeError != null && decodeError.getCause() instanceof IOException;
+        }
 
-        try {
-            key = java.lang.System.getenv("X_RAPID_API_KEY");
-        } catch (NullPointerException | SecurityException e) {
-            LoggingUtil.logException(LOGGER, e, "Could not find API key from environment variables...");
-            key = requestUserAPIKey("Netflix library API could not be found or access in the environment variables. Please provide one here.",
-                    "Netflix API key not found");
-        } finally {
-            LOGGER.log(Level.CONFIG, "Provided API key for Netflix library {0}", key);
+        if (isTransient) {
+            BREAKER.recordFailure();
+        } else {
+            BREAKER.recordSuccess();
         }
 
-        return key;
+        String queryType = attempt.queryType;
+        CompletableFuture<JSONObject> result = attempt.result;
+        if (result.isDone()) {
+            LOGGER.log(Level.INFO, "Discarding the response to a cancelled, timed out or hedged query: {0}", queryType);
+            return;
+        }
+        if (failure == null) {
+            JSONObject response = httpResponse.getBody();
+            if (response.has("ITEMS")) {
+                response.put("ITEMS", items);
+            }
+            if (result.complete(response) && hedge) {
+                HEDGE_WIN_COUNT.incrementAndGet();
+                LOGGER.log(Level.INFO, "Hedge answered first: {0}", queryType);
+            }
+            return;
+        }
+
+        // Leave it to the other copy, if it may still succeed.
+        if (attempt.pending.get() > 0) {
+            LOGGER.log(Level.INFO, "A copy of {0} failed, waiting for the other: {1}", new Object[]{queryType, failure.toString()});
+            return;
+        }
+        if (!attempt.failed.compareAndSet(false, true)) {
+            return;
+        }
+
+        int retry = attempt.retry;
+        long delay = retryAfter >= 0 ? retryAfter : getRetryDelay(retry);
+        if (!isTransient || retry >= MAX_RETRIES || delay >= TimeUnit.SECONDS.toMillis(QUERY_TIMEOUT)) {
+            result.completeExceptionally(failure);
+            return;
+        }
+
+        RETRY_COUNT.incrementAndGet();
+        LOGGER.log(Level.INFO, "Retrying {0} in {1} ms ({2} of {3}) after: {4}",
+                new Object[]{queryType, delay, retry + 1, MAX_RETRIES, failure.toString()});
+        QUERY_TIMER.schedule(() -> attemptRequest(attempt.requestURL, queryType, attempt.interactivity, retry + 1, result),
+                delay, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Display a pop-up dialogue to request an API key from the user.
+     * Check whether a request that got the given HTTP status is worth
+     * retrying: if the server was overloaded, was rate limiting, or failed in
+     * some other way that may not happen again.
+     *
+     * @param status the HTTP status code
+     * @return {@code true} for {@code 429 Too Many Requests} and server errors
+     */
+    private static boolean isTransient(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * Get the delay before a retry.
      * <p>
-     * Invoked when a valid API key cannot be found or obtained from the
-     * environment variables.
+     * The delay is picked at random from zero to
+     * {@link #RETRY_BASE_DELAY_PROPERTY}, doubled for each retry before it and
+     * capped at {@link #RETRY_MAX_DELAY_PROPERTY}, so that instances that
+     * failed at the same time do not all retry at the same time.
      *
-     * @param message the message displayed to the user
-     * @param title the dialogue box title
-     * @return the API key provided by the user
+     * @param retry the number of retries before this one
+     * @return the delay, in milliseconds
      */
-    private static String requestUserAPIKey(String message, String title) {
-        LOGGER.log(Level.FINE, "Requesting API key from user...");
-        String key = null;
+    private static long getRetryDelay(int retry) {
+        long cap = Math.min(RETRY_MAX_DELAY, (long) RETRY_BASE_DELAY << Math.min(retry, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
 
-        while (key == null || key.isEmpty()) {
-            LOGGER.log(Level.FINER, "Creating input dialog for user to input API key");
-            key = JOptionPane.showInputDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+    /**
+     * Read the delay that the server asked for in a {@code Retry-After}
+     * header.
+     *
+     * @param retryAfter the value of the header, either a number of seconds or
+     * an HTTP date
+     * @return the delay, in milliseconds, or {@code -1} if there is none
+     */
+    private static long getRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
 
-            if (key != null) {
-                LOGGER.log(Level.FINER, "Stripping whitespaces from input");
-                key = key.replaceAll("\\s+", "");
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ex) {
+                LOGGER.log(Level.WARNING, "Could not read Retry-After: {0}", retryAfter);
+                return -1;
             }
         }
+    }
 
-        return key;
+    /**
+     * Get the reason that a request fails while the {@link CircuitBreaker} is
+     * open.
+     *
+     * @return the reason
+     */
+    private static IOException getBreakerException() {
+        return new IOException("The uNoGS API is unavailable; not sending requests for another "
+                + BREAKER.getSecondsUntilTrial() + " seconds");
     }
 
     /**
-     * Set the Netflix region to be used for querying titles.
+     * Fall back to an expired saved response for a query that could not be
+     * sent or answered, or tell the user why there is none.
      *
-     * @param region the region selected by user from
-     * {@link HomeGUI#getSelectedRegion()}
+     * @param e the reason that the query failed
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactive whether to show the user an error message if there is
+     * no saved response
+     * @return the saved data, or {@code null} if there is none
+     * @throws CompletionException if the query timed out, and there is no
+     * saved response
+     * @throws CancellationException if the query was cancelled
      */
-    public void setQueryRegion(String region) {
-        LOGGER.log(Level.INFO, "Setting query region to {0}", region);
-        this.queryRegion = region;
+    private JSONArray recover(Throwable e, String queryType, TitlesQuery titlesQuery, boolean interactive) {
+        Exception cause = toException(e);
+        if (cause instanceof CancellationException) {
+            throw (CancellationException) cause;
+        }
+
+        JSONArray expired = localLibrary.getExpiredResponse(queryType, titlesQuery);
+        if (expired != null) {
+            LOGGER.log(Level.WARNING, "Using an expired response for {0}, as the query failed: {1}",
+                    new Object[]{queryType, cause.toString()});
+            return expired;
+        }
+
+        if (cause instanceof TimeoutException) {
+            throw new CompletionException(cause);
+        } else if (cause instanceof RejectedExecutionException) {
+            reportRejection(cause, interactive);
+        } else {
+            reportConnectionFailure(cause, interactive);
+        }
+        return null;
     }
 
     /**
-     * Set the genre(s) to be used for querying titles.
+     * Get the priority that a request is scheduled with.
      *
-     * @param genres the genres selected by user from
-     * {@link HomeGUI#getSelectedGenres()}
+     * @param interactive whether the request is made on behalf of the user
+     * @return the priority of the request
      */
-    public void setQueryGenres(ArrayList<String> genres) {
-        LOGGER.log(Level.INFO, "Setting query genres to {0}", genres.toString());
-        this.queryGenres = genres;
+    private static RequestScheduler.Priority getPriority(boolean interactive) {
+        return interactive ? RequestScheduler.Priority.INTERACTIVE : RequestScheduler.Priority.BACKGROUND;
     }
 
     /**
-     * Set the title type to be used for querying titles.
+     * Log that the {@link RequestScheduler} did not allow a request to be
+     * sent, and tell the user if the request was made on their behalf.
      *
-     * @param titleType the type selected by user from
-     * {@link HomeGUI#getSelectedTitleType()}
+     * @param e the reason
+     * @param interactive whether to show the user an error message
      */
-    public void setQueryTitleType(String titleType) {
-        LOGGER.log(Level.INFO, "Setting query title type to {0}", titleType);
-        this.queryTitleType = titleType;
+    private static void reportRejection(Exception e, boolean interactive) {
+        LOGGER.log(Level.INFO, "Query not sent: {0}", e.getMessage());
+        if (interactive) {
+            showErrorMessage("You have reached the limit of requests to the Netflix library for today.\n"
+                    + "Titles you have already rolled can still be found; please try again tomorrow for others.",
+                    "Request limit reached", e);
+        }
     }
 
     /**
-     * Set the minimum rating value to be used for querying titles.
+     * Fail a future with a {@link TimeoutException} if it has not completed
+     * within {@link #QUERY_TIMEOUT} seconds.
      *
-     * @param minimumRating the minimum rating selected by user from
-     * {@link HomeGUI#getSelectedMinimumRatingValue()}
+     * @param <T> the type of the result
+     * @param future the future to time out
+     * @param queryType the query type, for the message of the exception
+     * @return the same future
      */
-    public void setQueryMinimumRating(String minimumRating) {
-        LOGGER.log(Level.INFO, "Setting minimum rating to {0}", minimumRating);
-        this.queryMinimumRating = minimumRating;
+    private static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, String queryType) {
+        ScheduledFuture<?> timeout = QUERY_TIMER.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException(queryType + " timed out after " + QUERY_TIMEOUT + " seconds"))) {
+                LOGGER.log(Level.WARNING, "Query timed out: {0}", queryType);
+            }
+        }, QUERY_TIMEOUT, TimeUnit.SECONDS);
+
+        future.whenComplete((value, e) -> timeout.cancel(false));
+        return future;
     }
 
     /**
-     * Set the maximum rating value to be used for querying titles.
+     * Complete one future with the outcome of another, and cancel the other
+     * if the first is completed some other way, e.g., by being cancelled.
      *
-     * @param maximumRating the maximum rating selected by user from
-     * {@link HomeGUI#getSelectedMaximumRatingValue()}
+     * @param <T> the type of the result
+     * @param from the future whose outcome to pass on
+     * @param to the future to complete
      */
-    public void setQueryMaximumRating(String maximumRating) {
-        LOGGER.log(Level.INFO, "Setting maximum rating to {0}", maximumRating);
-        this.queryMaximumRating = maximumRating;
+    private static <T> void forward(CompletableFuture<T> from, CompletableFuture<T> to) {
+        from.whenComplete((value, e) -> {
+            if (e == null) {
+                to.complete(value);
+            } else {
+                to.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+        to.whenComplete((value, e) -> from.cancel(true));
     }
 
     /**
-     * Fetch a list of Netflix titles.
+     * Wrap a {@link Throwable} as an {@link Exception}, unwrapping a
+     * {@link CompletionException} first.
      *
-     * @return a {@link JSONArray} of available titles
+     * @param e the throwable
+     * @return the throwable as an {@link Exception}
      */
-    public JSONArray fetchTitles() {
-        LOGGER.log(Level.INFO, "Fetching Netflix titles available in: {0}", queryRegion);
-        setTitlesQueryString();
-        return fetchData("fetchTitles");
+    private static Exception toException(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof Exception ? (Exception) e : new ExecutionException(e);
     }
 
     /**
-     * Fetch a list of genres.
+     * Log that the uNoGS API could not be contacted, and tell the user if the
+     * request was made on their behalf.
      *
-     * @return a {@link JSONArray} of available genres
+     * @param e the reason, if known
+     * @param interactive whether to show the user an error message
      */
-    private JSONArray fetchGenres() {
-        LOGGER.log(Level.INFO, "Fetching list of genres...");
-        return fetchData("fetchGenres");
+    private static void reportConnectionFailure(Exception e, boolean interactive) {
+        LoggingUtil.logException(LOGGER, e, "There was a problem contacting the Netflix library.");
+        if (interactive) {
+            showErrorMessage("There was a problem contacting the Netflix library. Please try again.",
+                    "Connection failed", e);
+        }
     }
 
     /**
-     * Fetch a list of Netflix regions.
+     * Bring up a dialog that displays an error message, on the event dispatch
+     * thread.
+     * <p>
+     * If called from any other thread, the dialog is queued to be shown, so
+     * that the caller, which may be handling a response, is not blocked
+     * until the user dismisses it.
      *
-     * @return a {@link JSONArray} of available regions
+     * @param message the message to display
+     * @param title the title string for the dialog
+     * @param e the Exception message to display
      */
-    private JSONArray fetchRegions() {
-        LOGGER.log(Level.INFO, "Fetching list of available regions...");
-        return fetchData("fetchAvailableRegions");
+    private static void showErrorMessage(String message, String title, Exception e) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            HomeGUI.displayErrorMessage(message, title, e);
+        } else {
+            SwingUtilities.invokeLater(() -> HomeGUI.displayErrorMessage(message, title, e));
+        }
     }
 
     /**
-     * Fetch the data for the given {@code queryType}.
+     * Verify, extract and save a response from the uNoGS API.
      * <p>
-     * The method will fetch the data for the given {@code queryType} by looking
-     * for responses saved in the local machine first. If that is not available,
-     * then it will send a request to the uNoGS API to obtain the data.
+     * A title response is saved as complete only if its results fit in the
+     * one page that was requested.
      *
+     * @param response the response, or {@code null} if the request failed
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
-     * @return a {@link JSONArray} of the requested data
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param interactive whether to show the user an error message if the
+     * response cannot be used
+     * @return a {@link JSONArray} of the requested data if the response was
+     * successfully validated and extracted; {@code null} otherwise
      */
-    private JSONArray fetchData(String queryType) {
-        LOGGER.log(Level.INFO, "Fetching data for queryType: {0}", queryType);
-
-        // Look for saved responses first.
-        JSONArray data = localLibrary.getSavedResponse(queryType, titlesQueryString);
+    private JSONArray processResponse(JSONObject response, String queryType, TitlesQuery titlesQuery, boolean interactive) {
+        JSONArray responseContent = readResponse(response, queryType, interactive);
 
-        if (data == null) {
-            LOGGER.log(Level.INFO, "Can't find a valid response to use... sending a query to uNoGS API instead...");
-            data = sendQuery(queryType);
+        // If it is valid, save the response.
+        if (responseContent != null) {
+            localLibrary.saveResponse(responseContent, queryType, titlesQuery,
+                    getPageCount(response, responseContent) == 1);
         }
 
-        return data;
+        return responseContent;
     }
 
     /**
-     * Send a GET request to the uNOGS API server.
-     * <p>
-     * Will only be invoked if there is no responses saved or if the saved
-     * responses are out-of-date or not valid.
-     * <p>
-     * When invoked, it will also attempt to:
-     * <ul>
-     * <li>verify whether the response is valid;</li>
-     * <li>extract the response into a suitable format;</li>
-     * <li><b>write the response to file</b>, so that it can be used later.</li>
-     * </ul>
+     * Verify and extract a response from the uNoGS API, without saving it.
      *
+     * @param response the response, or {@code null} if the request failed
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
+     * @param interactive whether to show the user an error message if the
+     * response cannot be used
      * @return a {@link JSONArray} of the requested data if the response was
      * successfully validated and extracted; {@code null} otherwise
      */
-    public JSONArray sendQuery(String queryType) {
-        LOGGER.log(Level.INFO, "Sending query to uNoGS API server: {0}", queryType);
-        String requestURL = getEndpoint(queryType);
-        JSONObject response = null;
+    private JSONArray readResponse(JSONObject response, String queryType, boolean interactive) {
         JSONArray responseContent = null;
-
-        // Send the query.
-        try {
-            LOGGER.log(Level.FINE, "Sending query at: {0}", requestURL);
-            response = Unirest.get(requestURL)
-                    .header("X-RapidAPI-Host", "unogs-unogs-v1.p.rapidapi.com")
-                    .header("X-RapidAPI-Key", this.X_RAPID_API_KEY)
-                    .asJson()
-                    .getBody()
-                    .getObject();
-        } catch (Exception e) {
-            LoggingUtil.logException(LOGGER, e, "There was a problem contacting the Netflix library.");
-            HomeGUI.displayErrorMessage("There was a problem contacting the Netflix library. Please try again.",
-                    "Connection failed", e);
+        if (response == null) {
+            return null;
         }
 
         try {
             // Verify that response is valid.
             responseContent = verifyResponse(response);
 
-            // If it is, extract it and save the response.
+            // If it is, extract it.
             if (responseContent != null) {
                 responseContent = extractResponse(responseContent, queryType);
-                localLibrary.saveResponse(responseContent, queryType, titlesQueryString);
             }
 
         } catch (NegativeArraySizeException e) {
             LOGGER.log(Level.WARNING, "No matching titles", e);
-            HomeGUI.displayErrorMessage("We found no matching Netflix titles!\n"
-                    + "Perhaps try again with different filters?",
-                    "No matching titles", e);
+            if (interactive) {
+                showErrorMessage("We found no matching Netflix titles!\n"
+                        + "Perhaps try again with different filters?",
+                        "No matching titles", e);
+            }
 
         } catch (NoSuchFieldException e) {
             LOGGER.log(Level.SEVERE, "PARSING ERROR -- CHECK API DOC FOR UPDATED FORMAT", e);
-            HomeGUI.displayErrorMessage("It looks like this program needs to be updated.\n"
-                    + "We are unable to read the response from the Netflix catalogue. :(",
-                    "Uh oh!", e);
+            if (interactive) {
+                showErrorMessage("It looks like this program needs to be updated.\n"
+                        + "We are unable to read the response from the Netflix catalogue. :(",
+                        "Uh oh!", e);
+            }
         }
 
         return responseContent;
@@ -543,7 +2530,7 @@ public class NetflixLibrary {
         String regionID;
 
         if (queryRegion.equals("All regions")) {
-            regionID = "all";
+            regionID = TitlesQuery.ALL_REGIONS;
         } else {
             regionID = availableRegions.getJSONObject(0).getString(queryRegion);
         }
@@ -558,7 +2545,8 @@ public class NetflixLibrary {
      *
      * @return the numeric IDs of the specified genres,
      * {@link NetflixLibrary#queryGenres queryGenres}, to be used in the query
-     * string; the IDs for the genres are a comma-separated string
+     * string; in no particular order, and possibly repeated where genres
+     * overlap
      * @see
      * <a href="https://rapidapi.com/unogs/api/unogs?endpoint=5676f219e4b04efee9356e43">https://rapidapi.com/unogs/api/unogs?endpoint=5676f219e4b04efee9356e43</a>
      * for more info about genre IDs
@@ -566,36 +2554,36 @@ public class NetflixLibrary {
      * {@link #extractSupercategoryGenres(org.json.JSONArray)} on how genres are
      * extracted and handled in this application
      */
-    private String getGenreIDs() {
+    private List<Integer> getGenreIDs() {
         JSONObject idReference = availableGenres.getJSONObject(0);
 
         if (queryGenres.size() == idReference.length()) {
             // All genre has a special ID of "0" -- instead of adding
             // the IDs of every genres to the query string
             LOGGER.log(Level.FINE, "All genres selected");
-            return "0";
+            return Collections.singletonList(TitlesQuery.ALL_GENRES);
         } else {
             LOGGER.log(Level.FINE, "Getting genre IDs for: {0}", queryGenres.toString());
-            ArrayList<String> genreIDs = new ArrayList<>();
+            ArrayList<Integer> genreIDs = new ArrayList<>();
 
-            // Lookup IDs for the genre and concat.
+            // Lookup IDs for the genre.
             queryGenres.forEach((genre) -> {
-                String ids = idReference.getJSONArray(genre).join(",");
-                genreIDs.add(ids);
-                LOGGER.log(Level.FINEST, "Genre IDs for {0} are {1}", new Object[]{genre, ids});
+                JSONArray ids = idReference.getJSONArray(genre);
+                for (int i = 0; i < ids.length(); i++) {
+                    genreIDs.add(ids.getInt(i));
+                }
+                LOGGER.log(Level.FINEST, "Genre IDs for {0} are {1}", new Object[]{genre, ids.join(",")});
             });
 
-            // Concat the IDs from all selected genres into a longer string.
-            String q = String.join(",", genreIDs);
             LOGGER.log(Level.FINE, "Genre IDs for {0} are {1}",
-                    new Object[]{queryGenres.toString(), q});
-            return q;
+                    new Object[]{queryGenres.toString(), genreIDs});
+            return genreIDs;
         }
 
     }
 
     /**
-     * Construct and set a query string to use for requesting titles.
+     * Construct and set a query to use for requesting titles.
      * <p>
      * Because the way parameters are passed with this API is just so f*cking
      * abhorrent, the query string just look absolutely disgusting and
@@ -653,13 +2641,17 @@ public class NetflixLibrary {
      * point accuracy (tenths)</li>
      * </ul></li>
      * </ul>
+     * <p>
+     * The query is kept as a {@link TitlesQuery}, which puts the genre IDs
+     * and ratings in canonical form, so that the same filters always make the
+     * same query string.
      *
      * @see
      * <a href="https://rapidapi.com/unogs/api/unogs?endpoint=5690bcdee4b0e203818a6518">
      * https://rapidapi.com/unogs/api/unogs?endpoint=5690bcdee4b0e203818a6518</a>
      * for this endpoint's documentation
      */
-    private void setTitlesQueryString() {
+    private void setTitlesQuery() {
         LOGGER.log(Level.INFO, "Creating a query string to look for titles that matches the following parameters:\n"
                 + "Netflix region: {0}\n"
                 + "Genres: {1}\n"
@@ -668,12 +2660,11 @@ public class NetflixLibrary {
                 + "Maximum rating: {4}",
                 new Object[]{queryRegion, queryGenres.toString(), queryTitleType, queryMinimumRating, queryMaximumRating});
 
-        String genreIDs = getGenreIDs();
+        List<Integer> genreIDs = getGenreIDs();
         String regionID = getRegionID();
 
         // Note that only the genre and regions are needed to be turned into IDs
-        titlesQueryString = ("q=-!0%2C3000-!0%2C10-!" + queryMinimumRating + "%2C" + queryMaximumRating + "-!"
-                + genreIDs + "-!" + queryTitleType + "-!" + "Any-!Any-!-!&t=ns&cl=" + regionID + "&st=adv&ob=Relevance&p=1&sa=or");
+        titlesQuery = new TitlesQuery(regionID, genreIDs, queryTitleType, queryMinimumRating, queryMaximumRating);
 
     }
 
@@ -682,15 +2673,17 @@ public class NetflixLibrary {
      *
      * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
      * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
      * @return The endpoint URL
      */
-    private String getEndpoint(String queryType) {
+    private static String getEndpoint(String queryType, TitlesQuery titlesQuery) {
         LOGGER.log(Level.FINE, "Getting endpoint URL for query type \"{0}\"", queryType);
         String requestURL;
 
         switch (queryType) {
             case "fetchTitles":
-                requestURL = "https://unogs-unogs-v1.p.rapidapi.com/aaapi.cgi?" + titlesQueryString;
+                requestURL = getPageEndpoint(titlesQuery, 1);
                 break;
             case "fetchGenres":
                 requestURL = "https://unogs-unogs-v1.p.rapidapi.com/api.cgi?t=genres";
@@ -709,10 +2702,11 @@ public class NetflixLibrary {
     /**
      * Select a random title from a {@link JSONArray} of titles.
      *
-     * @param titles a {@link JSONArray} of titles
-     * @return the selected title as a {@link JSONObject}
+     * @param titles a {@link JSONArray} of {@link Title} objects, as returned
+     * by {@link #fetchTitlesAsync()}
+     * @return the selected title
      */
-    public static JSONObject selectRandomTitle(JSONArray titles) {
+    public static Title selectRandomTitle(JSONArray titles) {
         LOGGER.log(Level.FINE, "Selecting a random title from list of titles");
 
         // Select a random title from the list of titles.
@@ -723,7 +2717,7 @@ public class NetflixLibrary {
         LOGGER.log(Level.FINE, "Chosen title #{0} from a list of {1} titles",
                 new Object[]{randomIndex, respLength});
 
-        JSONObject selectedTitle = titles.getJSONObject(randomIndex);
+        Title selectedTitle = (Title) titles.get(randomIndex);
 
         return selectedTitle;
     }
@@ -0,0 +1,705 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules requests to the uNoGS API within the limits of the RapidAPI plan.
+ * <p>
+ * The plan allows a number of requests per second, and a number of requests
+ * per day. Requests beyond either limit are rejected by the server, so rather
+ * than sending them whenever they are made, each request first waits for a
+ * permit from the scheduler:
+ * <ul>
+ * <li>permits are handed out by a token bucket that refills at
+ * {@value #RATE_PROPERTY} permits per second, up to
+ * {@value #BURST_PROPERTY};</li>
+ * <li>requests waiting for a permit are queued by {@link Priority}, so that a
+ * roll made by the user goes ahead of background work;</li>
+ * <li>every request sent counts towards {@value #DAILY_QUOTA_PROPERTY}, which
+ * is saved to {@value #QUOTA_FILENAME} in the library folder, so that it
+ * survives restarts and is shared by every instance of the application that
+ * uses the folder.</li>
+ * </ul>
+ * <p>
+ * A permit is only counted once its request is sent. Until then, it is held
+ * back from the requests left for the day, so that no more permits are handed
+ * out than the quota allows, and given back if the request is not sent after
+ * all, e.g., because it was cancelled while waiting.
+ * <p>
+ * Background requests are dropped, rather than queued, once there are
+ * {@value #QUEUE_SIZE_PROPERTY} of them waiting, or once the requests left for
+ * the day fall to {@value #QUOTA_RESERVE_PROPERTY}, which are kept for the
+ * user. Once the daily quota is used up, every request is rejected until the
+ * next day, in UTC.
+ *
+ * @author mosguinz
+ */
+class RequestScheduler {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(RequestScheduler.class.getName());
+
+    /**
+     * The system property used to set how many requests may be sent per
+     * second.
+     */
+    static final String RATE_PROPERTY = "netflixRoulette.scheduler.rate";
+
+    /**
+     * The system property used to set how many requests may be sent at once
+     * after a quiet period.
+     */
+    static final String BURST_PROPERTY = "netflixRoulette.scheduler.burst";
+
+    /**
+     * The system property used to set how many requests may be sent per day;
+     * {@code 0} for no limit.
+     */
+    static final String DAILY_QUOTA_PROPERTY = "netflixRoulette.scheduler.dailyQuota";
+
+    /**
+     * The system property used to set how many of the requests left for the
+     * day are kept for requests made by the user.
+     */
+    static final String QUOTA_RESERVE_PROPERTY = "netflixRoulette.scheduler.quotaReserve";
+
+    /**
+     * The system property used to set how many background requests can be
+     * queued.
+     */
+    static final String QUEUE_SIZE_PROPERTY = "netflixRoulette.scheduler.queueSize";
+
+    /**
+     * The default number of requests that may be sent per second.
+     */
+    static final int DEFAULT_RATE = 5;
+
+    /**
+     * The default number of requests that may be sent per day, as allowed by
+     * the basic plan.
+     */
+    static final int DEFAULT_DAILY_QUOTA = 100;
+
+    /**
+     * The default number of background requests that can be queued.
+     */
+    static final int DEFAULT_QUEUE_SIZE = 16;
+
+    /**
+     * The name of the file in the library folder that the daily quota is
+     * saved to.
+     */
+    static final String QUOTA_FILENAME = "quota.properties";
+
+    /**
+     * The priority of a request.
+     */
+    enum Priority {
+
+        /**
+         * A request made on behalf of the user, who is waiting for it.
+         */
+        INTERACTIVE,
+        /**
+         * A request made in the background, e.g., to refresh a saved response.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * A permit to send one request.
+     * <p>
+     * Exactly one of {@link #use()} and {@link #release()} must be called for
+     * each permit; any later calls are ignored.
+     */
+    final class Permit {
+
+        /**
+         * Whether the permit has been used or released.
+         */
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        /**
+         * Count the permit towards the daily quota, as its request is being
+         * sent.
+         */
+        void use() {
+            if (settled.compareAndSet(false, true)) {
+                charge();
+            }
+        }
+
+        /**
+         * Give the permit back, as its request is not going to be sent.
+         */
+        void release() {
+            if (settled.compareAndSet(false, true)) {
+                unreserve();
+            }
+        }
+    }
+
+    /**
+     * A request waiting for a permit.
+     */
+    private static class Ticket {
+
+        /**
+         * The priority of the request, which only changes while the request is
+         * out of the queue; guarded by the scheduler.
+         */
+        Priority priority;
+
+        /**
+         * The order that the request was made in, among requests of the same
+         * priority.
+         */
+        final long sequence;
+
+        /**
+         * Completed once the request may be sent.
+         */
+        final CompletableFuture<Permit> permit = new CompletableFuture<>();
+
+        Ticket(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The file that the daily quota is saved to.
+     */
+    private final File quotaFile;
+
+    /**
+     * Coordinates updates to {@link #quotaFile} with other instances of the
+     * application.
+     */
+    private final LibraryLock lock;
+
+    /**
+     * How many permits the bucket gains per second.
+     */
+    private final int rate;
+
+    /**
+     * How many permits the bucket can hold.
+     */
+    private final int burst;
+
+    /**
+     * How many requests may be sent per day, or {@code 0} for no limit.
+     */
+    private final int dailyQuota;
+
+    /**
+     * How many of the requests left for the day are kept for requests made by
+     * the user.
+     */
+    private final int quotaReserve;
+
+    /**
+     * How many background requests can be queued.
+     */
+    private final int queueSize;
+
+    /**
+     * Runs {@link #dispatch()} once the bucket has refilled.
+     */
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "request-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The requests waiting for a permit, highest priority first, then oldest
+     * first.
+     */
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(Comparator
+            .comparing((Ticket t) -> t.priority)
+            .thenComparingLong((t) -> t.sequence));
+
+    /**
+     * The number of background requests waiting for a permit.
+     */
+    private int queuedBackground;
+
+    /**
+     * The sequence number of the last request made.
+     */
+    private long sequence;
+
+    /**
+     * The permits in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * When the bucket was last refilled, from {@link System#nanoTime()}.
+     */
+    private long refilledAt;
+
+    /**
+     * Whether {@link #dispatch()} is scheduled to run.
+     */
+    private boolean dispatchScheduled;
+
+    /**
+     * The day that the quota counts requests for, in UTC.
+     */
+    private LocalDate quotaDate;
+
+    /**
+     * The number of requests sent on {@link #quotaDate}, as last read from or
+     * written to {@link #quotaFile}.
+     */
+    private int savedUsed;
+
+    /**
+     * The number of requests sent by this instance on {@link #quotaDate} that
+     * have not been added to {@link #quotaFile} yet.
+     */
+    private int unsavedUsed;
+
+    /**
+     * The number of permits handed out whose requests have not been sent or
+     * given back yet.
+     */
+    private int reserved;
+
+    /**
+     * Whether {@link #saveQuota()} is scheduled to run.
+     */
+    private boolean saveScheduled;
+
+    /**
+     * When {@link #quotaFile} was last read or written by this instance.
+     */
+    private long quotaFileModified;
+
+    /**
+     * The number of background requests dropped.
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Set up a scheduler that saves the daily quota to the given directory,
+     * configured by the system properties {@value #RATE_PROPERTY},
+     * {@value #BURST_PROPERTY}, {@value #DAILY_QUOTA_PROPERTY},
+     * {@value #QUOTA_RESERVE_PROPERTY} and {@value #QUEUE_SIZE_PROPERTY}.
+     *
+     * @param directory the library folder
+     */
+    RequestScheduler(File directory) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.quotaFile = new File(directory, QUOTA_FILENAME);
+        this.lock = LibraryLock.of(directory);
+        this.rate = Math.max(1, Integer.getInteger(RATE_PROPERTY, DEFAULT_RATE));
+        this.burst = Math.max(1, Integer.getInteger(BURST_PROPERTY, rate));
+        this.dailyQuota = Math.max(0, Integer.getInteger(DAILY_QUOTA_PROPERTY, DEFAULT_DAILY_QUOTA));
+        this.quotaReserve = Math.max(0, Integer.getInteger(QUOTA_RESERVE_PROPERTY, dailyQuota / 10));
+        this.queueSize = Math.max(0, Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+
+        synchronized (this) {
+            readQuota(false);
+            LOGGER.log(Level.CONFIG, "Request rate: {0}/s, burst {1}; daily quota: {2}, {3} reserved, {4} used",
+                    new Object[]{rate, burst, dailyQuota, quotaReserve, getUsed()});
+        }
+    }
+
+    /**
+     * Wait for a permit to send a request.
+     * <p>
+     * The returned future completes with a {@link Permit} once the request may
+     * be sent, which must then be used or released. It fails with a
+     * {@link RejectedExecutionException} if the request must not be sent at
+     * all: if the daily quota has been used up, or if a background request is
+     * dropped. Cancelling it gives up the request's place in the queue.
+     *
+     * @param priority the priority of the request
+     * @return a {@link CompletableFuture} of the permit to send the request
+     */
+    CompletableFuture<Permit> acquire(Priority priority) {
+        Ticket ticket;
+        synchronized (this) {
+            readQuota(false);
+            String rejection = getRejection(priority);
+            if (rejection == null && priority == Priority.BACKGROUND && queuedBackground >= queueSize) {
+                rejection = "Too many background requests are waiting";
+            }
+            if (rejection != null) {
+                return reject(priority, rejection);
+            }
+
+            ticket = new Ticket(priority, ++sequence);
+            queue.add(ticket);
+            if (priority == Priority.BACKGROUND) {
+                queuedBackground++;
+            }
+        }
+
+        ticket.permit.whenComplete((v, e) -> {
+            if (ticket.permit.isCancelled()) {
+                synchronized (this) {
+                    if (queue.remove(ticket) && ticket.priority == Priority.BACKGROUND) {
+                        queuedBackground--;
+                    }
+                }
+            }
+        });
+        dispatch();
+        return ticket.permit;
+    }
+
+    /**
+     * Move a request that is waiting for a permit up to
+     * {@link Priority#INTERACTIVE}, e.g., as the user has come to wait for
+     * it. It keeps its place among the interactive requests by when it was
+     * made, and is no longer dropped as a background request.
+     * <p>
+     * Does nothing if the request is not waiting, or is interactive already.
+     *
+     * @param permit the future returned by {@link #acquire} for the request
+     */
+    synchronized void promote(CompletableFuture<Permit> permit) {
+        for (Ticket ticket : queue) {
+            if (ticket.permit == permit) {
+                if (ticket.priority == Priority.BACKGROUND) {
+                    queue.remove(ticket);
+                    queuedBackground--;
+                    ticket.priority = Priority.INTERACTIVE;
+                    queue.add(ticket);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand out permits to the queued requests while there are any in the
+     * bucket, and schedule another run once it has refilled if there are
+     * requests left.
+     * <p>
+     * The permits are completed outside the lock, as completing them runs the
+     * requests' callbacks. A permit for a request that has been cancelled in
+     * the meantime is given back straight away.
+     */
+    private void dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        List<Ticket> rejected = new ArrayList<>();
+        List<String> rejections = new ArrayList<>();
+
+        synchronized (this) {
+            dispatchScheduled = false;
+            refill();
+            readQuota(false);
+
+            while (!queue.isEmpty() && tokens >= 1) {
+                Ticket ticket = queue.poll();
+                if (ticket.priority == Priority.BACKGROUND) {
+                    queuedBackground--;
+                }
+                if (ticket.permit.isDone()) {
+                    continue;
+                }
+
+                String rejection = getRejection(ticket.priority);
+                if (rejection != null) {
+                    rejected.add(ticket);
+                    rejections.add(rejection);
+                    continue;
+                }
+
+                tokens--;
+                reserved++;
+                granted.add(ticket);
+            }
+
+            if (!queue.isEmpty() && !dispatchScheduled) {
+                long delay = (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toMicros(1) / rate);
+                dispatcher.schedule(this::dispatch, Math.max(1, delay), TimeUnit.MICROSECONDS);
+                dispatchScheduled = true;
+            }
+        }
+
+        for (int i = 0; i < rejected.size(); i++) {
+            Ticket ticket = rejected.get(i);
+            fail(ticket.permit, ticket.priority, rejections.get(i));
+        }
+        for (Ticket ticket : granted) {
+            Permit permit = new Permit();
+            if (!ticket.permit.complete(permit)) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Count a permit towards the daily quota, and save it in the background.
+     */
+    private void charge() {
+        synchronized (this) {
+            reserved--;
+            readQuota(false);
+            unsavedUsed++;
+            if (saveScheduled) {
+                return;
+            }
+            saveScheduled = true;
+        }
+
+        dispatcher.execute(this::saveQuota);
+    }
+
+    /**
+     * Give back a permit whose request was not sent.
+     */
+    private synchronized void unreserve() {
+        reserved--;
+    }
+
+    /**
+     * Get the number of requests counted towards the daily quota, including
+     * the permits whose requests have not been sent yet.
+     *
+     * @return the number of requests
+     */
+    private int getUsed() {
+        return savedUsed + unsavedUsed + reserved;
+    }
+
+    /**
+     * Add the permits gained since the bucket was last refilled.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / (double) TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+    }
+
+    /**
+     * Check whether a request of the given priority may use the daily quota.
+     *
+     * @param priority the priority of the request
+     * @return why the request must not be sent, or {@code null} if it may be
+     */
+    private String getRejection(Priority priority) {
+        if (dailyQuota == 0) {
+            return null;
+        }
+
+        int remaining = dailyQuota - getUsed();
+        if (remaining <= 0) {
+            return "The daily quota of " + dailyQuota + " requests has been used up";
+        }
+        if (priority == Priority.BACKGROUND && remaining <= quotaReserve) {
+            return "Only " + remaining + " requests are left for today, which are kept for the user";
+        }
+        return null;
+    }
+
+    /**
+     * Get a future that has failed for the given reason.
+     *
+     * @param priority the priority of the request
+     * @param reason why the request must not be sent
+     * @return the failed future
+     */
+    private CompletableFuture<Permit> reject(Priority priority, String reason) {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        fail(permit, priority, reason);
+        return permit;
+    }
+
+    /**
+     * Fail a permit for the given reason.
+     *
+     * @param permit the permit
+     * @param priority the priority of the request
+     * @param reason why the request must not be sent
+     */
+    private void fail(CompletableFuture<Permit> permit, Priority priority, String reason) {
+        if (priority == Priority.BACKGROUND) {
+            droppedCount.incrementAndGet();
+            LOGGER.log(Level.INFO, "Dropping background request: {0}", reason);
+        } else {
+            LOGGER.log(Level.WARNING, "Rejecting request: {0}", reason);
+        }
+        permit.completeExceptionally(new RejectedExecutionException(reason));
+    }
+
+    /**
+     * Start counting again on a new day, and bring {@link #savedUsed} up to
+     * date with {@link #quotaFile} if another instance has changed it.
+     * <p>
+     * The file is always replaced as a whole, so it can be read without
+     * holding the {@link LibraryLock}.
+     *
+     * @param force whether to read the file even if it has not changed since
+     * it was last read or written
+     */
+    private void readQuota(boolean force) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (!today.equals(quotaDate)) {
+            LOGGER.log(Level.INFO, "Starting a new daily quota for {0}", today);
+            quotaDate = today;
+            savedUsed = 0;
+            unsavedUsed = 0;
+            force = true;
+        }
+
+        if (quotaFile.isFile() && (force || quotaFile.lastModified() != quotaFileModified)) {
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(quotaFile)) {
+                p.load(in);
+                LocalDate date = LocalDate.parse(p.getProperty("date"));
+                savedUsed = date.equals(quotaDate) ? Integer.parseInt(p.getProperty("used")) : 0;
+                quotaFileModified = quotaFile.lastModified();
+            } catch (IOException | RuntimeException e) {
+                LoggingUtil.logException(LOGGER, e, "Could not read the daily quota, starting from the count in memory");
+            }
+        }
+    }
+
+    /**
+     * Add the requests sent by this instance since the quota was last saved
+     * to {@link #quotaFile}.
+     * <p>
+     * The file is read again and written while holding the exclusive
+     * {@link LibraryLock}, so that the requests sent by other instances in
+     * the meantime are kept.
+     */
+    private void saveQuota() {
+        lock.runExclusive(() -> {
+            synchronized (this) {
+                saveScheduled = false;
+                readQuota(true);
+                if (unsavedUsed > 0 && writeQuota(savedUsed + unsavedUsed)) {
+                    savedUsed += unsavedUsed;
+                    unsavedUsed = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the number of requests sent today to {@link #quotaFile}.
+     * <p>
+     * The quota is written to a temporary file first, then moved over the
+     * quota file, so that it is never left half-written.
+     *
+     * @param used the number of requests sent today
+     * @return {@code true} if the quota was saved; {@code false} otherwise
+     */
+    private boolean writeQuota(int used) {
+        Properties p = new Properties();
+        p.setProperty("date", quotaDate.toString());
+        p.setProperty("used", String.valueOf(used));
+
+        File tmp = new File(quotaFile.getParentFile(), "." + QUOTA_FILENAME + ".tmp");
+        try {
+            quotaFile.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                p.store(out, "Requests sent to the uNoGS API today, in UTC");
+            }
+            Files.move(tmp.toPath(), quotaFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            quotaFileModified = quotaFile.lastModified();
+            return true;
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not save the daily quota");
+            return false;
+        }
+    }
+
+    /**
+     * Get the number of requests that may still be sent today.
+     *
+     * @return the number of requests left, or {@code -1} if there is no limit
+     */
+    synchronized int getRemainingQuota() {
+        if (dailyQuota == 0) {
+            return -1;
+        }
+        readQuota(false);
+        return Math.max(0, dailyQuota - getUsed());
+    }
+
+    /**
+     * Get the number of requests of the given priority that may still be sent
+     * today, i.e., without counting the requests kept for the user towards
+     * background requests.
+     *
+     * @param priority the priority of the requests
+     * @return the number of requests left, or {@code -1} if there is no limit
+     */
+    synchronized int getRemainingQuota(Priority priority) {
+        int remaining = getRemainingQuota();
+        if (remaining < 0 || priority == Priority.INTERACTIVE) {
+            return remaining;
+        }
+        return Math.max(0, remaining - quotaReserve);
+    }
+
+    /**
+     * Get the number of background requests dropped.
+     *
+     * @return the number of dropped requests
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+}
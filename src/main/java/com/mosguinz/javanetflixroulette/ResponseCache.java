@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONObject;
+
+/**
+ * A bounded, in-memory cache of parsed responses, placed in front of the
+ * responses saved in the library folder.
+ * <p>
+ * Every roll goes through {@link LocalLibrary#getSavedResponse}, which would
+ * otherwise read and parse the same file from disk each time. Responses are
+ * kept here by their query type and query string, and the least recently used
+ * response is evicted once the number of entries exceeds the budget.
+ * <p>
+ * The budget can be set with the system property {@value #MAX_ENTRIES_PROPERTY};
+ * it defaults to {@value #DEFAULT_MAX_ENTRIES} entries.
+ *
+ * @author mosguinz
+ */
+class ResponseCache {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+
+    /**
+     * The system property used to set the maximum number of cached responses.
+     */
+    static final String MAX_ENTRIES_PROPERTY = "netflixRoulette.cache.maxEntries";
+
+    /**
+     * The default maximum number of cached responses.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * The maximum number of responses to keep in memory.
+     */
+    private final int maxEntries;
+
+    /**
+     * The cached responses, in least to most recently used order.
+     */
+    private final LinkedHashMap<Object, JSONObject> entries;
+
+    /**
+     * The number of lookups that were answered from memory.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups that were not answered from memory.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Set up a cache with the budget given by the system property
+     * {@value #MAX_ENTRIES_PROPERTY}.
+     */
+    ResponseCache() {
+        this(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * Set up a cache that holds up to the given number of responses.
+     *
+     * @param maxEntries the maximum number of responses to keep in memory
+     */
+    ResponseCache(int maxEntries) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.maxEntries = Math.max(0, maxEntries);
+        this.entries = new LinkedHashMap<Object, JSONObject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, JSONObject> eldest) {
+                boolean evict = size() > ResponseCache.this.maxEntries;
+                if (evict) {
+                    LOGGER.log(Level.FINE, "Evicting least recently used response: {0}", eldest.getKey());
+                }
+                return evict;
+            }
+        };
+        LOGGER.log(Level.CONFIG, "Response cache holds up to {0} responses", this.maxEntries);
+    }
+
+    /**
+     * Create the key for the given response.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @return the key for the response; the {@link TitlesQuery} itself for
+     * titles, so that its precomputed hash is used
+     */
+    private static Object key(String queryType, TitlesQuery titlesQuery) {
+        return queryType.equals("fetchTitles") ? titlesQuery : queryType;
+    }
+
+    /**
+     * Get a cached response.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @return the response as a {@link JSONObject}, or {@code null} if it is
+     * not cached
+     */
+    synchronized JSONObject get(String queryType, TitlesQuery titlesQuery) {
+        JSONObject response = entries.get(key(queryType, titlesQuery));
+
+        if (response == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        LOGGER.log(Level.FINE, "Response cache: {0} hits, {1} misses", new Object[]{hits.get(), misses.get()});
+        return response;
+    }
+
+    /**
+     * Cache a response, replacing any response previously cached for the same
+     * query.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     * @param response the response as a {@link JSONObject}
+     */
+    synchronized void put(String queryType, TitlesQuery titlesQuery, JSONObject response) {
+        entries.put(key(queryType, titlesQuery), response);
+    }
+
+    /**
+     * Get the queries of the cached title responses, without counting as a
+     * use of them.
+     *
+     * @return the queries, most recently used first
+     */
+    synchronized List<TitlesQuery> getTitlesQueries() {
+        List<TitlesQuery> queries = new ArrayList<>();
+        entries.keySet().stream()
+                .filter((key) -> key instanceof TitlesQuery)
+                .forEach((key) -> queries.add(0, (TitlesQuery) key));
+        return queries;
+    }
+
+    /**
+     * Remove a cached response.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @param titlesQuery the query for requesting titles; only applicable for
+     * {@code fetchTitles}
+     */
+    synchronized void invalidate(String queryType, TitlesQuery titlesQuery) {
+        entries.remove(key(queryType, titlesQuery));
+    }
+
+    /**
+     * Remove every cached response.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get the number of lookups that were answered from memory.
+     *
+     * @return the number of cache hits
+     */
+    long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that were not answered from memory.
+     *
+     * @return the number of cache misses
+     */
+    long getMissCount() {
+        return misses.get();
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.Reader;
+import java.util.function.Consumer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Decodes a response from the uNoGS API as it is read, one item at a time.
+ * <p>
+ * Reading the whole body into a string before parsing it, as the HTTP client
+ * does by default, holds the body, the string, and the parsed tree in memory
+ * at the same time, which adds up for a query over every region. Instead, the
+ * body is read through a {@link JSONTokener}, and each element of
+ * {@code ITEMS} is handed to a sink as soon as it has been parsed. Other
+ * fields are kept only if they are in {@link #HEADER_FIELDS}, and skipped
+ * over without being parsed otherwise.
+ *
+ * @author mosguinz
+ */
+class ResponseDecoder {
+
+    /**
+     * The top-level fields, other than {@code ITEMS}, that are kept.
+     */
+    private static final String[] HEADER_FIELDS = {"COUNT"};
+
+    private ResponseDecoder() {
+    }
+
+    /**
+     * Decode a response.
+     *
+     * @param reader the body of the response
+     * @param itemSink called with each element of {@code ITEMS}, in order
+     * @return the fields of the response that are kept, with an empty array
+     * in place of {@code ITEMS} if it was an array, as its elements have gone
+     * to the sink
+     * @throws JSONException if the body is not a JSON object, or could not be
+     * read, in which case the cause is the {@link java.io.IOException}
+     */
+    static JSONObject decode(Reader reader, Consumer<Object> itemSink) throws JSONException {
+        JSONTokener x = new JSONTokener(reader);
+        JSONObject header = new JSONObject();
+
+        if (x.nextClean() != '{') {
+            throw x.syntaxError("A response must begin with '{'");
+        }
+        if (x.nextClean() == '}') {
+            return header;
+        }
+        x.back();
+
+        while (true) {
+            Object key = x.nextValue();
+            if (x.nextClean() != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+
+            if ("ITEMS".equals(key)) {
+                if (decodeItems(x, itemSink)) {
+                    header.put("ITEMS", new JSONArray());
+                }
+            } else if (isHeaderField(key)) {
+                header.put(key.toString(), x.nextValue());
+            } else {
+                skipValue(x);
+            }
+
+            switch (x.nextClean()) {
+                case ',':
+                    continue;
+                case '}':
+                    return header;
+                default:
+                    throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Decode the elements of {@code ITEMS}, handing each to the sink.
+     * <p>
+     * If {@code ITEMS} is not an array, e.g., because the API returned an
+     * error message in its place, it is skipped, and the response is left
+     * without it.
+     *
+     * @param x the tokener, positioned before the value of {@code ITEMS}
+     * @param itemSink called with each element
+     * @return {@code true} if {@code ITEMS} is an array
+     */
+    private static boolean decodeItems(JSONTokener x, Consumer<Object> itemSink) {
+        if (x.nextClean() != '[') {
+            x.back();
+            skipValue(x);
+            return false;
+        }
+        if (x.nextClean() == ']') {
+            return true;
+        }
+        x.back();
+
+        while (true) {
+            itemSink.accept(x.nextValue());
+            switch (x.nextClean()) {
+                case ',':
+                    continue;
+                case ']':
+                    return true;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Check whether a top-level field is kept.
+     *
+     * @param key the name of the field
+     * @return {@code true} if it is in {@link #HEADER_FIELDS}
+     */
+    private static boolean isHeaderField(Object key) {
+        for (String field : HEADER_FIELDS) {
+            if (field.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skip over a value without parsing it.
+     *
+     * @param x the tokener, positioned before the value
+     */
+    private static void skipValue(JSONTokener x) {
+        char c = x.nextClean();
+        switch (c) {
+            case '"':
+            case '\'':
+                x.nextString(c);
+                return;
+            case '{':
+            case '[':
+                int depth = 1;
+                while (depth > 0) {
+                    c = x.nextClean();
+                    if (c == '"' || c == '\'') {
+                        x.nextString(c);
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    } else if (c == 0) {
+                        throw x.syntaxError("Unterminated value");
+                    }
+                }
+                return;
+            default:
+                // Numbers, booleans and null are short.
+                x.back();
+                x.nextValue();
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent index that maps the query string of a saved {@code fetchTitles}
+ * response to the name of the file it was written to.
+ * <p>
+ * Without the index, finding a matching response requires every saved
+ * response in the library folder to be loaded and parsed just to compare its
+ * {@code Q-STRING}. The index is kept in memory and written to
+ * {@value #INDEX_FILENAME} in the library folder, so that lookups are a single
+ * map access and never parse any of the saved titles.
+ * <p>
+ * If the index file goes missing, it is rebuilt by scanning the library
+ * folder once.
+ * <p>
+ * The index file may be shared with other instances of the application. It is
+ * read again whenever another instance has changed it, and every change is
+ * made under the exclusive {@link LibraryLock}, on top of the latest copy on
+ * disk.
+ *
+ * @author mosguinz
+ */
+class ResponseIndex {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ResponseIndex.class.getName());
+
+    /**
+     * The name of the index file in the library folder.
+     */
+    static final String INDEX_FILENAME = "fetchTitles.index";
+
+    /**
+     * The directory that the index and its responses live in.
+     */
+    private final File directory;
+
+    /**
+     * The running totals of the library folder, updated as the index is
+     * written.
+     */
+    private final LibraryMetrics metrics;
+
+    /**
+     * Coordinates access to the index file with other instances.
+     */
+    private final LibraryLock lock;
+
+    /**
+     * The in-memory copy of the index, mapping query strings to filenames.
+     */
+    private final Map<String, String> entries = new HashMap<>();
+
+    /**
+     * The modification time and length of the index file when it was last
+     * read or written, used to tell whether another instance has changed it.
+     */
+    private long loadedModified, loadedLength;
+
+    /**
+     * Set up an index for the given directory.
+     *
+     * @param directory the library folder
+     * @param metrics the running totals of the library folder
+     * @param lock coordinates access to the library folder
+     */
+    ResponseIndex(File directory, LibraryMetrics metrics, LibraryLock lock) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+        this.metrics = metrics;
+        this.lock = lock;
+    }
+
+    /**
+     * Load the index from disk.
+     * <p>
+     * If the index file cannot be found or read, the index will be rebuilt
+     * from the responses present in the library folder.
+     *
+     * @param queryStringReader reads the query string of a saved response
+     * given its filename; only used if the index has to be rebuilt
+     */
+    void load(Function<String, String> queryStringReader) {
+        LOGGER.log(Level.FINE, "Loading response index...");
+
+        lock.runExclusive(() -> {
+            synchronized (this) {
+                if (!read()) {
+                    rebuild(queryStringReader);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the index file into memory.
+     *
+     * @return {@code true} if the index was read; {@code false} if it is
+     * missing or could not be read
+     */
+    private boolean read() {
+        File indexFile = new File(directory, INDEX_FILENAME);
+        entries.clear();
+
+        if (!indexFile.isFile()) {
+            return false;
+        }
+
+        Properties p = new Properties();
+        long modified = indexFile.lastModified();
+        long length = indexFile.length();
+        try (InputStream in = new FileInputStream(indexFile)) {
+            p.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not read the response index, rebuilding...");
+            return false;
+        }
+
+        p.stringPropertyNames().forEach((q) -> entries.put(q, p.getProperty(q)));
+        loadedModified = modified;
+        loadedLength = length;
+        LOGGER.log(Level.FINE, "Loaded {0} entries from the response index", entries.size());
+        return true;
+    }
+
+    /**
+     * Read the index file again if another instance has changed it since it
+     * was last read or written.
+     */
+    private void refresh() {
+        File indexFile = new File(directory, INDEX_FILENAME);
+        if (indexFile.isFile() && (indexFile.lastModified() != loadedModified || indexFile.length() != loadedLength)) {
+            LOGGER.log(Level.FINE, "Response index was changed by another instance, reloading...");
+            if (!read()) {
+                LOGGER.log(Level.WARNING, "Could not reload the response index");
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index by scanning the library folder.
+     * <p>
+     * If more than one response was saved for the same query string, the most
+     * recently written one is used.
+     *
+     * @param queryStringReader reads the query string of a saved response
+     * given its filename
+     */
+    private void rebuild(Function<String, String> queryStringReader) {
+        LOGGER.log(Level.INFO, "Rebuilding the response index from the library folder...");
+        File[] responses = directory.listFiles();
+        Map<String, Long> modified = new HashMap<>();
+
+        if (responses != null) {
+            for (File response : responses) {
+                String filename = response.getName();
+                if (!filename.startsWith("fetchTitles") || filename.equals(INDEX_FILENAME)) {
+                    continue;
+                }
+
+                String q = queryStringReader.apply(filename);
+                if (q == null) {
+                    continue;
+                }
+
+                long lastModified = response.lastModified();
+                if (lastModified >= modified.getOrDefault(q, Long.MIN_VALUE)) {
+                    modified.put(q, lastModified);
+                    entries.put(q, filename);
+                }
+            }
+        }
+
+        write();
+    }
+
+    /**
+     * Get the filename of the response saved for the given query string.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @return the filename of the saved response, or {@code null} if there is
+     * none
+     */
+    String get(String titlesQueryString) {
+        return lock.withShared(() -> {
+            synchronized (this) {
+                refresh();
+                return entries.get(titlesQueryString);
+            }
+        });
+    }
+
+    /**
+     * Get the query strings of every indexed response.
+     *
+     * @return a copy of the query strings in the index
+     */
+    Set<String> getQueryStrings() {
+        return lock.withShared(() -> {
+            synchronized (this) {
+                refresh();
+                return new HashSet<>(entries.keySet());
+            }
+        });
+    }
+
+    /**
+     * Record that the response for the given query string was saved under the
+     * given filename, and write the index to disk.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     * @param filename the name of the file that the response was saved to
+     */
+    void put(String titlesQueryString, String filename) {
+        lock.runExclusive(() -> {
+            synchronized (this) {
+                refresh();
+                entries.put(titlesQueryString, filename);
+                write();
+            }
+        });
+    }
+
+    /**
+     * Remove the entry for the given query string, and write the index to
+     * disk.
+     *
+     * @param titlesQueryString a {@link String} that is the query string for
+     * requesting titles
+     */
+    void remove(String titlesQueryString) {
+        lock.runExclusive(() -> {
+            synchronized (this) {
+                refresh();
+                if (entries.remove(titlesQueryString) != null) {
+                    write();
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove the entry that points to the given file, and write the index to
+     * disk.
+     *
+     * @param filename the name of a response file
+     */
+    void removeFile(String filename) {
+        lock.runExclusive(() -> {
+            synchronized (this) {
+                refresh();
+                if (entries.values().removeIf(filename::equals)) {
+                    write();
+                }
+            }
+        });
+    }
+
+    /**
+     * Forget every entry in the index.
+     * <p>
+     * The index file itself is left alone; it is expected to be deleted along
+     * with the rest of the library folder.
+     */
+    synchronized void clear() {
+        entries.clear();
+        loadedModified = loadedLength = 0;
+    }
+
+    /**
+     * Write the index to disk.
+     * <p>
+     * The index is written to a temporary file first, then moved over the
+     * existing index, so that a crash mid-write never leaves a truncated index
+     * behind.
+     * <p>
+     * Must be called while holding the exclusive {@link LibraryLock}.
+     */
+    private void write() {
+        LOGGER.log(Level.FINE, "Writing response index with {0} entries", entries.size());
+        Properties p = new Properties();
+        entries.forEach(p::setProperty);
+
+        File tmp = new File(directory, "." + INDEX_FILENAME + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                p.store(out, "Query string to response filename");
+            }
+            File indexFile = new File(directory, INDEX_FILENAME);
+            long previousLength = indexFile.isFile() ? indexFile.length() : -1;
+            long length = tmp.length();
+            Files.move(tmp.toPath(), indexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            metrics.recordWrite(INDEX_FILENAME, previousLength, length);
+            loadedModified = indexFile.lastModified();
+            loadedLength = length;
+        } catch (IOException e) {
+            LoggingUtil.logException(LOGGER, e, "Could not write the response index");
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import org.json.JSONObject;
+
+/**
+ * Where {@link LocalLibrary} keeps the responses it saves.
+ * <p>
+ * A response is a {@link JSONObject} with the keys {@code DATE} and
+ * {@code ITEMS}, and {@code Q-STRING} for titles, stored by its query type
+ * and, for titles, its query string. The backend is selected with the system
+ * property {@value LocalLibrary#STORE_PROPERTY}:
+ * <ul>
+ * <li>{@code file}, the default, keeps one file per response in the library
+ * folder; see {@link FileResponseStore}.</li>
+ * <li>{@code memory} keeps responses in memory only, for tests and ephemeral
+ * containers; see {@link MemoryResponseStore}.</li>
+ * <li>{@code kv} keeps every response in a single data file in the library
+ * folder; see {@link KeyValueResponseStore}.</li>
+ * </ul>
+ *
+ * @author mosguinz
+ */
+interface ResponseStore {
+
+    /**
+     * Prepare the store for use, e.g., by loading its index and starting its
+     * background work.
+     * <p>
+     * May be called more than once.
+     */
+    void open();
+
+    /**
+     * Save a response.
+     * <p>
+     * The response may be written in the background; a response that has been
+     * saved is not guaranteed to be found by {@link #load} straight away.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, or {@value TitleStore#QUERY_TYPE}
+     * @param key a {@link String} that tells apart responses of the same query
+     * type: the query string for {@code fetchTitles}, or the part for
+     * {@value TitleStore#QUERY_TYPE}; {@code null} otherwise
+     * @param response the response to save
+     * @return {@code true} if and only if the response was saved or queued to
+     * be saved; {@code false} otherwise
+     */
+    boolean save(String queryType, String key, JSONObject response);
+
+    /**
+     * Save a response in place of the saved one, merging the two.
+     * <p>
+     * {@code merge} is called with the saved response, or {@code null} if
+     * there is none, and returns the response to save. Where the store may be
+     * shared with other instances of the application, the saved response is
+     * read and replaced while holding the exclusive {@link LibraryLock}, so
+     * that no other instance can save it in between. {@code merge} must not
+     * wait for anything that another thread may hold while using the store.
+     * <p>
+     * Like {@link #save}, the update may be made in the background.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, or {@value TitleStore#QUERY_TYPE}
+     * @param key a {@link String} that tells apart responses of the same query
+     * type: the query string for {@code fetchTitles}, or the part for
+     * {@value TitleStore#QUERY_TYPE}; {@code null} otherwise
+     * @param merge merges the saved response, if any, into the one to save
+     * @return {@code true} if and only if the response was saved or queued to
+     * be saved; {@code false} otherwise
+     */
+    default boolean update(String queryType, String key, UnaryOperator<JSONObject> merge) {
+        synchronized (this) {
+            return save(queryType, key, merge.apply(load(queryType, key, (header) -> true)));
+        }
+    }
+
+    /**
+     * Load a saved response.
+     * <p>
+     * Where the store can tell from the response's {@code DATE},
+     * {@code Q-STRING}, and {@code COMPLETE} alone, i.e., without decoding its
+     * items, that the response cannot be used, it will not be loaded.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * {@code fetchAvailableRegions}, or {@value TitleStore#QUERY_TYPE}
+     * @param key a {@link String} that tells apart responses of the same query
+     * type: the query string for {@code fetchTitles}, or the part for
+     * {@value TitleStore#QUERY_TYPE}; {@code null} otherwise
+     * @param isCurrent tests the header of a saved response, which has the keys
+     * {@code DATE} and {@code Q-STRING}, and {@code COMPLETE} for titles, for
+     * whether it can be used
+     * @return the saved response, or {@code null} if there is none or it
+     * cannot be used
+     */
+    JSONObject load(String queryType, String key, Predicate<JSONObject> isCurrent);
+
+    /**
+     * Get the query strings of every saved title response.
+     *
+     * @return the query strings of the saved {@code fetchTitles} responses
+     */
+    Set<String> getTitlesQueryStrings();
+
+    /**
+     * Get the number of saved responses.
+     *
+     * @return the number of saved responses
+     */
+    long getResponseCount();
+
+    /**
+     * Get the number of saved responses of the given query type.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return the number of saved responses of the query type
+     */
+    long getResponseCount(String queryType);
+
+    /**
+     * Get the space taken up by the store, in bytes.
+     *
+     * @return the size of the store, in bytes
+     */
+    long getByteSize();
+
+    /**
+     * Get the space taken up by the responses of the given query type, in
+     * bytes.
+     *
+     * @param queryType must be either {@code fetchGenres}, {@code fetchTitles},
+     * or {@code fetchAvailableRegions}
+     * @return the size of the responses of the query type, in bytes
+     */
+    long getByteSize(String queryType);
+
+    /**
+     * Delete every saved response.
+     */
+    void clear();
+
+    /**
+     * Get the number of responses waiting to be written.
+     *
+     * @return the number of queued writes; {@code 0} if the store writes
+     * responses straight away
+     */
+    default int getWriteQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Get the average time it took to write a response.
+     *
+     * @return the average write latency in milliseconds
+     */
+    default double getAverageWriteLatency() {
+        return 0;
+    }
+
+}
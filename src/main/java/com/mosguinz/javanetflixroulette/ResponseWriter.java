@@ -0,0 +1,439 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes responses to the library folder on a background thread.
+ * <p>
+ * Saving a response means encoding it and writing it to disk, neither of
+ * which the user should have to wait for before a title is shown. Writes are
+ * queued and run one at a time; if the queue is full, or the writer has
+ * been shut down because the JVM is exiting, the caller writes the response
+ * itself rather than dropping it.
+ * <p>
+ * As that can run a write ahead of older ones still in the queue, a write
+ * that has been superseded by a newer write to the same file is skipped.
+ * <p>
+ * Each response is written to a temporary file first, then moved over the
+ * target file, so that a crash mid-write never leaves a truncated response
+ * behind. The move is made under the exclusive {@link LibraryLock}. The
+ * temporary file can optionally be synced to disk before it is moved, with
+ * the system property {@value #FSYNC_PROPERTY}.
+ * <p>
+ * Queued writes are flushed when the JVM shuts down.
+ *
+ * @author mosguinz
+ */
+class ResponseWriter {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ResponseWriter.class.getName());
+
+    /**
+     * The system property used to set the number of writes that can be
+     * queued.
+     */
+    static final String QUEUE_SIZE_PROPERTY = "netflixRoulette.writer.queueSize";
+
+    /**
+     * The system property used to sync each response to disk before it is
+     * moved into place.
+     */
+    static final String FSYNC_PROPERTY = "netflixRoulette.writer.fsync";
+
+    /**
+     * The default number of writes that can be queued.
+     * <p>
+     * Large enough for a save of the {@link TitleStore}, which can write
+     * every one of its parts at once, along with a few other responses,
+     * without the caller having to write any of them itself.
+     */
+    static final int DEFAULT_QUEUE_SIZE = TitleStore.PART_COUNT + 16;
+
+    /**
+     * How long to wait for queued writes when flushing, in seconds.
+     */
+    private static final int FLUSH_TIMEOUT = 30;
+
+    /**
+     * How old a temporary file must be before it is assumed to be left behind
+     * by a write that never finished, in minutes.
+     */
+    private static final int STALE_TEMPORARY_AGE = 60;
+
+    /**
+     * The suffix of temporary files.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The directory that responses are written to.
+     */
+    private final File directory;
+
+    /**
+     * The running totals of the library folder, updated as responses are
+     * written.
+     */
+    private final LibraryMetrics metrics;
+
+    /**
+     * Coordinates access to the library folder.
+     */
+    private final LibraryLock lock;
+
+    /**
+     * Whether responses are synced to disk before they are moved into place.
+     */
+    private final boolean fsync;
+
+    /**
+     * The executor that runs the writes.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The sequence number of the last write to be queued.
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    /**
+     * The writes to a file that are queued or in progress.
+     */
+    private static final class PendingWrites {
+
+        /**
+         * The sequence number of the newest write to the file.
+         */
+        volatile long latest;
+
+        /**
+         * The number of writes to the file that are queued or in progress.
+         */
+        int count;
+    }
+
+    /**
+     * The writes queued or in progress for each file.
+     * <p>
+     * An entry is removed once the last of its writes is done with, so that
+     * only files with a write outstanding are kept. It cannot be removed any
+     * sooner, as a newer write that the caller ran itself may finish while an
+     * older one is still in the queue.
+     */
+    private final ConcurrentMap<String, PendingWrites> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * The number of writes that are queued or in progress, including those
+     * that callers are running themselves. Guarded by the writer.
+     */
+    private int outstandingWrites;
+
+    /**
+     * The number of responses written.
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * The total time spent writing responses, in nanoseconds.
+     */
+    private final AtomicLong totalWriteNanos = new AtomicLong();
+
+    /**
+     * Set up a writer for the given directory, configured by the system
+     * properties {@value #QUEUE_SIZE_PROPERTY} and {@value #FSYNC_PROPERTY}.
+     *
+     * @param directory the library folder
+     * @param metrics the running totals of the library folder
+     * @param lock coordinates access to the library folder
+     */
+    ResponseWriter(File directory, LibraryMetrics metrics, LibraryLock lock) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.directory = directory;
+        this.metrics = metrics;
+        this.lock = lock;
+        this.fsync = Boolean.getBoolean(FSYNC_PROPERTY);
+
+        int queueSize = Math.max(1, Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                (r) -> {
+                    Thread t = new Thread(r, "response-writer");
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, e) -> r.run());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "response-writer-shutdown"));
+        LOGGER.log(Level.CONFIG, "Response writer queue size: {0}; fsync: {1}", new Object[]{queueSize, fsync});
+    }
+
+    /**
+     * Delete temporary files left behind by writes that never finished, e.g.,
+     * because the application crashed.
+     * <p>
+     * Only files older than {@value #STALE_TEMPORARY_AGE} minutes are
+     * deleted, as newer ones may belong to another instance that is still
+     * writing.
+     */
+    void deleteTemporaryFiles() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(STALE_TEMPORARY_AGE);
+        lock.runExclusive(() -> {
+            File[] files = directory.listFiles((dir, name) -> name.startsWith(".") && name.endsWith(TEMPORARY_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    if (file.lastModified() < cutoff) {
+                        LOGGER.log(Level.FINE, "Deleting unfinished write {0}", file.getName());
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue a response to be written.
+     *
+     * @param filename the name of the file to write the response to
+     * @param content encodes the response; called on the writer thread
+     * @param onWritten called on the writer thread once the response has been
+     * moved into place, while still holding the exclusive lock
+     */
+    void write(String filename, Supplier<byte[]> content, Runnable onWritten) {
+        queue(filename, content, onWritten, false);
+    }
+
+    /**
+     * Queue a response to be written, encoding it while holding the exclusive
+     * lock.
+     * <p>
+     * Used for a file that other instances of the application also update,
+     * so that the content can be merged with what is in the file without
+     * another instance replacing it in between. Once it has been encoded, the
+     * response is written even if a newer write to the file has been queued
+     * meanwhile, as that one may no longer include what this one has merged.
+     *
+     * @param filename the name of the file to write the response to
+     * @param content encodes the response; called on the writer thread, while
+     * holding the exclusive lock
+     * @param onWritten called on the writer thread once the response has been
+     * moved into place, while still holding the exclusive lock
+     */
+    void update(String filename, Supplier<byte[]> content, Runnable onWritten) {
+        queue(filename, content, onWritten, true);
+    }
+
+    /**
+     * Queue a response to be written.
+     *
+     * @param filename the name of the file to write the response to
+     * @param content encodes the response; called on the writer thread
+     * @param onWritten called on the writer thread once the response has been
+     * moved into place, while still holding the exclusive lock
+     * @param encodeUnderLock whether to hold the exclusive lock while
+     * encoding the response, as well as while moving it into place
+     */
+    private void queue(String filename, Supplier<byte[]> content, Runnable onWritten, boolean encodeUnderLock) {
+        LOGGER.log(Level.FINE, "Queueing write of {0}; {1} writes already queued",
+                new Object[]{filename, getQueueDepth()});
+
+        long sequence = writeSequence.incrementAndGet();
+        pendingWrites.compute(filename, (k, pending) -> {
+            pending = pending == null ? new PendingWrites() : pending;
+            pending.latest = Math.max(pending.latest, sequence);
+            pending.count++;
+            return pending;
+        });
+
+        synchronized (this) {
+            outstandingWrites++;
+        }
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                if (isSuperseded(filename, sequence)
+                        || !(encodeUnderLock
+                                ? lock.withExclusive(() -> writeAtomically(filename, Long.MAX_VALUE, content.get(), onWritten))
+                                : writeAtomically(filename, sequence, content.get(), onWritten))) {
+                    LOGGER.log(Level.FINE, "Skipping superseded write of {0}", filename);
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                LoggingUtil.logException(LOGGER, e, "Failed to write the response, check exception");
+                return;
+            } finally {
+                pendingWrites.computeIfPresent(filename, (k, pending) -> --pending.count == 0 ? null : pending);
+                writeDone();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            totalWriteNanos.addAndGet(elapsed);
+            writeCount.incrementAndGet();
+            LOGGER.log(Level.INFO, "Response {0} written in {1} ms", new Object[]{filename, elapsed / 1e+6});
+        });
+    }
+
+    /**
+     * Check whether a newer write to the same file has been queued.
+     *
+     * @param filename the name of the file to write to
+     * @param sequence the sequence number of the write
+     * @return {@code true} if the write is no longer the newest for the file;
+     * {@code false} otherwise
+     */
+    private boolean isSuperseded(String filename, long sequence) {
+        PendingWrites pending = pendingWrites.get(filename);
+        return pending != null && pending.latest > sequence;
+    }
+
+    /**
+     * Write the content to a temporary file, then move it over the target
+     * file, unless a newer write to the same file has been queued by then.
+     *
+     * @param filename the name of the file to write to
+     * @param sequence the sequence number of the write, or
+     * {@link Long#MAX_VALUE} for a write that must not be superseded
+     * @param content the content to write
+     * @param onWritten called once the file has been moved into place
+     * @return {@code true} if the file was moved into place; {@code false} if
+     * the write was superseded
+     * @throws IOException if the content could not be written or moved
+     */
+    private boolean writeAtomically(String filename, long sequence, byte[] content, Runnable onWritten) throws IOException {
+        Path tmp = Files.createTempFile(directory.toPath(), "." + filename + ".", TEMPORARY_SUFFIX);
+
+        try {
+            try (FileOutputStream stream = new FileOutputStream(tmp.toFile())) {
+                stream.write(content);
+                if (fsync) {
+                    stream.getChannel().force(true);
+                }
+            }
+
+            return lock.withExclusive(() -> {
+                if (isSuperseded(filename, sequence)) {
+                    return false;
+                }
+
+                File target = new File(directory, filename);
+                long previousLength = target.isFile() ? target.length() : -1;
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                metrics.recordWrite(filename, previousLength, content.length);
+                onWritten.run();
+                return true;
+            });
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Count a write as done with, waking up anyone waiting for the writes to
+     * be flushed once it is the last.
+     */
+    private synchronized void writeDone() {
+        if (--outstandingWrites == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for every queued write to finish, including the writes that other
+     * threads are running themselves because the queue was full.
+     * <p>
+     * Gives up after {@value #FLUSH_TIMEOUT} seconds, e.g., if writes keep
+     * being queued. Must not be called from a write.
+     */
+    void flush() {
+        LOGGER.log(Level.FINE, "Flushing {0} queued writes...", getQueueDepth());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FLUSH_TIMEOUT);
+        synchronized (this) {
+            try {
+                while (outstandingWrites > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        LOGGER.log(Level.WARNING, "Gave up waiting for {0} queued writes", outstandingWrites);
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Finish the queued writes and stop the writer thread.
+     */
+    private void shutdown() {
+        LOGGER.log(Level.INFO, "Flushing {0} queued writes before exiting...", getQueueDepth());
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(FLUSH_TIMEOUT, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "Gave up waiting for queued writes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the number of writes waiting in the queue.
+     *
+     * @return the number of queued writes, not counting the one in progress
+     */
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Get the average time it took to write a response.
+     *
+     * @return the average write latency in milliseconds
+     */
+    double getAverageWriteLatency() {
+        long count = writeCount.get();
+        return count == 0 ? 0 : totalWriteNanos.get() / 1e+6 / count;
+    }
+
+}
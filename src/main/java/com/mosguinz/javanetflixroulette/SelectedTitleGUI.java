@@ -27,16 +27,19 @@ import java.awt.Desktop;
 import java.awt.Font;
 import java.awt.Image;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import org.json.JSONObject;
-import org.jsoup.Jsoup;
+import javax.swing.SwingUtilities;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
 
 /**
  * GUI for displaying the selected title.
@@ -56,78 +59,42 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
     private static HomeGUI parentFrame;
 
     /**
-     * The Netflix ID of the selected title.
+     * The selected title.
      *
-     * @see #updateTitleInfo(org.json.JSONObject)
+     * @see #updateTitleInfo(Title)
      * @see HomeGUI#getNetflixTitle()
      */
-    private static String netflixID;
+    private static Title selectedTitle;
 
     /**
-     * The name of the selected title.
+     * The name of the selected title, as plain text.
      *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
+     * @see #updateTitleInfo(Title)
      */
     private static String title;
 
     /**
      * The URL of the poster image for the selected title.
      *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
+     * @see #updateTitleInfo(Title)
      */
     private static String imageURL;
 
     /**
-     * The synopsis of the selected title.
+     * The synopsis of the selected title, as plain text.
      *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
+     * @see #updateTitleInfo(Title)
      */
     private static String synopsis;
 
-    /**
-     * The rating of the selected title.
-     *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
-     */
-    private static String rating;
-
-    /**
-     * The type of the selected title. Etiher {@code Movie} or {@code Series}.
-     *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
-     */
-    private static String type;
-
-    /**
-     * The release year of the selected title.
-     *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
-     */
-    private static String releaseYear;
-
-    /**
-     * The runtime of the selected title.
-     * <p>
-     * Only applicable to titles of {@code Series} type.
-     *
-     * @see #updateTitleInfo(org.json.JSONObject)
-     * @see HomeGUI#getNetflixTitle()
-     */
-    private static String runtime;
-
     /**
      * Creates new form {@link SelectedTitleGUI}.
      */
     public SelectedTitleGUI() {
         initComponents();
         LoggingUtil.setupLogger(LOGGER);
-        netflixID = title = imageURL = synopsis = rating = type = releaseYear = runtime = null;
+        selectedTitle = null;
+        title = imageURL = synopsis = null;
     }
 
     /**
@@ -288,7 +255,7 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
         LOGGER.log(Level.FINE, "\"{0}\" button pressed\n{1}", new Object[]{evt.getActionCommand(), evt.paramString()});
 
         LOGGER.log(Level.FINER, "Creating Netflix URL for title");
-        String netflixURL = "https://www.netflix.com/title/" + netflixID;
+        String netflixURL = "https://www.netflix.com/title/" + selectedTitle.getNetflixID();
 
         try {
             LOGGER.log(Level.FINE, "Opening URL in browser...");
@@ -342,18 +309,14 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
     /**
      * Updates the attributes of the Netflix title to be displayed.
      *
-     * @param selectedTitle a {@link JSONObject} of the selected title
+     * @param selectedTitle the selected title
      */
-    public void updateTitleInfo(JSONObject selectedTitle) {
+    public void updateTitleInfo(Title selectedTitle) {
 
-        netflixID = selectedTitle.getString("netflixid");
-        title = Jsoup.parse(selectedTitle.getString("title")).text();
-        imageURL = selectedTitle.getString("image");
-        synopsis = Jsoup.parse(selectedTitle.getString("synopsis")).text();
-        rating = selectedTitle.getString("rating");
-        type = selectedTitle.getString("type");
-        releaseYear = selectedTitle.getString("released");
-        runtime = selectedTitle.getString("runtime");
+        SelectedTitleGUI.selectedTitle = selectedTitle;
+        title = selectedTitle.getName();
+        imageURL = selectedTitle.getImageURL();
+        synopsis = selectedTitle.getSynopsis();
 
         // Display poster image for selected title.
         setTitleInfo();
@@ -365,8 +328,9 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
     /**
      * Set the poster image of the title to be displayed.
      * <p>
-     * The URL of the poster image is derived from the {@link JSONObject} of the
-     * title.
+     * The URL of the poster image is taken from the selected {@link Title}.
+     * The image is loaded in the background, and is only set if the
+     * same title is still displayed by the time it arrives.
      */
     private void setTitlePosterImage() {
         LOGGER.log(Level.FINE, "Adding poster image");
@@ -375,21 +339,49 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
         titlePosterImage.setText(null);
         titlePosterImage.setIcon(null);
 
-        if (imageURL == null) {
+        if (imageURL.isEmpty()) {
             titlePosterImage.setText("Image not available");
             return;
         }
 
-        try {
-            LOGGER.log(Level.FINE, "Fetching poster image from URL: {0}", imageURL);
-            URL url = new URL(imageURL);
-            Image image = ImageIO.read(url);
-            titlePosterImage.setIcon(new ImageIcon(image));
-            LOGGER.log(Level.FINE, "Poster image is set");
-        } catch (IOException e) {
-            LoggingUtil.logException(LOGGER, e, "Poster image could not be added, placing placeholder text instead...");
-            titlePosterImage.setText("Unable to load image");
-        }
+        String url = imageURL;
+        titlePosterImage.setText("Loading image...");
+        LOGGER.log(Level.FINE, "Fetching poster image from URL: {0}", url);
+
+        loadPosterImageAsync(url).whenComplete((image, e) -> SwingUtilities.invokeLater(() -> {
+            if (!url.equals(imageURL)) {
+                LOGGER.log(Level.FINE, "Discarding poster image for a title no longer displayed");
+                return;
+            }
+
+            if (image != null) {
+                titlePosterImage.setText(null);
+                titlePosterImage.setIcon(new ImageIcon(image));
+                LOGGER.log(Level.FINE, "Poster image is set");
+            } else {
+                LOGGER.log(Level.WARNING, "Poster image could not be added, placing placeholder text instead...", e);
+                titlePosterImage.setText("Unable to load image");
+            }
+        }));
+    }
+
+    /**
+     * Load a poster image without blocking the caller.
+     *
+     * @param imageURL the URL of the poster image
+     * @return a {@link CompletableFuture} of the image, or of {@code null} if
+     * it could not be read as an image
+     */
+    static CompletableFuture<Image> loadPosterImageAsync(String imageURL) {
+        return Unirest.get(imageURL)
+                .asObjectAsync((raw) -> {
+                    try {
+                        return ImageIO.read(raw.getContent());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .thenApply(HttpResponse::getBody);
     }
 
     /**
@@ -406,10 +398,10 @@ public class SelectedTitleGUI extends javax.swing.JDialog {
         fitTextToLabel(titleName, title, titleSynopsis.getFont().getSize() + 2);
 
         LOGGER.log(Level.FINER, "Creating subtext for selected title");
-        String subtext = releaseYear;
-        if (type.equals("movie")) {
+        String subtext = selectedTitle.getReleaseYear() == 0 ? "" : String.valueOf(selectedTitle.getReleaseYear());
+        if (selectedTitle.getType() == Title.Type.MOVIE) {
             LOGGER.log(Level.FINER, "Title is a movie; adding runtime info to subtext");
-            subtext += " · Movie · " + runtime;
+            subtext += " · Movie · " + selectedTitle.getRuntimeText();
         } else {
             subtext += " · Series";
         }
@@ -0,0 +1,424 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.jsoup.Jsoup;
+
+/**
+ * An immutable Netflix title.
+ * <p>
+ * Titles are decoded once, as they arrive from the uNoGS API or are loaded
+ * from the {@link ResponseStore}, instead of being kept as a
+ * {@link JSONObject} of strings and read by key wherever they are used. The
+ * numeric fields are kept as primitives: the rating in tenths, the release
+ * year, and the runtime in seconds. Apart from its text, a title takes a few
+ * dozen bytes of memory.
+ * <p>
+ * The name and synopsis are kept as sent by uNoGS, i.e., with HTML entities
+ * and tags, so that a title written back as JSON through
+ * {@link #toJSONString()} reads back the same. Their getters return them as
+ * plain text.
+ *
+ * @author mosguinz
+ */
+public final class Title implements JSONString {
+
+    /**
+     * The type of a title.
+     */
+    public enum Type {
+
+        /**
+         * A movie.
+         */
+        MOVIE("movie"),
+        /**
+         * A series.
+         */
+        SERIES("series");
+
+        /**
+         * The name that uNoGS uses for the type.
+         */
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the type of the given name.
+         *
+         * @param name the name that uNoGS uses for the type, in any case
+         * @return the type, or {@code null} if the name is not known
+         */
+        static Type forName(String name) {
+            for (Type type : values()) {
+                if (type.name.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the name that uNoGS uses for the type.
+         *
+         * @return {@code movie} or {@code series}
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The rating of a title that has none.
+     */
+    static final short NO_RATING = -1;
+
+    /**
+     * The runtime as sent by uNoGS, e.g., {@code 1h36m}.
+     */
+    private static final Pattern RUNTIME = Pattern.compile("(?:(\\d+)h)?\\s*(?:(\\d+)m)?");
+
+    /**
+     * The Netflix ID, or {@code 0} if the title has none.
+     */
+    private final long netflixID;
+
+    /**
+     * The name, as sent by uNoGS.
+     */
+    private final String name;
+
+    /**
+     * The synopsis, as sent by uNoGS.
+     */
+    private final String synopsis;
+
+    /**
+     * The URL of the poster image.
+     */
+    private final String imageURL;
+
+    /**
+     * The type, or {@code null} if it is not known.
+     */
+    private final Type type;
+
+    /**
+     * The runtime in seconds, or {@code 0} if it is not known.
+     */
+    private final int runtime;
+
+    /**
+     * The IMDb rating in tenths, or {@value #NO_RATING}.
+     */
+    private final short rating;
+
+    /**
+     * The release year, or {@code 0} if it is not known.
+     */
+    private final short releaseYear;
+
+    private Title(long netflixID, String name, String synopsis, String imageURL, Type type,
+            int runtime, short rating, short releaseYear) {
+        this.netflixID = netflixID;
+        this.name = name;
+        this.synopsis = synopsis;
+        this.imageURL = imageURL;
+        this.type = type;
+        this.runtime = runtime;
+        this.rating = rating;
+        this.releaseYear = releaseYear;
+    }
+
+    /**
+     * Decode a title from uNoGS, or from a saved response.
+     * <p>
+     * Fields that are missing, or cannot be parsed, are left unknown rather
+     * than failing the whole title.
+     *
+     * @param item an element of the {@code ITEMS} of a title response
+     * @return the title; {@code item} itself if it is one already
+     * @throws JSONException if the item is not a JSON object
+     */
+    static Title of(Object item) throws JSONException {
+        if (item instanceof Title) {
+            return (Title) item;
+        }
+        if (!(item instanceof JSONObject)) {
+            throw new JSONException("A title must be a JSON object");
+        }
+
+        JSONObject title = (JSONObject) item;
+        return new Title(parseID(title.optString(TitleStore.ID_KEY)),
+                title.optString("title"),
+                title.optString("synopsis"),
+                title.optString("image"),
+                Type.forName(title.optString("type")),
+                parseRuntime(title.optString("runtime")),
+                parseRating(title.optString("rating")),
+                parseReleaseYear(title.optString("released")));
+    }
+
+    /**
+     * Parse a Netflix ID.
+     *
+     * @param id the ID
+     * @return the ID, or {@code 0} if it is not a positive number
+     */
+    static long parseID(String id) {
+        try {
+            return Math.max(0, Long.parseLong(id.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse a rating.
+     *
+     * @param rating the rating, e.g., {@code 7.2}
+     * @return the rating in tenths, or {@value #NO_RATING} if it is empty or
+     * not a number
+     */
+    private static short parseRating(String rating) {
+        if (rating.trim().isEmpty()) {
+            return NO_RATING;
+        }
+
+        try {
+            int r = TitlesQuery.parseRating(rating);
+            return r < 0 || r > Short.MAX_VALUE ? NO_RATING : (short) r;
+        } catch (NumberFormatException e) {
+            return NO_RATING;
+        }
+    }
+
+    /**
+     * Parse a release year.
+     *
+     * @param year the year, e.g., {@code 2019}
+     * @return the year, or {@code 0} if it is not a number
+     */
+    private static short parseReleaseYear(String year) {
+        try {
+            int y = Integer.parseInt(year.trim());
+            return y < 0 || y > Short.MAX_VALUE ? 0 : (short) y;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse a runtime.
+     *
+     * @param runtime the runtime, e.g., {@code 1h36m}
+     * @return the runtime in seconds, or {@code 0} if it is empty or not in
+     * the expected format
+     */
+    private static int parseRuntime(String runtime) {
+        Matcher m = RUNTIME.matcher(runtime.trim());
+        if (!m.matches()) {
+            return 0;
+        }
+
+        try {
+            int hours = m.group(1) == null ? 0 : Integer.parseInt(m.group(1));
+            int minutes = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+            return Math.multiplyExact(hours * 60 + minutes, 60);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Get the Netflix ID.
+     *
+     * @return the ID, or {@code 0} if the title has none
+     */
+    public long getNetflixID() {
+        return netflixID;
+    }
+
+    /**
+     * Get the name.
+     *
+     * @return the name as plain text
+     */
+    public String getName() {
+        return Jsoup.parse(name).text();
+    }
+
+    /**
+     * Get the synopsis.
+     *
+     * @return the synopsis as plain text
+     */
+    public String getSynopsis() {
+        return Jsoup.parse(synopsis).text();
+    }
+
+    /**
+     * Get the URL of the poster image.
+     *
+     * @return the URL, or an empty string if there is none
+     */
+    public String getImageURL() {
+        return imageURL;
+    }
+
+    /**
+     * Get the type.
+     *
+     * @return the type, or {@code null} if it is not known
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the runtime.
+     *
+     * @return the runtime in seconds, or {@code 0} if it is not known
+     */
+    public int getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Get the runtime in the format used by uNoGS.
+     *
+     * @return the runtime, e.g., {@code 1h36m}, or an empty string if it is
+     * not known
+     */
+    public String getRuntimeText() {
+        int minutes = runtime / 60;
+        if (minutes == 0) {
+            return "";
+        }
+        return (minutes >= 60 ? minutes / 60 + "h" : "") + (minutes % 60 != 0 ? minutes % 60 + "m" : "");
+    }
+
+    /**
+     * Check whether the title has a rating.
+     *
+     * @return {@code true} if the title has a rating; {@code false} otherwise
+     */
+    public boolean hasRating() {
+        return rating != NO_RATING;
+    }
+
+    /**
+     * Get the IMDb rating.
+     *
+     * @return the rating in tenths, or {@value #NO_RATING} if the title has
+     * none
+     */
+    public int getRating() {
+        return rating;
+    }
+
+    /**
+     * Get the release year.
+     *
+     * @return the year, or {@code 0} if it is not known
+     */
+    public int getReleaseYear() {
+        return releaseYear;
+    }
+
+    /**
+     * Write the title as a JSON object in the format sent by uNoGS.
+     * <p>
+     * Every field is written, with an empty string for the ones that are not
+     * known, so that a title is never mistaken for an entry of an ID list;
+     * see {@link TitleStore#isIDList}.
+     *
+     * @return the title as JSON text
+     */
+    @Override
+    public String toJSONString() {
+        return toJSON().toString();
+    }
+
+    /**
+     * Get the title as a {@link JSONObject} in the format sent by uNoGS, e.g.,
+     * to be encoded by {@link BinaryResponseCodec}.
+     *
+     * @return a new {@link JSONObject} of the title
+     * @see #toJSONString()
+     */
+    JSONObject toJSON() {
+        JSONObject title = new JSONObject();
+        title.put(TitleStore.ID_KEY, netflixID == 0 ? "" : Long.toString(netflixID));
+        title.put("title", name);
+        title.put("image", imageURL);
+        title.put("synopsis", synopsis);
+        title.put("rating", hasRating() ? String.format(Locale.ROOT, "%.1f", rating / 10.0) : "");
+        title.put("type", type == null ? "" : type.toString());
+        title.put("released", releaseYear == 0 ? "" : Integer.toString(releaseYear));
+        title.put("runtime", getRuntimeText());
+        return title;
+    }
+
+    @Override
+    public String toString() {
+        return toJSONString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(netflixID);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Title)) {
+            return false;
+        }
+
+        Title other = (Title) obj;
+        return netflixID == other.netflixID
+                && runtime == other.runtime
+                && rating == other.rating
+                && releaseYear == other.releaseYear
+                && type == other.type
+                && name.equals(other.name)
+                && synopsis.equals(other.synopsis)
+                && imageURL.equals(other.imageURL);
+    }
+
+}
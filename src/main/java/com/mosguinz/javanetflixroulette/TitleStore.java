@@ -0,0 +1,394 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Keeps one copy of each title, by its {@code netflixid}, shared by every
+ * saved title response.
+ * <p>
+ * The same title turns up in the responses of many queries with different
+ * genre and rating filters. Instead of saving it in full with each of them,
+ * title responses are saved as lists of IDs, and the titles themselves are
+ * saved here, once. Loading a title response then looks its IDs up here, so
+ * responses in memory also share the same title objects.
+ * <p>
+ * Titles are saved in the {@link ResponseStore} as {@value #QUERY_TYPE}
+ * responses, split into {@value #PART_COUNT} parts by their ID. Saving a
+ * title only rewrites the part that it is in, and only if the title has
+ * changed. Parts are loaded the first time one of their titles is needed.
+ * <p>
+ * Other instances of the application may share the same library folder, so
+ * a part is never written from memory alone: it is read again and merged with
+ * the titles saved since, while holding the exclusive {@link LibraryLock}.
+ * Likewise, a title that cannot be found is looked for again in its saved
+ * part before giving up.
+ *
+ * @author mosguinz
+ */
+class TitleStore {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TitleStore.class.getName());
+
+    /**
+     * The query type that the parts are saved under.
+     */
+    static final String QUERY_TYPE = "titleDetails";
+
+    /**
+     * The number of parts that titles are split into.
+     */
+    static final int PART_COUNT = 64;
+
+    /**
+     * The key of each title.
+     */
+    static final String ID_KEY = "netflixid";
+
+    /**
+     * Where the parts are saved.
+     */
+    private final ResponseStore store;
+
+    /**
+     * The titles in each part, by their ID.
+     */
+    private final List<Map<Long, Title>> parts;
+
+    /**
+     * The titles in each part that have not been written yet, by their ID.
+     * <p>
+     * They are taken out as they are merged into the saved part, which is done
+     * on the thread that writes it, without holding the monitor.
+     */
+    private final List<Map<Long, Title>> unsaved;
+
+    /**
+     * Whether each part has been loaded from the store.
+     */
+    private final boolean[] loaded = new boolean[PART_COUNT];
+
+    /**
+     * Set up a title store that saves its parts to the given store.
+     *
+     * @param store where the parts are saved
+     */
+    TitleStore(ResponseStore store) {
+        LoggingUtil.setupLogger(LOGGER);
+        this.store = store;
+        this.parts = new ArrayList<>(PART_COUNT);
+        this.unsaved = new ArrayList<>(PART_COUNT);
+        for (int i = 0; i < PART_COUNT; i++) {
+            parts.add(new HashMap<>());
+            unsaved.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Get the part that a title is in.
+     * <p>
+     * Parts are split by the hash of the ID as a decimal string, i.e., as it
+     * is sent by uNoGS, which is how the saved parts are laid out.
+     *
+     * @param id the ID of the title
+     * @return the index of the part
+     */
+    private static int getPart(long id) {
+        return Math.floorMod(Long.toString(id).hashCode(), PART_COUNT);
+    }
+
+    /**
+     * Get the key that a part is saved under.
+     *
+     * @param part the index of the part
+     * @return the key of the part
+     */
+    private static String getPartKey(int part) {
+        return String.format("%02x", part);
+    }
+
+    /**
+     * Load a part from the store, unless it has been loaded already.
+     * <p>
+     * Titles that were saved since the application started are kept over
+     * the ones loaded.
+     *
+     * @param part the index of the part
+     */
+    private void load(int part) {
+        if (loaded[part]) {
+            return;
+        }
+
+        for (Title title : read(part).values()) {
+            parts.get(part).putIfAbsent(title.getNetflixID(), title);
+        }
+
+        loaded[part] = true;
+    }
+
+    /**
+     * Load a part from the store again, e.g., after another instance of the
+     * application has written to it.
+     * <p>
+     * Saved titles replace the ones in memory, except the ones that have not
+     * been written yet.
+     *
+     * @param part the index of the part
+     */
+    private void reload(int part) {
+        LOGGER.log(Level.FINE, "Reloading part {0} of the title store", getPartKey(part));
+
+        for (Title title : read(part).values()) {
+            if (!unsaved.get(part).containsKey(title.getNetflixID())) {
+                parts.get(part).put(title.getNetflixID(), title);
+            }
+        }
+
+        loaded[part] = true;
+    }
+
+    /**
+     * Read the titles of a part from the store.
+     *
+     * @param part the index of the part
+     * @return the saved titles, by their ID, in the order they were saved
+     */
+    private Map<Long, Title> read(int part) {
+        return getTitles(store.load(QUERY_TYPE, getPartKey(part), (header) -> true));
+    }
+
+    /**
+     * Get the titles of a saved part.
+     *
+     * @param response the saved part, or {@code null} if there is none
+     * @return the titles, by their ID, in the order they were saved
+     */
+    private static Map<Long, Title> getTitles(JSONObject response) {
+        Map<Long, Title> titles = new LinkedHashMap<>();
+        JSONArray items = response == null ? null : response.optJSONArray("ITEMS");
+
+        if (items != null) {
+            for (Object object : items) {
+                if (object instanceof JSONObject) {
+                    Title title = Title.of(object);
+                    titles.put(title.getNetflixID(), title);
+                }
+            }
+        }
+
+        return titles;
+    }
+
+    /**
+     * Merge the titles of a part that have not been written yet into the
+     * saved part.
+     * <p>
+     * Called by the {@link ResponseStore} while it holds the exclusive lock,
+     * possibly on another thread, so it must not take the monitor of the
+     * title store. The titles merged are no longer counted as unsaved, unless
+     * they have been replaced since.
+     *
+     * @param part the index of the part
+     * @param saved the saved part, or {@code null} if there is none
+     * @return the part to save
+     */
+    private JSONObject merge(int part, JSONObject saved) {
+        Map<Long, Title> pending = new HashMap<>(unsaved.get(part));
+        Map<Long, Title> titles = getTitles(saved);
+        titles.putAll(pending);
+
+        for (Map.Entry<Long, Title> entry : pending.entrySet()) {
+            unsaved.get(part).remove(entry.getKey(), entry.getValue());
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("DATE", LocalDate.now().toString());
+        response.put("ITEMS", new JSONArray(titles.values()));
+        return response;
+    }
+
+    /**
+     * Check whether every title in a response has an ID, so that the
+     * response can be saved as a list of IDs.
+     *
+     * @param titles the titles of a response
+     * @return {@code true} if every title is a {@link Title} with an ID;
+     * {@code false} otherwise
+     */
+    static boolean hasIDs(JSONArray titles) {
+        for (Object object : titles) {
+            if (!(object instanceof Title) || ((Title) object).getNetflixID() == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether the items of a saved response are a list of IDs, rather
+     * than the titles themselves.
+     *
+     * @param items the items of a saved response
+     * @return {@code true} if the items only hold IDs; {@code false} otherwise
+     */
+    static boolean isIDList(JSONArray items) {
+        if (items == null || items.length() == 0) {
+            return false;
+        }
+
+        JSONObject first = items.optJSONObject(0);
+        return first != null && first.length() == 1 && first.has(ID_KEY);
+    }
+
+    /**
+     * Turn the titles of a response into a list of IDs.
+     *
+     * @param titles the titles of a response, which must all have an ID
+     * @return a {@link JSONArray} of objects that only hold the
+     * {@value #ID_KEY} of each title, in the same order
+     */
+    static JSONArray toIDList(JSONArray titles) {
+        JSONArray ids = new JSONArray();
+        for (Object object : titles) {
+            ids.put(new JSONObject().put(ID_KEY, Long.toString(((Title) object).getNetflixID())));
+        }
+        return ids;
+    }
+
+    /**
+     * Save a title.
+     *
+     * @param title the title, which must have an ID
+     */
+    void put(Title title) {
+        JSONArray titles = new JSONArray();
+        titles.put(title);
+        putAll(titles);
+    }
+
+    /**
+     * Save the titles of a response.
+     * <p>
+     * Only the parts that hold a new or changed title are written, each
+     * merged with the titles saved in it since it was loaded. The writes are
+     * queued without holding the monitor, as the {@link ResponseStore} may
+     * run them on the calling thread, so that titles can still be looked up
+     * in the meantime.
+     *
+     * @param titles the titles, which must all have an ID
+     */
+    void putAll(JSONArray titles) {
+        TreeSet<Integer> changed = new TreeSet<>();
+
+        synchronized (this) {
+            for (Object object : titles) {
+                Title title = (Title) object;
+                long id = title.getNetflixID();
+                int part = getPart(id);
+                load(part);
+
+                Title previous = parts.get(part).get(id);
+                if (!title.equals(previous)) {
+                    parts.get(part).put(id, title);
+                    unsaved.get(part).put(id, title);
+                    changed.add(part);
+                }
+            }
+        }
+
+        LOGGER.log(Level.FINE, "Saving {0} of {1} parts for {2} titles",
+                new Object[]{changed.size(), PART_COUNT, titles.length()});
+
+        for (int part : changed) {
+            store.update(QUERY_TYPE, getPartKey(part), (saved) -> merge(part, saved));
+        }
+    }
+
+    /**
+     * Look up the titles of a list of IDs.
+     * <p>
+     * A part that is missing one of the titles is loaded again, once, in case
+     * another instance of the application has saved it since.
+     *
+     * @param ids the items of a response saved as a list of IDs
+     * @return a {@link JSONArray} of the titles, in the same order, or
+     * {@code null} if any of them cannot be found
+     */
+    synchronized JSONArray getAll(JSONArray ids) {
+        JSONArray titles = new JSONArray();
+        boolean[] reloaded = new boolean[PART_COUNT];
+
+        for (Object object : ids) {
+            long id = Title.parseID(((JSONObject) object).getString(ID_KEY));
+            int part = getPart(id);
+            load(part);
+
+            Title title = parts.get(part).get(id);
+            if (title == null && !reloaded[part]) {
+                reload(part);
+                reloaded[part] = true;
+                title = parts.get(part).get(id);
+            }
+            if (title == null) {
+                LOGGER.log(Level.INFO, "Title {0} is missing from the title store", id);
+                return null;
+            }
+            titles.put(title);
+        }
+
+        return titles;
+    }
+
+    /**
+     * Forget every title.
+     * <p>
+     * The saved parts are not deleted; they are expected to be cleared along
+     * with the rest of the {@link ResponseStore}.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < PART_COUNT; i++) {
+            parts.get(i).clear();
+            unsaved.get(i).clear();
+            loaded[i] = false;
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable query for Netflix titles, in canonical form.
+ * <p>
+ * The same filters always make the same query, however they were selected:
+ * genre IDs are sorted and de-duplicated, and ratings are normalized to one
+ * decimal place with a decimal point. The query string is built once, and is
+ * used both to request the titles and as the key that their response is saved
+ * under.
+ * <p>
+ * The hash code is computed once, so that looking a query up in the
+ * {@link ResponseCache} does not hash or compare the whole query string,
+ * unless the hashes match.
+ *
+ * @author mosguinz
+ * @see NetflixLibrary#setTitlesQuery()
+ */
+final class TitlesQuery {
+
+    /**
+     * The query string of a titles query; see
+     * {@link NetflixLibrary#setTitlesQuery()} for what each part means.
+     */
+    private static final Pattern QUERY_STRING = Pattern.compile(
+            "q=-!0%2C3000-!0%2C10-!([0-9.,]+)%2C([0-9.,]+)-!([0-9,]+)-!(Any|Movie|Series)-!Any-!Any-!-!"
+            + "&t=ns&cl=([^&]+)&st=adv&ob=Relevance&p=1&sa=or");
+
+    /**
+     * The genre ID that stands for every genre.
+     */
+    static final int ALL_GENRES = 0;
+
+    /**
+     * The region ID that stands for every region.
+     */
+    static final String ALL_REGIONS = "all";
+
+    /**
+     * The ID of the Netflix region, or {@value #ALL_REGIONS}.
+     */
+    private final String regionID;
+
+    /**
+     * The genre IDs, sorted and without duplicates.
+     */
+    private final int[] genreIDs;
+
+    /**
+     * The title type; {@code Any}, {@code Movie}, or {@code Series}.
+     */
+    private final String titleType;
+
+    /**
+     * The minimum IMDb rating, in tenths.
+     */
+    private final int minimumRating;
+
+    /**
+     * The maximum IMDb rating, in tenths.
+     */
+    private final int maximumRating;
+
+    /**
+     * The query string, built from the fields above.
+     */
+    private final String queryString;
+
+    /**
+     * The hash code of the query string.
+     */
+    private final int hash;
+
+    /**
+     * Create a query.
+     *
+     * @param regionID the ID of the Netflix region, or {@value #ALL_REGIONS}
+     * @param genreIDs the genre IDs, in any order and possibly repeated, or
+     * only {@value #ALL_GENRES}
+     * @param titleType {@code Any}, {@code Movie}, or {@code Series}
+     * @param minimumRating the minimum IMDb rating, to one decimal place
+     * @param maximumRating the maximum IMDb rating, to one decimal place
+     * @throws NumberFormatException if a rating is not a number
+     */
+    TitlesQuery(String regionID, Collection<Integer> genreIDs, String titleType, String minimumRating, String maximumRating) {
+        this.regionID = regionID;
+        this.genreIDs = genreIDs.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        this.titleType = titleType;
+        this.minimumRating = parseRating(minimumRating);
+        this.maximumRating = parseRating(maximumRating);
+
+        this.queryString = "q=-!0%2C3000-!0%2C10-!" + formatRating(this.minimumRating) + "%2C" + formatRating(this.maximumRating)
+                + "-!" + Arrays.stream(this.genreIDs).mapToObj(String::valueOf).collect(Collectors.joining(","))
+                + "-!" + titleType + "-!Any-!Any-!-!&t=ns&cl=" + regionID + "&st=adv&ob=Relevance&p=1&sa=or";
+        this.hash = queryString.hashCode();
+    }
+
+    /**
+     * Parse a query string built by this class, or by an earlier version of
+     * the application.
+     *
+     * @param titlesQueryString the query string
+     * @return the query in canonical form, or {@code null} if the query
+     * string is not in the expected format
+     */
+    static TitlesQuery parse(String titlesQueryString) {
+        Matcher m = QUERY_STRING.matcher(titlesQueryString);
+        if (!m.matches()) {
+            return null;
+        }
+
+        try {
+            return new TitlesQuery(m.group(5),
+                    Arrays.stream(m.group(3).split(",")).map(Integer::valueOf).collect(Collectors.toList()),
+                    m.group(4), m.group(1), m.group(2));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a rating, which may have been formatted with a decimal comma.
+     *
+     * @param rating the rating, to one decimal place
+     * @return the rating in tenths
+     * @throws NumberFormatException if the rating is not a number
+     */
+    static int parseRating(String rating) {
+        return (int) Math.round(Double.parseDouble(rating.trim().replace(',', '.')) * 10);
+    }
+
+    /**
+     * Format a rating for the query string.
+     *
+     * @param rating the rating in tenths
+     * @return the rating to one decimal place, with a decimal point
+     */
+    private static String formatRating(int rating) {
+        return String.format(Locale.ROOT, "%.1f", rating / 10.0);
+    }
+
+    /**
+     * Get the ID of the Netflix region.
+     *
+     * @return the region ID, or {@value #ALL_REGIONS}
+     */
+    String getRegionID() {
+        return regionID;
+    }
+
+    /**
+     * Get the genre IDs.
+     *
+     * @return a copy of the sorted genre IDs
+     */
+    int[] getGenreIDs() {
+        return genreIDs.clone();
+    }
+
+    /**
+     * Get the title type.
+     *
+     * @return {@code Any}, {@code Movie}, or {@code Series}
+     */
+    String getTitleType() {
+        return titleType;
+    }
+
+    /**
+     * Get the minimum IMDb rating.
+     *
+     * @return the minimum rating in tenths
+     */
+    int getMinimumRating() {
+        return minimumRating;
+    }
+
+    /**
+     * Get the maximum IMDb rating.
+     *
+     * @return the maximum rating in tenths
+     */
+    int getMaximumRating() {
+        return maximumRating;
+    }
+
+    /**
+     * Get the query string for a page of the results.
+     * <p>
+     * Pages are not part of the query; the responses for every page are
+     * saved together under the query itself.
+     *
+     * @param page the page number, starting from 1
+     * @return the query string for the page, to be appended to the endpoint
+     * URL
+     */
+    String getPageQueryString(int page) {
+        return page == 1 ? queryString : queryString.replace("&p=1&", "&p=" + page + "&");
+    }
+
+    /**
+     * Get the query string.
+     *
+     * @return the canonical query string, to be appended to the endpoint URL
+     */
+    @Override
+    public String toString() {
+        return queryString;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TitlesQuery)) {
+            return false;
+        }
+
+        TitlesQuery other = (TitlesQuery) obj;
+        return hash == other.hash && queryString.equals(other.queryString);
+    }
+
+}
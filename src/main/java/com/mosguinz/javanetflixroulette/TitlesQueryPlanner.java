@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+
+/**
+ * Answers a titles query from a saved response for a broader query.
+ * <p>
+ * Title queries built by {@link NetflixLibrary} differ only by region, genre
+ * IDs, title type, and minimum and maximum IMDb rating. A saved response
+ * <i>contains</i> a query if it was saved for the same region and the same
+ * genres, for either the same title type or {@code Any}, and for a rating
+ * range that covers the query's. Queries are compared in their
+ * {@link TitlesQuery canonical form}, so the order of the genres does not
+ * matter. The titles for the query can then be picked out of the saved
+ * response by their {@code type} and {@code rating}, without sending a
+ * request.
+ * <p>
+ * Titles in a response do not list their genres or regions, so only queries
+ * with the same genres and region can be answered this way. Containment is
+ * only about the queries: the saved response must also hold every page of its
+ * results, which is up to the caller to check.
+ *
+ * @author mosguinz
+ */
+class TitlesQueryPlanner {
+
+    /**
+     * The {@link Logger} object for the class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TitlesQueryPlanner.class.getName());
+
+    /**
+     * Utility class; not meant to be instantiated.
+     */
+    private TitlesQueryPlanner() {
+    }
+
+    /**
+     * Check whether a saved response for one query holds every title, among
+     * its own, that matches another query.
+     *
+     * @param saved the query of the saved response
+     * @param query the query to answer
+     * @return {@code true} if the titles for {@code query} can be picked out
+     * of the response for {@code saved}; {@code false} otherwise
+     */
+    static boolean contains(TitlesQuery saved, TitlesQuery query) {
+        return saved.getRegionID().equals(query.getRegionID())
+                && Arrays.equals(saved.getGenreIDs(), query.getGenreIDs())
+                && (saved.getTitleType().equals("Any") || saved.getTitleType().equals(query.getTitleType()))
+                && saved.getMinimumRating() <= query.getMinimumRating()
+                && saved.getMaximumRating() >= query.getMaximumRating();
+    }
+
+    /**
+     * Pick out the titles that match a query.
+     * <p>
+     * Titles without a rating are only kept if the query has no minimum
+     * rating.
+     *
+     * @param titles the titles of a saved response that
+     * {@link #contains(TitlesQuery, TitlesQuery) contains} the query
+     * @param query the query to answer
+     * @return a {@link JSONArray} of the matching titles
+     */
+    static JSONArray filter(JSONArray titles, TitlesQuery query) {
+        JSONArray matching = new JSONArray();
+
+        for (Object object : titles) {
+            Title title = (Title) object;
+
+            if (!query.getTitleType().equals("Any")
+                    && (title.getType() == null || !query.getTitleType().equalsIgnoreCase(title.getType().toString()))) {
+                continue;
+            }
+
+            if (!title.hasRating()) {
+                if (query.getMinimumRating() > 0) {
+                    continue;
+                }
+            } else if (title.getRating() < query.getMinimumRating() || title.getRating() > query.getMaximumRating()) {
+                continue;
+            }
+
+            matching.put(title);
+        }
+
+        LOGGER.log(Level.FINE, "{0} of {1} saved titles match the query", new Object[]{matching.length(), titles.length()});
+        return matching;
+    }
+
+}
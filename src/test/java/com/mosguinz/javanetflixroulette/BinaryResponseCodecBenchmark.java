@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares the size of a title response, and the time to decode it, when it is
+ * saved as pretty-printed JSON and when it is saved by
+ * {@link BinaryResponseCodec}.
+ * <p>
+ * Not run as part of the tests. Run it with the test classpath, optionally
+ * giving the number of titles in the response (default 5000):
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.mosguinz.javanetflixroulette.BinaryResponseCodecBenchmark 5000
+ * </pre>
+ *
+ * @author mosguinz
+ */
+public class BinaryResponseCodecBenchmark {
+
+    /**
+     * The number of decodes to warm up with.
+     */
+    private static final int WARM_UP = 20;
+
+    /**
+     * The number of decodes that are timed.
+     */
+    private static final int RUNS = 30;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        JSONArray items = createTitles(count, new Random(1));
+
+        JSONObject response = new JSONObject();
+        response.put("DATE", "2019-06-01");
+        response.put("Q-STRING", "q=benchmark");
+        response.put("ITEMS", items);
+        byte[] json = response.toString(4).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=benchmark", true, items);
+
+        double jsonTime = time(() -> new JSONObject(new String(json, StandardCharsets.UTF_8)));
+        double binaryTime = time(() -> BinaryResponseCodec.decode(ByteBuffer.wrap(binary)));
+
+        System.out.printf("%d titles%n", count);
+        System.out.printf("  pretty JSON  %,12d bytes  %8.1f ms%n", json.length, jsonTime);
+        System.out.printf("  binary       %,12d bytes  %8.1f ms%n", binary.length, binaryTime);
+    }
+
+    /**
+     * A decode to be timed.
+     */
+    private interface Decode {
+
+        /**
+         * Run the decode.
+         *
+         * @return the decoded response
+         * @throws IOException if the decode fails
+         */
+        Object run() throws IOException;
+    }
+
+    /**
+     * Time a decode.
+     *
+     * @param decode the decode
+     * @return the average time of a decode, in milliseconds
+     * @throws IOException if the decode fails
+     */
+    private static double time(Decode decode) throws IOException {
+        for (int i = 0; i < WARM_UP; i++) {
+            decode.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            decode.run();
+        }
+        return (System.nanoTime() - start) / 1e+6 / RUNS;
+    }
+
+    /**
+     * Get titles with the fields that uNoGS sends.
+     *
+     * @param count the number of titles
+     * @param random the source of the values
+     * @return the titles
+     */
+    static JSONArray createTitles(int count, Random random) {
+        String[] ratings = {"", "4.9", "5.5", "6.1", "6.6", "7.2", "7.8", "8.0"};
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            StringBuilder synopsis = new StringBuilder();
+            for (int w = 0; w < 30; w++) {
+                synopsis.append("word").append(random.nextInt(1000)).append(' ');
+            }
+
+            JSONObject title = new JSONObject();
+            title.put("netflixid", String.valueOf(60000000 + random.nextInt(30000000)));
+            title.put("title", "Title &#39;" + i + "&#39;");
+            title.put("image", "https://occ-0-2773-2774.1.nflxso.net/dnm/api/v6/AAAABa"
+                    + Long.toHexString(random.nextLong()) + ".jpg");
+            title.put("synopsis", synopsis.toString().trim() + "<br><b>New episode</b>");
+            title.put("rating", ratings[random.nextInt(ratings.length)]);
+            title.put("type", random.nextBoolean() ? "movie" : "series");
+            title.put("released", String.valueOf(1980 + random.nextInt(40)));
+            title.put("runtime", random.nextBoolean() ? (60 + random.nextInt(80)) + "m" : "");
+            title.put("largeimage", random.nextInt(3) == 0 ? "" : "https://example.com/large" + i + ".jpg");
+            title.put("unogsdate", "2019-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(9));
+            title.put("imdbid", "tt" + (1000000 + random.nextInt(9000000)));
+            title.put("download", random.nextBoolean() ? "1" : "0");
+            items.put(title);
+        }
+        return items;
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BinaryResponseCodec}.
+ *
+ * @author mosguinz
+ */
+public class BinaryResponseCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Get a few titles in the format sent by uNoGS.
+     *
+     * @param count the number of titles
+     * @return the titles
+     */
+    static JSONArray createTitles(int count) {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject title = new JSONObject();
+            title.put("netflixid", String.valueOf(80000000 + i));
+            title.put("title", "Caf&eacute; &#39;" + i + "&#39; – 😀");
+            title.put("image", "https://example.com/" + i + ".jpg");
+            title.put("synopsis", "A synopsis<br><b>New episode</b>");
+            title.put("rating", i % 2 == 0 ? "7.2" : "");
+            title.put("type", i % 3 == 0 ? "series" : "movie");
+            title.put("released", String.valueOf(2000 + i % 5));
+            title.put("runtime", i % 2 == 0 ? "1h36m" : "");
+            title.put("download", i % 2 == 0 ? "1" : "0");
+            items.put(title);
+        }
+        return items;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        JSONArray items = createTitles(20);
+        items.getJSONObject(3).put("seasons", 4);
+        items.getJSONObject(4).put("countries", new JSONArray().put("US").put("TH"));
+
+        JSONObject response = BinaryResponseCodec.decode(ByteBuffer.wrap(
+                BinaryResponseCodec.encode("2019-06-01", "q=test", true, items)));
+
+        assertEquals("2019-06-01", response.getString("DATE"));
+        assertEquals("q=test", response.getString("Q-STRING"));
+        assertTrue(response.getBoolean("COMPLETE"));
+        assertTrue(items.similar(response.getJSONArray("ITEMS")));
+    }
+
+    @Test
+    public void testRoundTripTitles() throws IOException {
+        JSONArray items = new JSONArray();
+        for (Object item : createTitles(5)) {
+            items.put(Title.of(item));
+        }
+
+        JSONArray decoded = BinaryResponseCodec.decode(ByteBuffer.wrap(
+                BinaryResponseCodec.encode("2019-06-01", "q=test", false, items))).getJSONArray("ITEMS");
+
+        assertEquals(items.length(), decoded.length());
+        for (int i = 0; i < items.length(); i++) {
+            assertEquals(items.get(i), Title.of(decoded.get(i)));
+        }
+    }
+
+    @Test
+    public void testRoundTripWithoutItems() throws IOException {
+        JSONObject response = BinaryResponseCodec.decode(ByteBuffer.wrap(
+                BinaryResponseCodec.encode("2019-06-01", null, false, new JSONArray())));
+
+        assertFalse(response.has("Q-STRING"));
+        assertFalse(response.getBoolean("COMPLETE"));
+        assertEquals(0, response.getJSONArray("ITEMS").length());
+    }
+
+    @Test
+    public void testIsBinary() {
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(1));
+        ByteBuffer buffer = ByteBuffer.wrap(binary);
+        assertTrue(BinaryResponseCodec.isBinary(buffer));
+        assertEquals(0, buffer.position());
+
+        assertFalse(BinaryResponseCodec.isBinary(ByteBuffer.wrap("{\"DATE\":\"2019-06-01\"}".getBytes(StandardCharsets.UTF_8))));
+        assertFalse(BinaryResponseCodec.isBinary(ByteBuffer.wrap(new byte[]{'N', 'F'})));
+    }
+
+    @Test
+    public void testReadHeaderWithoutCompleteFlag() throws IOException {
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(3));
+
+        // Drop the flag from the end of the header, as written before it was added.
+        ByteBuffer buffer = ByteBuffer.wrap(binary);
+        int length = buffer.getInt(6);
+        byte[] legacy = new byte[binary.length - 1];
+        System.arraycopy(binary, 0, legacy, 0, 10 + length - 1);
+        System.arraycopy(binary, 10 + length, legacy, 10 + length - 1, binary.length - 10 - length);
+        ByteBuffer.wrap(legacy).putInt(6, length - 1);
+
+        JSONObject response = BinaryResponseCodec.decode(ByteBuffer.wrap(legacy));
+        assertEquals("q=test", response.getString("Q-STRING"));
+        assertFalse(response.has("COMPLETE"));
+        assertEquals(3, response.getJSONArray("ITEMS").length());
+    }
+
+    @Test
+    public void testReadHeaderFromFile() throws IOException {
+        File file = folder.newFile("response.dat");
+        Files.write(file.toPath(), BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(50)));
+
+        JSONObject header = BinaryResponseCodec.readHeader(file);
+        assertEquals("2019-06-01", header.getString("DATE"));
+        assertEquals("q=test", header.getString("Q-STRING"));
+        assertTrue(header.getBoolean("COMPLETE"));
+        assertFalse(header.has("ITEMS"));
+    }
+
+    @Test
+    public void testReadHeaderFromJSONFile() throws IOException {
+        File file = folder.newFile("response.json");
+        Files.write(file.toPath(), "{\"DATE\":\"2019-06-01\",\"ITEMS\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(BinaryResponseCodec.readHeader(file));
+    }
+
+    @Test
+    public void testDecodeUnsupportedVersion() {
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(1));
+        ByteBuffer.wrap(binary).putShort(4, (short) (BinaryResponseCodec.SCHEMA_VERSION + 1));
+        assertCorrupt(binary);
+    }
+
+    @Test
+    public void testDecodeTruncated() {
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(3));
+        for (int length = 0; length < binary.length; length++) {
+            assertCorrupt(Arrays.copyOf(binary, length));
+        }
+    }
+
+    @Test
+    public void testDecodeCorrupt() {
+        byte[] binary = BinaryResponseCodec.encode("2019-06-01", "q=test", true, createTitles(3));
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            byte[] corrupt = binary.clone();
+            for (int j = 1 + random.nextInt(3); j > 0; j--) {
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            }
+
+            try {
+                BinaryResponseCodec.decode(ByteBuffer.wrap(corrupt));
+            } catch (IOException e) {
+                // Expected for most corruptions; others decode to different values.
+            }
+        }
+    }
+
+    /**
+     * Check that decoding the given bytes fails with an {@link IOException}.
+     *
+     * @param binary the bytes
+     */
+    private static void assertCorrupt(byte[] binary) {
+        try {
+            BinaryResponseCodec.decode(ByteBuffer.wrap(binary));
+            fail("Decoded a corrupt response of " + binary.length + " bytes");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ *
+ * @author mosguinz
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * The breaker under test, which opens after three failures for one
+     * second.
+     */
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        System.setProperty(CircuitBreaker.FAILURE_THRESHOLD_PROPERTY, "3");
+        System.setProperty(CircuitBreaker.OPEN_TIME_PROPERTY, "1");
+        breaker = new CircuitBreaker();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(CircuitBreaker.FAILURE_THRESHOLD_PROPERTY);
+        System.clearProperty(CircuitBreaker.OPEN_TIME_PROPERTY);
+    }
+
+    /**
+     * Open the breaker by failing enough requests in a row.
+     */
+    private void trip() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure();
+        }
+    }
+
+    /**
+     * Wait until the breaker would let a trial request through.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void waitForTrial() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!breaker.isAllowing() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testStartsClosed() {
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.isAllowing());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(0, breaker.getSecondsUntilTrial());
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTripCount());
+        assertFalse(breaker.isAllowing());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getTripCount());
+    }
+
+    @Test
+    public void testTrialSuccessCloses() throws InterruptedException {
+        trip();
+        waitForTrial();
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse("A second request was let through while half-open", breaker.tryAcquire());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testTrialFailureReopens() throws InterruptedException {
+        trip();
+        waitForTrial();
+
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTripCount());
+        assertFalse(breaker.tryAcquire());
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link KeyValueResponseStore}.
+ * <p>
+ * The data file stays locked while a store is open, so a store is opened
+ * again by copying its data file to another folder.
+ *
+ * @author mosguinz
+ */
+public class KeyValueResponseStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private KeyValueResponseStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder();
+        store = new KeyValueResponseStore(directory);
+    }
+
+    /**
+     * Get a response.
+     *
+     * @param item the only item of the response
+     * @return the response
+     */
+    private static JSONObject createResponse(String item) {
+        JSONObject response = new JSONObject();
+        response.put("DATE", LocalDate.now().toString());
+        response.put("ITEMS", new JSONArray().put(item));
+        return response;
+    }
+
+    /**
+     * Load the item of a response.
+     *
+     * @param store the store to load the response from
+     * @param key the key of the response
+     * @return the only item of the response, or {@code null} if there is no
+     * response
+     */
+    private static String load(KeyValueResponseStore store, String key) {
+        JSONObject response = store.load("fetchGenres", key, (header) -> true);
+        return response == null ? null : response.getJSONArray("ITEMS").getString(0);
+    }
+
+    /**
+     * Open a copy of the data file, with the given bytes appended to it.
+     *
+     * @param appended the bytes to append
+     * @return a store over the copy
+     * @throws IOException if the copy could not be made or opened
+     */
+    private KeyValueResponseStore reopen(byte[] appended) throws IOException {
+        File copy = folder.newFolder();
+        File data = new File(copy, KeyValueResponseStore.DATA_FILENAME);
+        Files.copy(new File(directory, KeyValueResponseStore.DATA_FILENAME).toPath(), data.toPath());
+        Files.write(data.toPath(), appended, StandardOpenOption.APPEND);
+        return new KeyValueResponseStore(copy);
+    }
+
+    /**
+     * Get a record as it is laid out in the data file.
+     *
+     * @param key the key of the record
+     * @param value the value, or {@code null} for a deleted key
+     * @return the record
+     */
+    private static byte[] createRecord(String key, byte[] value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + k.length + (value == null ? 0 : value.length));
+        record.putInt(k.length).put(k).putInt(value == null ? -1 : value.length);
+        if (value != null) {
+            record.put(value);
+        }
+        return record.array();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        assertTrue(store.save("fetchGenres", "a", createResponse("first")));
+        assertTrue(store.save("fetchGenres", "b", createResponse("second")));
+        assertTrue(store.save("fetchAvailableRegions", null, createResponse("regions")));
+
+        assertEquals("first", load(store, "a"));
+        assertEquals("second", load(store, "b"));
+        assertNull(load(store, "c"));
+        assertEquals(3, store.getResponseCount());
+        assertEquals(2, store.getResponseCount("fetchGenres"));
+
+        KeyValueResponseStore reopened = reopen(new byte[0]);
+        assertEquals("first", load(reopened, "a"));
+        assertEquals("second", load(reopened, "b"));
+        assertEquals(3, reopened.getResponseCount());
+    }
+
+    @Test
+    public void testOverwrite() throws IOException {
+        store.save("fetchGenres", "a", createResponse("old"));
+        store.save("fetchGenres", "a", createResponse("new"));
+
+        assertEquals("new", load(store, "a"));
+        assertEquals(1, store.getResponseCount());
+        assertEquals("new", load(reopen(new byte[0]), "a"));
+    }
+
+    @Test
+    public void testTombstone() throws IOException {
+        store.save("fetchGenres", "a", createResponse("deleted"));
+        store.save("fetchGenres", "b", createResponse("kept"));
+
+        KeyValueResponseStore reopened = reopen(createRecord("fetchGenres?a", null));
+        assertNull(load(reopened, "a"));
+        assertEquals("kept", load(reopened, "b"));
+        assertEquals(1, reopened.getResponseCount());
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        store.save("fetchGenres", "a", createResponse("kept"));
+        long length = store.getByteSize();
+        byte[] record = createRecord("fetchGenres?b", LocalLibrary.encodeResponse("fetchGenres", createResponse("torn")));
+
+        for (int cut : new int[]{2, Integer.BYTES + 3, record.length - 1}) {
+            KeyValueResponseStore reopened = reopen(Arrays.copyOf(record, cut));
+            assertEquals("kept", load(reopened, "a"));
+            assertNull(load(reopened, "b"));
+            assertEquals(length, reopened.getByteSize());
+
+            // Records appended after the cut are read back.
+            reopened.save("fetchGenres", "b", createResponse("appended"));
+            assertEquals("appended", load(reopened, "b"));
+        }
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        char[] filler = new char[400 * 1024];
+        Arrays.fill(filler, 'x');
+        String large = new String(filler);
+
+        store.save("fetchGenres", "kept", createResponse("kept"));
+        for (int i = 0; i < 10; i++) {
+            store.save("fetchGenres", "a", createResponse(i + large));
+        }
+        store.save("fetchGenres", "b", createResponse("last"));
+
+        // Only the latest of each response is left.
+        assertTrue(store.getByteSize() < 2 * large.length());
+        assertEquals("kept", load(store, "kept"));
+        assertEquals("9" + large, load(store, "a"));
+        assertEquals("last", load(store, "b"));
+        assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(".tmp")).length);
+
+        // The compacted file is still locked, and is what a new store reads.
+        try {
+            new KeyValueResponseStore(directory);
+            fail("Opened a data file that is in use");
+        } catch (IOException e) {
+            // Expected.
+        }
+        KeyValueResponseStore reopened = reopen(new byte[0]);
+        assertEquals("kept", load(reopened, "kept"));
+        assertEquals("9" + large, load(reopened, "a"));
+        assertEquals(store.getByteSize(), reopened.getByteSize());
+    }
+
+}
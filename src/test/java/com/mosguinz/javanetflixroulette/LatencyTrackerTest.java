@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link LatencyTracker}.
+ *
+ * @author mosguinz
+ */
+public class LatencyTrackerTest {
+
+    @Test
+    public void testPercentiles() {
+        List<Long> latencies = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            latencies.add(i);
+        }
+        Collections.shuffle(latencies, new Random(1));
+
+        LatencyTracker tracker = new LatencyTracker(100);
+        latencies.forEach(tracker::record);
+
+        assertEquals(1, tracker.getPercentile(0, 1));
+        assertEquals(1, tracker.getPercentile(1, 1));
+        assertEquals(50, tracker.getPercentile(50, 1));
+        assertEquals(95, tracker.getPercentile(95, 1));
+        assertEquals(96, tracker.getPercentile(95.5, 1));
+        assertEquals(100, tracker.getPercentile(100, 1));
+    }
+
+    @Test
+    public void testPercentileOutOfRange() {
+        LatencyTracker tracker = new LatencyTracker(10);
+        for (long i = 1; i <= 10; i++) {
+            tracker.record(i);
+        }
+
+        assertEquals(1, tracker.getPercentile(-5, 1));
+        assertEquals(10, tracker.getPercentile(150, 1));
+    }
+
+    @Test
+    public void testKeepsMostRecent() {
+        LatencyTracker tracker = new LatencyTracker(10);
+        for (long i = 1; i <= 25; i++) {
+            tracker.record(i);
+        }
+
+        assertEquals(16, tracker.getPercentile(0, 1));
+        assertEquals(20, tracker.getPercentile(50, 1));
+        assertEquals(25, tracker.getPercentile(100, 1));
+    }
+
+    @Test
+    public void testMinimumSamples() {
+        LatencyTracker tracker = new LatencyTracker(10);
+        assertEquals(-1, tracker.getPercentile(50, 0));
+
+        tracker.record(7);
+        tracker.record(3);
+        assertEquals(-1, tracker.getPercentile(50, 3));
+
+        tracker.record(5);
+        assertEquals(5, tracker.getPercentile(50, 3));
+    }
+
+}
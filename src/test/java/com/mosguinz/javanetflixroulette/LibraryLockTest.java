@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link LibraryLock}, between threads in the same JVM.
+ *
+ * @author mosguinz
+ */
+public class LibraryLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private LibraryLock lock;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder();
+        lock = LibraryLock.of(directory);
+    }
+
+    /**
+     * Start a thread that holds a lock until the latch is released.
+     *
+     * @param exclusive whether to take the exclusive lock
+     * @param held counted down once the lock is held
+     * @param release the latch to wait for before releasing the lock
+     * @return the thread
+     */
+    private Thread hold(boolean exclusive, CountDownLatch held, CountDownLatch release) {
+        LibraryLock.LockedAction<InterruptedException> work = () -> {
+            held.countDown();
+            release.await();
+        };
+        Thread t = new Thread(() -> {
+            try {
+                if (exclusive) {
+                    lock.runExclusive(work);
+                } else {
+                    lock.runShared(work);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void testOfSameFolder() {
+        assertSame(lock, LibraryLock.of(new File(directory.getPath())));
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedHeldTogether() throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = hold(false, held, release);
+        Thread second = hold(false, held, release);
+
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        assertTrue(new File(directory, LibraryLock.LOCK_FILENAME).isFile());
+        release.countDown();
+        first.join();
+        second.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testExclusiveWaitsForReaders() throws InterruptedException {
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch releaseRead = new CountDownLatch(1);
+        Thread reader = hold(false, read, releaseRead);
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = hold(true, written, new CountDownLatch(0));
+        assertFalse("Took the exclusive lock while a thread was reading", written.await(200, TimeUnit.MILLISECONDS));
+
+        releaseRead.countDown();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        reader.join();
+        writer.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedWaitsForWriter() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        Thread writer = hold(true, written, releaseWrite);
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch read = new CountDownLatch(1);
+        Thread reader = hold(false, read, new CountDownLatch(0));
+        assertFalse("Took the shared lock while a thread was writing", read.await(200, TimeUnit.MILLISECONDS));
+
+        releaseWrite.countDown();
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        writer.join();
+        reader.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterReadsWithoutRelocking() throws InterruptedException {
+        String result = lock.withExclusive(() -> lock.withShared(() -> lock.withExclusive(() -> "nested")));
+        assertEquals("nested", result);
+
+        // Every hold was released: another thread can still take the exclusive lock.
+        CountDownLatch written = new CountDownLatch(1);
+        hold(true, written, new CountDownLatch(0)).join();
+        assertEquals(0, written.getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testUpgradeThrows() throws InterruptedException {
+        try {
+            lock.runShared(() -> lock.runExclusive(() -> {
+                fail("Took the exclusive lock while holding the shared lock");
+            }));
+            fail("Took the exclusive lock while holding the shared lock");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        // The shared lock was released on the way out.
+        CountDownLatch written = new CountDownLatch(1);
+        hold(true, written, new CountDownLatch(0)).join();
+        assertEquals(0, written.getCount());
+    }
+
+}
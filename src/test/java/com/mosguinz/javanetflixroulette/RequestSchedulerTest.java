@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RequestScheduler}.
+ *
+ * @author mosguinz
+ */
+public class RequestSchedulerTest {
+
+    /**
+     * The system properties that configure the scheduler.
+     */
+    private static final List<String> PROPERTIES = Arrays.asList(
+            RequestScheduler.RATE_PROPERTY,
+            RequestScheduler.BURST_PROPERTY,
+            RequestScheduler.DAILY_QUOTA_PROPERTY,
+            RequestScheduler.QUOTA_RESERVE_PROPERTY,
+            RequestScheduler.QUEUE_SIZE_PROPERTY);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearProperties() {
+        PROPERTIES.forEach(System::clearProperty);
+    }
+
+    /**
+     * Create a scheduler over a new library folder.
+     *
+     * @param rate the permits per second
+     * @param burst the permits the bucket holds
+     * @param dailyQuota the requests per day, or {@code 0} for no limit
+     * @param quotaReserve the requests kept for the user
+     * @param queueSize the background requests that can be queued
+     * @return the scheduler
+     * @throws Exception if the folder could not be created
+     */
+    private RequestScheduler create(int rate, int burst, int dailyQuota, int quotaReserve, int queueSize) throws Exception {
+        return create(folder.newFolder(), rate, burst, dailyQuota, quotaReserve, queueSize);
+    }
+
+    /**
+     * Create a scheduler over the given library folder.
+     *
+     * @param directory the library folder
+     * @param rate the permits per second
+     * @param burst the permits the bucket holds
+     * @param dailyQuota the requests per day, or {@code 0} for no limit
+     * @param quotaReserve the requests kept for the user
+     * @param queueSize the background requests that can be queued
+     * @return the scheduler
+     */
+    private static RequestScheduler create(File directory, int rate, int burst, int dailyQuota, int quotaReserve, int queueSize) {
+        System.setProperty(RequestScheduler.RATE_PROPERTY, String.valueOf(rate));
+        System.setProperty(RequestScheduler.BURST_PROPERTY, String.valueOf(burst));
+        System.setProperty(RequestScheduler.DAILY_QUOTA_PROPERTY, String.valueOf(dailyQuota));
+        System.setProperty(RequestScheduler.QUOTA_RESERVE_PROPERTY, String.valueOf(quotaReserve));
+        System.setProperty(RequestScheduler.QUEUE_SIZE_PROPERTY, String.valueOf(queueSize));
+        return new RequestScheduler(directory);
+    }
+
+    /**
+     * Wait for a permit.
+     *
+     * @param permit the future of the permit
+     * @return the permit
+     * @throws Exception if the permit was not handed out in time
+     */
+    private static RequestScheduler.Permit await(CompletableFuture<RequestScheduler.Permit> permit) throws Exception {
+        return permit.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Check that a permit was rejected.
+     *
+     * @param permit the future of the permit
+     * @throws Exception if the permit did not complete in time
+     */
+    private static void assertRejected(CompletableFuture<RequestScheduler.Permit> permit) throws Exception {
+        try {
+            await(permit);
+            fail("The permit was handed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testBurst() throws Exception {
+        RequestScheduler scheduler = create(2, 3, 0, 0, 16);
+
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<RequestScheduler.Permit> permit = scheduler.acquire(RequestScheduler.Priority.INTERACTIVE);
+            assertTrue("Permit " + i + " of the burst was not handed out at once", permit.isDone());
+        }
+
+        long start = System.nanoTime();
+        await(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Waited only " + waited + " ms for the bucket to refill", waited >= 250);
+    }
+
+    @Test
+    public void testInteractiveGoesFirst() throws Exception {
+        RequestScheduler scheduler = create(10, 1, 0, 0, 16);
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<RequestScheduler.Permit> background = scheduler.acquire(RequestScheduler.Priority.BACKGROUND);
+        background.thenRun(() -> order.add("background"));
+        CompletableFuture<RequestScheduler.Permit> interactive = scheduler.acquire(RequestScheduler.Priority.INTERACTIVE);
+        interactive.thenRun(() -> order.add("interactive"));
+
+        await(background);
+        await(interactive);
+        assertEquals(Arrays.asList("interactive", "background"), order);
+    }
+
+    @Test
+    public void testPromote() throws Exception {
+        RequestScheduler scheduler = create(10, 1, 0, 0, 16);
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<RequestScheduler.Permit> first = scheduler.acquire(RequestScheduler.Priority.BACKGROUND);
+        first.thenRun(() -> order.add("first"));
+        CompletableFuture<RequestScheduler.Permit> second = scheduler.acquire(RequestScheduler.Priority.BACKGROUND);
+        second.thenRun(() -> order.add("second"));
+        scheduler.promote(second);
+
+        await(first);
+        await(second);
+        assertEquals(Arrays.asList("second", "first"), order);
+    }
+
+    @Test
+    public void testBackgroundQueueLimit() throws Exception {
+        RequestScheduler scheduler = create(1, 1, 0, 0, 1);
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND));
+
+        CompletableFuture<RequestScheduler.Permit> queued = scheduler.acquire(RequestScheduler.Priority.BACKGROUND);
+        assertRejected(scheduler.acquire(RequestScheduler.Priority.BACKGROUND));
+        assertEquals(1, scheduler.getDroppedCount());
+        assertFalse(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE).isCompletedExceptionally());
+        queued.cancel(true);
+    }
+
+    @Test
+    public void testCancelledRequestIsNotGranted() throws Exception {
+        RequestScheduler scheduler = create(10, 1, 0, 0, 16);
+        await(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE));
+
+        CompletableFuture<RequestScheduler.Permit> cancelled = scheduler.acquire(RequestScheduler.Priority.INTERACTIVE);
+        CompletableFuture<RequestScheduler.Permit> next = scheduler.acquire(RequestScheduler.Priority.INTERACTIVE);
+        cancelled.cancel(true);
+
+        await(next);
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    public void testQuotaCountsPermitsUntilReleased() throws Exception {
+        RequestScheduler scheduler = create(100, 10, 10, 2, 16);
+        assertEquals(10, scheduler.getRemainingQuota());
+        assertEquals(8, scheduler.getRemainingQuota(RequestScheduler.Priority.BACKGROUND));
+
+        RequestScheduler.Permit used = await(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE));
+        RequestScheduler.Permit released = await(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE));
+        assertEquals(8, scheduler.getRemainingQuota());
+
+        used.use();
+        used.use();
+        used.release();
+        released.release();
+        released.use();
+        assertEquals(9, scheduler.getRemainingQuota());
+    }
+
+    @Test
+    public void testQuotaReserve() throws Exception {
+        RequestScheduler scheduler = create(100, 10, 3, 1, 16);
+
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND)).use();
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND)).use();
+        assertEquals(0, scheduler.getRemainingQuota(RequestScheduler.Priority.BACKGROUND));
+        assertRejected(scheduler.acquire(RequestScheduler.Priority.BACKGROUND));
+
+        await(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE)).use();
+        assertEquals(0, scheduler.getRemainingQuota());
+        assertRejected(scheduler.acquire(RequestScheduler.Priority.INTERACTIVE));
+    }
+
+    @Test
+    public void testQuotaIsSharedThroughTheLibraryFolder() throws Exception {
+        File directory = folder.newFolder();
+        RequestScheduler first = create(directory, 100, 10, 10, 0, 16);
+        RequestScheduler second = create(directory, 100, 10, 10, 0, 16);
+
+        for (int i = 0; i < 3; i++) {
+            await(first.acquire(RequestScheduler.Priority.INTERACTIVE)).use();
+        }
+        for (int i = 0; i < 2; i++) {
+            await(second.acquire(RequestScheduler.Priority.INTERACTIVE)).use();
+        }
+
+        // The counts are saved in the background.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (create(directory, 100, 10, 10, 0, 16).getRemainingQuota() != 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(5, create(directory, 100, 10, 10, 0, 16).getRemainingQuota());
+        assertEquals(5, first.getRemainingQuota());
+        assertEquals(5, second.getRemainingQuota());
+    }
+
+    @Test
+    public void testNoQuota() throws Exception {
+        RequestScheduler scheduler = create(100, 10, 0, 0, 16);
+        await(scheduler.acquire(RequestScheduler.Priority.BACKGROUND)).use();
+
+        assertEquals(-1, scheduler.getRemainingQuota());
+        assertEquals(-1, scheduler.getRemainingQuota(RequestScheduler.Priority.BACKGROUND));
+    }
+
+}
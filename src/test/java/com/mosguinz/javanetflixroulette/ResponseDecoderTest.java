@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ResponseDecoder}.
+ *
+ * @author mosguinz
+ */
+public class ResponseDecoderTest {
+
+    /**
+     * Decode a response, collecting its items.
+     *
+     * @param body the body of the response
+     * @param items collects the items
+     * @return the fields of the response that are kept
+     */
+    private static JSONObject decode(String body, List<Object> items) {
+        return ResponseDecoder.decode(new StringReader(body), items::add);
+    }
+
+    @Test
+    public void testDecode() {
+        List<Object> items = new ArrayList<>();
+        JSONObject header = decode("{\"COUNT\": \"2\", \"ITEMS\": [{\"netflixid\": \"1\"}, {\"netflixid\": \"2\"}]}", items);
+
+        assertEquals("2", header.getString("COUNT"));
+        assertEquals(0, header.getJSONArray("ITEMS").length());
+        assertEquals(2, items.size());
+        assertEquals("1", ((JSONObject) items.get(0)).getString("netflixid"));
+        assertEquals("2", ((JSONObject) items.get(1)).getString("netflixid"));
+    }
+
+    @Test
+    public void testSkipsOtherFields() {
+        List<Object> items = new ArrayList<>();
+        JSONObject header = decode("{\"extra\": {\"a\": [1, \"}]\", {\"b\": null}]}, \"note\": \"{[\","
+                + " \"flag\": true, \"n\": -1.5e3, \"ITEMS\": [\"x\"], \"COUNT\": 1}", items);
+
+        assertEquals(2, header.length());
+        assertEquals(1, header.getInt("COUNT"));
+        assertEquals(1, items.size());
+        assertEquals("x", items.get(0));
+    }
+
+    @Test
+    public void testItemsNotAnArray() {
+        List<Object> items = new ArrayList<>();
+        JSONObject header = decode("{\"ITEMS\": \"No results\", \"COUNT\": \"0\"}", items);
+
+        assertFalse(header.has("ITEMS"));
+        assertEquals("0", header.getString("COUNT"));
+        assertTrue(items.isEmpty());
+    }
+
+    @Test
+    public void testEmpty() {
+        List<Object> items = new ArrayList<>();
+
+        assertEquals(0, decode("{}", items).length());
+        assertEquals(0, decode(" { \"ITEMS\" : [ ] } ", items).getJSONArray("ITEMS").length());
+        assertTrue(items.isEmpty());
+    }
+
+    @Test
+    public void testMalformed() {
+        String[] bodies = {
+            "",
+            "[]",
+            "{\"COUNT\" \"1\"}",
+            "{\"COUNT\": \"1\"",
+            "{\"ITEMS\": [1, 2",
+            "{\"ITEMS\": [{} {}]}",
+            "{\"extra\": {\"a\": 1}"
+        };
+
+        for (String body : bodies) {
+            try {
+                decode(body, new ArrayList<>());
+                fail("Decoded a malformed response: " + body);
+            } catch (JSONException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void testReadFailure() {
+        Reader reader = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            ResponseDecoder.decode(reader, (item) -> {
+            });
+            fail("Decoded a response that could not be read");
+        } catch (JSONException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+import org.json.JSONObject;
+
+/**
+ * Compares the {@link ResponseStore} backends: saves a number of title
+ * responses of 100 titles each, then loads them back in a random order.
+ * <p>
+ * For each backend, it prints the 50th and 99th percentile of the time to
+ * save and load a response, the time until every save is durable, and the
+ * size of the store. For the file store, a save only queues the write, so the
+ * time until every save is durable is the one to compare. Responses are not
+ * evicted from the file store unless {@value LibraryEvictor#MAX_FILES_PROPERTY}
+ * or {@value LibraryEvictor#MAX_BYTES_PROPERTY} is set.
+ * <p>
+ * Not run as part of the tests. Run it with the test classpath, giving the
+ * backend ({@code file}, {@code memory} or {@code kv}), and optionally the
+ * number of responses (default 10000) and the folder to use (default a new
+ * temporary folder):
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.mosguinz.javanetflixroulette.ResponseStoreBenchmark kv 10000
+ * </pre>
+ *
+ * @author mosguinz
+ */
+public class ResponseStoreBenchmark {
+
+    /**
+     * The number of distinct responses to save copies of.
+     */
+    private static final int DISTINCT_RESPONSES = 50;
+
+    /**
+     * The number of titles in each response.
+     */
+    private static final int TITLES_PER_RESPONSE = 100;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String backend = args.length > 0 ? args[0] : "file";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        File directory = args.length > 2 ? new File(args[2])
+                : Files.createTempDirectory("netflixRoulette-benchmark").toFile();
+
+        // Keep every response, so that the backends hold the same data.
+        if (System.getProperty(LibraryEvictor.MAX_FILES_PROPERTY) == null) {
+            System.setProperty(LibraryEvictor.MAX_FILES_PROPERTY, String.valueOf(Integer.MAX_VALUE));
+        }
+        if (System.getProperty(LibraryEvictor.MAX_BYTES_PROPERTY) == null) {
+            System.setProperty(LibraryEvictor.MAX_BYTES_PROPERTY, String.valueOf(Long.MAX_VALUE));
+        }
+
+        ResponseStore store;
+        switch (backend) {
+            case "memory":
+                store = new MemoryResponseStore();
+                break;
+            case "kv":
+                store = new KeyValueResponseStore(directory);
+                break;
+            default:
+                store = new FileResponseStore(directory, 14);
+                break;
+        }
+        store.open();
+
+        Random random = new Random(1);
+        JSONObject[] responses = new JSONObject[DISTINCT_RESPONSES];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new JSONObject();
+            responses[i].put("DATE", LocalDate.now().toString());
+            responses[i].put("ITEMS", BinaryResponseCodecBenchmark.createTitles(TITLES_PER_RESPONSE, random));
+        }
+
+        long start = System.nanoTime();
+        long[] saves = new long[count];
+        for (int i = 0; i < count; i++) {
+            JSONObject response = new JSONObject(responses[i % responses.length].toMap());
+            String key = "q=" + i;
+            response.put("Q-STRING", key);
+
+            long t = System.nanoTime();
+            store.save("fetchTitles", key, response);
+            saves[i] = System.nanoTime() - t;
+        }
+        while (store.getWriteQueueDepth() > 0) {
+            Thread.sleep(10);
+        }
+        double durable = (System.nanoTime() - start) / 1e+6;
+
+        long[] loads = new long[count];
+        int missing = 0;
+        for (int i = 0; i < count; i++) {
+            long t = System.nanoTime();
+            JSONObject response = store.load("fetchTitles", "q=" + random.nextInt(count), (header) -> true);
+            loads[i] = System.nanoTime() - t;
+            if (response == null || response.getJSONArray("ITEMS").length() != TITLES_PER_RESPONSE) {
+                missing++;
+            }
+        }
+
+        Arrays.sort(saves);
+        Arrays.sort(loads);
+        System.out.printf("%s, %d responses in %s%n", backend, count, directory);
+        System.out.printf("  save p50/p99     %.2f/%.2f ms%n", percentile(saves, 50), percentile(saves, 99));
+        System.out.printf("  all durable      %.1f s%n", durable / 1000);
+        System.out.printf("  load p50/p99     %.2f/%.2f ms%n", percentile(loads, 50), percentile(loads, 99));
+        System.out.printf("  size             %,d bytes in %d responses (%d missing)%n",
+                store.getByteSize(), store.getResponseCount(), missing);
+        System.exit(0);
+    }
+
+    /**
+     * Get a percentile of the given times.
+     *
+     * @param sorted the times in nanoseconds, in ascending order
+     * @param percentile the percentile
+     * @return the percentile, in milliseconds
+     */
+    private static double percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1e+6;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ResponseWriter}.
+ *
+ * @author mosguinz
+ */
+public class ResponseWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private ResponseWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty(ResponseWriter.QUEUE_SIZE_PROPERTY, "1");
+        directory = folder.newFolder();
+        writer = new ResponseWriter(directory, new LibraryMetrics(directory), LibraryLock.of(directory));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ResponseWriter.QUEUE_SIZE_PROPERTY);
+    }
+
+    /**
+     * Get content that is only encoded once the latch is released.
+     *
+     * @param latch the latch to wait for
+     * @param content the content
+     * @return the supplier of the content
+     */
+    private static Supplier<byte[]> await(CountDownLatch latch, String content) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return content.getBytes(StandardCharsets.UTF_8);
+        };
+    }
+
+    /**
+     * Read a file that has been written.
+     *
+     * @param filename the name of the file
+     * @return the content of the file
+     * @throws IOException if the file could not be read
+     */
+    private String read(String filename) throws IOException {
+        return new String(Files.readAllBytes(new File(directory, filename).toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFlushWaitsForWritesRunByCallers() throws Exception {
+        CountDownLatch queued = new CountDownLatch(1);
+        CountDownLatch inline = new CountDownLatch(1);
+        CountDownLatch inlineStarted = new CountDownLatch(1);
+
+        // Occupy the writer thread and the queue, so that the next write is run by its caller.
+        writer.write("a.json", await(queued, "a"), () -> {
+        });
+        writer.write("b.json", await(queued, "b"), () -> {
+        });
+        Thread caller = new Thread(() -> writer.write("c.json", () -> {
+            inlineStarted.countDown();
+            return await(inline, "c").get();
+        }, () -> {
+        }));
+        caller.start();
+        assertTrue(inlineStarted.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch flushed = new CountDownLatch(1);
+        Thread flusher = new Thread(() -> {
+            writer.flush();
+            flushed.countDown();
+        });
+        flusher.start();
+
+        queued.countDown();
+        assertEquals("b", awaitFile("b.json"));
+        assertFalse("Flush returned before a write run by its caller", flushed.await(200, TimeUnit.MILLISECONDS));
+
+        inline.countDown();
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals("a", read("a.json"));
+        assertEquals("c", read("c.json"));
+        caller.join();
+    }
+
+    @Test
+    public void testOlderQueuedWriteSkipped() throws Exception {
+        CountDownLatch queued = new CountDownLatch(1);
+
+        // Occupy the writer thread and the queue, so that the newer write is run by its caller.
+        writer.write("a.json", await(queued, "a"), () -> {
+        });
+        writer.write("b.json", () -> "old".getBytes(StandardCharsets.UTF_8), () -> {
+        });
+        writer.write("b.json", () -> "new".getBytes(StandardCharsets.UTF_8), () -> {
+        });
+        assertEquals("new", read("b.json"));
+
+        queued.countDown();
+        writer.flush();
+        assertEquals("a", read("a.json"));
+        assertEquals("new", read("b.json"));
+    }
+
+    /**
+     * Wait for a file to be written.
+     *
+     * @param filename the name of the file
+     * @return the content of the file
+     * @throws Exception if the file was not written in time
+     */
+    private String awaitFile(String filename) throws Exception {
+        File file = new File(directory, filename);
+        for (int i = 0; i < 500 && !file.isFile(); i++) {
+            Thread.sleep(10);
+        }
+        return read(filename);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TitleStore}.
+ *
+ * @author mosguinz
+ */
+public class TitleStoreTest {
+
+    /**
+     * Get a title.
+     *
+     * @param id the ID of the title
+     * @param name the name of the title
+     * @return the title
+     */
+    private static Title createTitle(long id, String name) {
+        return Title.of(new JSONObject()
+                .put(TitleStore.ID_KEY, Long.toString(id))
+                .put("title", name)
+                .put("synopsis", "A synopsis")
+                .put("type", "movie"));
+    }
+
+    /**
+     * Get the IDs of titles that are saved in the same part.
+     * <p>
+     * Parts are split by the hash of the ID as a decimal string.
+     *
+     * @param count the number of IDs
+     * @return the IDs
+     */
+    private static List<Long> getIDsInOnePart(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 80000000; ids.size() < count; id++) {
+            if (Math.floorMod(Long.toString(id).hashCode(), TitleStore.PART_COUNT) == 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Put titles in a {@link JSONArray}.
+     *
+     * @param titles the titles
+     * @return the titles, in the same order
+     */
+    private static JSONArray toArray(Title... titles) {
+        JSONArray array = new JSONArray();
+        for (Title title : titles) {
+            array.put(title);
+        }
+        return array;
+    }
+
+    @Test
+    public void testIDListRoundTrip() {
+        ResponseStore store = new MemoryResponseStore();
+        JSONArray titles = new JSONArray();
+        for (int i = 0; i < 200; i++) {
+            titles.put(createTitle(80000000 + i * 7, "Title " + i));
+        }
+        assertTrue(TitleStore.hasIDs(titles));
+        new TitleStore(store).putAll(titles);
+
+        JSONObject response = new JSONObject();
+        response.put("DATE", LocalDate.now().toString());
+        response.put("Q-STRING", "q=test");
+        response.put("COMPLETE", true);
+        response.put("ITEMS", TitleStore.toIDList(titles));
+        store.save("fetchTitles", "q=test", response);
+
+        JSONArray items = store.load("fetchTitles", "q=test", (header) -> true).getJSONArray("ITEMS");
+        assertTrue(TitleStore.isIDList(items));
+
+        // Look the titles up from the saved parts alone.
+        JSONArray loaded = new TitleStore(store).getAll(items);
+        assertEquals(titles.length(), loaded.length());
+        for (int i = 0; i < titles.length(); i++) {
+            assertEquals(titles.get(i), loaded.get(i));
+        }
+    }
+
+    @Test
+    public void testHasIDs() {
+        assertFalse(TitleStore.hasIDs(toArray(Title.of(new JSONObject().put("title", "No ID")))));
+        assertFalse(TitleStore.hasIDs(new JSONArray().put(new JSONObject().put(TitleStore.ID_KEY, "1"))));
+        assertFalse(TitleStore.isIDList(new JSONArray()));
+        assertFalse(TitleStore.isIDList(BinaryResponseCodecTest.createTitles(1)));
+    }
+
+    @Test
+    public void testMissingTitle() {
+        ResponseStore store = new MemoryResponseStore();
+        List<Long> ids = getIDsInOnePart(2);
+        TitleStore titleStore = new TitleStore(store);
+        titleStore.put(createTitle(ids.get(0), "Saved"));
+
+        assertNull(titleStore.getAll(TitleStore.toIDList(toArray(createTitle(ids.get(1), "Missing")))));
+        assertNull(new TitleStore(store).getAll(TitleStore.toIDList(toArray(
+                createTitle(ids.get(0), "Saved"), createTitle(ids.get(1), "Missing")))));
+    }
+
+    @Test
+    public void testMergeWriters() {
+        ResponseStore store = new MemoryResponseStore();
+        List<Long> ids = getIDsInOnePart(3);
+        Title first = createTitle(ids.get(0), "First");
+        Title second = createTitle(ids.get(1), "Second");
+        Title third = createTitle(ids.get(2), "Third");
+
+        // Two instances of the application sharing the same store.
+        TitleStore one = new TitleStore(store);
+        TitleStore other = new TitleStore(store);
+        one.put(first);
+        other.put(second);
+        // The first instance loaded the part before the other wrote to it.
+        one.put(third);
+
+        JSONArray all = toArray(first, second, third);
+        assertEquals(3, new TitleStore(store).getAll(TitleStore.toIDList(all)).length());
+
+        // The other instance finds the title written since it loaded the part.
+        assertEquals(third, other.getAll(TitleStore.toIDList(toArray(third))).get(0));
+    }
+
+    @Test
+    public void testPutReplacesChangedTitle() {
+        ResponseStore store = new MemoryResponseStore();
+        TitleStore titleStore = new TitleStore(store);
+        titleStore.put(createTitle(80000001, "Before"));
+        titleStore.put(createTitle(80000001, "After"));
+
+        JSONArray ids = TitleStore.toIDList(toArray(createTitle(80000001, "")));
+        assertEquals(createTitle(80000001, "After"), titleStore.getAll(ids).get(0));
+        assertEquals(createTitle(80000001, "After"), new TitleStore(store).getAll(ids).get(0));
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Title}.
+ *
+ * @author mosguinz
+ */
+public class TitleTest {
+
+    /**
+     * Create a title as sent by uNoGS.
+     *
+     * @return the title
+     */
+    private static JSONObject createTitle() {
+        JSONObject title = new JSONObject();
+        title.put("netflixid", "80192098");
+        title.put("title", "Caf&eacute; &amp; <b>Co</b>");
+        title.put("image", "https://example.com/poster.jpg");
+        title.put("synopsis", "Two friends open a caf&eacute;.<br>New episode");
+        title.put("rating", "7.2");
+        title.put("type", "movie");
+        title.put("released", "2019");
+        title.put("runtime", "1h36m");
+        title.put("largeimage", "");
+        return title;
+    }
+
+    /**
+     * Parse a title with one field replaced.
+     *
+     * @param key the field
+     * @param value the value of the field
+     * @return the title
+     */
+    private static Title parseWith(String key, String value) {
+        return Title.of(createTitle().put(key, value));
+    }
+
+    @Test
+    public void testParse() {
+        Title title = Title.of(createTitle());
+
+        assertEquals(80192098L, title.getNetflixID());
+        assertEquals("Café & Co", title.getName());
+        assertEquals("Two friends open a café. New episode", title.getSynopsis());
+        assertEquals("https://example.com/poster.jpg", title.getImageURL());
+        assertEquals(Title.Type.MOVIE, title.getType());
+        assertTrue(title.hasRating());
+        assertEquals(72, title.getRating());
+        assertEquals(2019, title.getReleaseYear());
+        assertEquals(96 * 60, title.getRuntime());
+        assertEquals("1h36m", title.getRuntimeText());
+    }
+
+    @Test
+    public void testParseType() {
+        assertEquals(Title.Type.SERIES, parseWith("type", "Series").getType());
+        assertEquals(Title.Type.MOVIE, parseWith("type", "MOVIE").getType());
+        assertNull(parseWith("type", "documentary").getType());
+        assertEquals("series", Title.Type.SERIES.toString());
+    }
+
+    @Test
+    public void testParseRuntime() {
+        assertEquals(45 * 60, parseWith("runtime", "45m").getRuntime());
+        assertEquals(2 * 3600, parseWith("runtime", "2h").getRuntime());
+        assertEquals("2h", parseWith("runtime", "2h").getRuntimeText());
+        assertEquals(3600 + 60, parseWith("runtime", " 1h 1m ").getRuntime());
+        assertEquals(0, parseWith("runtime", "").getRuntime());
+        assertEquals("", parseWith("runtime", "").getRuntimeText());
+        assertEquals(0, parseWith("runtime", "96 minutes").getRuntime());
+        assertEquals(0, parseWith("runtime", "99999999999h").getRuntime());
+    }
+
+    @Test
+    public void testParseRating() {
+        assertEquals(75, parseWith("rating", "7,5").getRating());
+        assertEquals(0, parseWith("rating", "0").getRating());
+        assertTrue(parseWith("rating", "0").hasRating());
+        assertFalse(parseWith("rating", "").hasRating());
+        assertEquals(Title.NO_RATING, parseWith("rating", "").getRating());
+        assertFalse(parseWith("rating", "N/A").hasRating());
+        assertFalse(parseWith("rating", "-1").hasRating());
+    }
+
+    @Test
+    public void testParseMissingFields() {
+        Title title = Title.of(new JSONObject());
+
+        assertEquals(0, title.getNetflixID());
+        assertEquals("", title.getName());
+        assertEquals("", title.getImageURL());
+        assertNull(title.getType());
+        assertFalse(title.hasRating());
+        assertEquals(0, title.getReleaseYear());
+        assertEquals(0, title.getRuntime());
+    }
+
+    @Test
+    public void testParseInvalidFields() {
+        assertEquals(0, parseWith("netflixid", "abc").getNetflixID());
+        assertEquals(0, parseWith("netflixid", "-5").getNetflixID());
+        assertEquals(0, parseWith("released", "soon").getReleaseYear());
+        assertEquals(0, parseWith("released", "99999").getReleaseYear());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testParseNotAnObject() {
+        Title.of("80192098");
+    }
+
+    @Test
+    public void testOfTitle() {
+        Title title = Title.of(createTitle());
+        assertSame(title, Title.of(title));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Title title = Title.of(createTitle());
+        JSONObject json = new JSONObject(title.toJSONString());
+
+        assertEquals("80192098", json.getString("netflixid"));
+        assertEquals("Caf&eacute; &amp; <b>Co</b>", json.getString("title"));
+        assertEquals("7.2", json.getString("rating"));
+        assertEquals("movie", json.getString("type"));
+        assertEquals("2019", json.getString("released"));
+        assertEquals("1h36m", json.getString("runtime"));
+        assertEquals(title, Title.of(json));
+        assertEquals(title, Title.of(title.toJSON()));
+    }
+
+    @Test
+    public void testRoundTripUnknownFields() {
+        Title title = Title.of(new JSONObject());
+        JSONObject json = title.toJSON();
+
+        assertEquals("", json.getString("netflixid"));
+        assertEquals("", json.getString("rating"));
+        assertEquals("", json.getString("type"));
+        assertEquals("", json.getString("released"));
+        assertEquals("", json.getString("runtime"));
+        assertEquals(title, Title.of(json));
+    }
+
+    @Test
+    public void testEquals() {
+        Title title = Title.of(createTitle());
+
+        assertEquals(title, Title.of(createTitle()));
+        assertEquals(title.hashCode(), Title.of(createTitle()).hashCode());
+        assertNotEquals(title, parseWith("rating", "7.3"));
+        assertNotEquals(title, parseWith("synopsis", "Another synopsis"));
+        assertNotEquals(title, parseWith("netflixid", "80192099"));
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TitlesQueryPlanner}.
+ *
+ * @author mosguinz
+ */
+public class TitlesQueryPlannerTest {
+
+    /**
+     * Create a query for region {@code 46}.
+     *
+     * @param genreIDs the genre IDs
+     * @param titleType {@code Any}, {@code Movie}, or {@code Series}
+     * @param minimumRating the minimum rating
+     * @param maximumRating the maximum rating
+     * @return the query
+     */
+    private static TitlesQuery query(List<Integer> genreIDs, String titleType, String minimumRating, String maximumRating) {
+        return new TitlesQuery("46", genreIDs, titleType, minimumRating, maximumRating);
+    }
+
+    /**
+     * Create a title.
+     *
+     * @param id the Netflix ID
+     * @param type {@code movie} or {@code series}
+     * @param rating the rating, or an empty string for none
+     * @return the title
+     */
+    private static Title title(long id, String type, String rating) {
+        JSONObject title = new JSONObject();
+        title.put("netflixid", String.valueOf(id));
+        title.put("title", "Title " + id);
+        title.put("type", type);
+        title.put("rating", rating);
+        return Title.of(title);
+    }
+
+    /**
+     * Get the Netflix IDs of the given titles.
+     *
+     * @param titles the titles
+     * @return the IDs, in order
+     */
+    private static List<Long> getIDs(JSONArray titles) {
+        List<Long> ids = new ArrayList<>();
+        for (Object title : titles) {
+            ids.add(((Title) title).getNetflixID());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testContainsSameQuery() {
+        TitlesQuery q = query(Arrays.asList(1, 2), "Movie", "5", "8");
+        assertTrue(TitlesQueryPlanner.contains(q, q));
+    }
+
+    @Test
+    public void testContainsNarrowerQuery() {
+        TitlesQuery saved = query(Arrays.asList(2, 1), "Any", "0", "10");
+
+        assertTrue(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Movie", "0", "10")));
+        assertTrue(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Series", "6.5", "7.5")));
+        assertTrue(TitlesQueryPlanner.contains(query(Arrays.asList(1, 2), "Movie", "5", "8"),
+                query(Arrays.asList(1, 2), "Movie", "5", "8")));
+    }
+
+    @Test
+    public void testDoesNotContainBroaderQuery() {
+        TitlesQuery saved = query(Arrays.asList(1, 2), "Movie", "5", "8");
+
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Any", "5", "8")));
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Series", "5", "8")));
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Movie", "4.9", "8")));
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2), "Movie", "5", "8.1")));
+    }
+
+    @Test
+    public void testDoesNotContainOtherGenresOrRegion() {
+        TitlesQuery saved = query(Arrays.asList(1, 2), "Any", "0", "10");
+
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1), "Any", "0", "10")));
+        assertFalse(TitlesQueryPlanner.contains(saved, query(Arrays.asList(1, 2, 3), "Any", "0", "10")));
+        assertFalse(TitlesQueryPlanner.contains(saved, new TitlesQuery("78", Arrays.asList(1, 2), "Any", "0", "10")));
+    }
+
+    @Test
+    public void testFilterByType() {
+        JSONArray titles = new JSONArray(Arrays.asList(
+                title(1, "movie", "7.0"), title(2, "series", "7.0"), title(3, "", "7.0"), title(4, "Movie", "7.0")));
+
+        assertEquals(Arrays.asList(1L, 4L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Movie", "0", "10"))));
+        assertEquals(Arrays.asList(2L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Series", "0", "10"))));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Any", "0", "10"))));
+    }
+
+    @Test
+    public void testFilterByRating() {
+        JSONArray titles = new JSONArray(Arrays.asList(
+                title(1, "movie", "4.9"), title(2, "movie", "5.0"), title(3, "movie", "8.0"), title(4, "movie", "8.1"),
+                title(5, "movie", "")));
+
+        assertEquals(Arrays.asList(2L, 3L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Any", "5", "8"))));
+    }
+
+    @Test
+    public void testFilterUnrated() {
+        JSONArray titles = new JSONArray(Arrays.asList(title(1, "movie", ""), title(2, "movie", "3.0")));
+
+        assertEquals(Arrays.asList(1L, 2L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Any", "0", "5"))));
+        assertEquals(Arrays.asList(2L), getIDs(TitlesQueryPlanner.filter(titles, query(Arrays.asList(1), "Any", "0.1", "5"))));
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 mosguinz.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mosguinz.javanetflixroulette;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link TitlesQuery}.
+ *
+ * @author mosguinz
+ */
+public class TitlesQueryTest {
+
+    @Test
+    public void testCanonicalGenres() {
+        TitlesQuery a = new TitlesQuery("46", Arrays.asList(3, 1, 2, 1), "Movie", "0", "10");
+        TitlesQuery b = new TitlesQuery("46", Arrays.asList(1, 2, 3), "Movie", "0", "10");
+
+        assertArrayEquals(new int[]{1, 2, 3}, a.getGenreIDs());
+        assertEquals(b, a);
+        assertEquals(b.hashCode(), a.hashCode());
+        assertEquals(b.toString(), a.toString());
+    }
+
+    @Test
+    public void testCanonicalRatings() {
+        TitlesQuery a = new TitlesQuery("46", Arrays.asList(1), "Any", "5,5", " 9 ");
+        TitlesQuery b = new TitlesQuery("46", Arrays.asList(1), "Any", "5.50", "9.0");
+
+        assertEquals(55, a.getMinimumRating());
+        assertEquals(90, a.getMaximumRating());
+        assertEquals(b, a);
+        assertEquals("q=-!0%2C3000-!0%2C10-!5.5%2C9.0-!1-!Any-!Any-!Any-!-!&t=ns&cl=46&st=adv&ob=Relevance&p=1&sa=or",
+                a.toString());
+    }
+
+    @Test
+    public void testDifferentQueries() {
+        TitlesQuery q = new TitlesQuery("46", Arrays.asList(1, 2), "Any", "0", "10");
+
+        assertNotEquals(q, new TitlesQuery("78", Arrays.asList(1, 2), "Any", "0", "10"));
+        assertNotEquals(q, new TitlesQuery("46", Arrays.asList(1), "Any", "0", "10"));
+        assertNotEquals(q, new TitlesQuery("46", Arrays.asList(1, 2), "Movie", "0", "10"));
+        assertNotEquals(q, new TitlesQuery("46", Arrays.asList(1, 2), "Any", "0.1", "10"));
+        assertNotEquals(q, new TitlesQuery("46", Arrays.asList(1, 2), "Any", "0", "9.9"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidRating() {
+        new TitlesQuery("46", Arrays.asList(1), "Any", "high", "10");
+    }
+
+    @Test
+    public void testParseRoundTrip() {
+        TitlesQuery q = new TitlesQuery(TitlesQuery.ALL_REGIONS, Arrays.asList(7, 3), "Series", "6.5", "8");
+        TitlesQuery parsed = TitlesQuery.parse(q.toString());
+
+        assertEquals(q, parsed);
+        assertEquals(TitlesQuery.ALL_REGIONS, parsed.getRegionID());
+        assertArrayEquals(new int[]{3, 7}, parsed.getGenreIDs());
+        assertEquals("Series", parsed.getTitleType());
+        assertEquals(65, parsed.getMinimumRating());
+        assertEquals(80, parsed.getMaximumRating());
+    }
+
+    @Test
+    public void testParseLegacyQueryString() {
+        // Written by an earlier version, with unsorted genres and a decimal comma.
+        TitlesQuery parsed = TitlesQuery.parse(
+                "q=-!0%2C3000-!0%2C10-!5,0%2C10-!9,2-!Movie-!Any-!Any-!-!&t=ns&cl=46&st=adv&ob=Relevance&p=1&sa=or");
+
+        assertEquals(new TitlesQuery("46", Arrays.asList(2, 9), "Movie", "5", "10"), parsed);
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertNull(TitlesQuery.parse(""));
+        assertNull(TitlesQuery.parse("q=something else"));
+        assertNull(TitlesQuery.parse(
+                "q=-!0%2C3000-!0%2C10-!0.0%2C10.0-!1-!Documentary-!Any-!Any-!-!&t=ns&cl=46&st=adv&ob=Relevance&p=1&sa=or"));
+        assertNull(TitlesQuery.parse(
+                "q=-!0%2C3000-!0%2C10-!1.2.3%2C10.0-!1-!Any-!Any-!Any-!-!&t=ns&cl=46&st=adv&ob=Relevance&p=1&sa=or"));
+    }
+
+    @Test
+    public void testPageQueryString() {
+        TitlesQuery q = new TitlesQuery("46", Collections.singletonList(TitlesQuery.ALL_GENRES), "Any", "0", "10");
+
+        assertEquals(q.toString(), q.getPageQueryString(1));
+        assertEquals(q.toString().replace("&p=1&", "&p=3&"), q.getPageQueryString(3));
+    }
+
+}